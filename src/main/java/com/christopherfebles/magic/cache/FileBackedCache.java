@@ -0,0 +1,140 @@
+package com.christopherfebles.magic.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache which is loaded from a file when a run starts, and written back to it when the run ends.<br>
+ * <br>
+ * The file is deflated, and starts with a format version, so a file written by an incompatible version is ignored rather than misread. A cache whose file
+ * is missing, unreadable or of another version starts empty. Saves write a temporary file first and move it over the cache file, so an interrupted save
+ * never leaves a corrupt cache behind, and nothing is written if the cache has not been modified since it was loaded.<br>
+ * <br>
+ * Subclasses read and write their contents, and call {@link #markModified()} whenever they change.
+ *
+ * @author Christopher Febles
+ *
+ */
+public abstract class FileBackedCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger( FileBackedCache.class );
+
+    private final File cacheFile;
+    private final int formatVersion;
+    private final String description;
+    private volatile boolean modified;
+
+    /**
+     * @param cacheFile
+     *            The file this cache is persisted to
+     * @param formatVersion
+     *            The version of the file format written by {@link #writeContents(DataOutput)}. Change it whenever the format changes.
+     * @param description
+     *            What this cache holds, such as "content hash cache", for logging
+     */
+    protected FileBackedCache( File cacheFile, int formatVersion, String description ) {
+        this.cacheFile = cacheFile;
+        this.formatVersion = formatVersion;
+        this.description = description;
+    }
+
+    /**
+     * Read this cache's contents from its file, if it exists.
+     */
+    public synchronized void load() {
+
+        if ( !cacheFile.isFile() ) {
+            LOG.debug( "No {} found at {}. Starting with an empty cache.", description, cacheFile );
+            return;
+        }
+
+        try ( DataInputStream in = new DataInputStream( new InflaterInputStream( new BufferedInputStream( new FileInputStream( cacheFile ) ) ) ) ) {
+            int version = in.readInt();
+            if ( version != formatVersion ) {
+                LOG.error( "Unknown {} version {} in {}. Starting with an empty cache.", description, version, cacheFile );
+                return;
+            }
+            this.readContents( in );
+        } catch ( IOException | RuntimeException e ) {
+            LOG.error( "Unable to read {} {}. Starting with an empty cache.", description, cacheFile, e );
+            return;
+        }
+        LOG.debug( "Loaded {} entries of {} from {}.", this.size(), description, cacheFile );
+    }
+
+    /**
+     * Write this cache's contents to its file, if they have changed since it was loaded.
+     */
+    public synchronized void save() {
+
+        if ( !modified ) {
+            return;
+        }
+
+        File tempFile = new File( cacheFile.getAbsoluteFile().getParentFile(), cacheFile.getName() + ".tmp" );
+        try ( DataOutputStream out = new DataOutputStream( new DeflaterOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile ) ) ) ) ) {
+            out.writeInt( formatVersion );
+            this.writeContents( out );
+        } catch ( IOException e ) {
+            LOG.error( "Unable to write {} {}.", description, tempFile, e );
+            return;
+        }
+
+        try {
+            Files.move( tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            modified = false;
+            LOG.debug( "Saved {} entries of {} to {}.", this.size(), description, cacheFile );
+        } catch ( IOException e ) {
+            LOG.error( "Unable to replace {} {}.", description, cacheFile, e );
+        }
+    }
+
+    /**
+     * @return The number of entries in this cache
+     */
+    public abstract int size();
+
+    /**
+     * Record that this cache has changed, so the next {@link #save()} writes it.
+     */
+    protected void markModified() {
+        modified = true;
+    }
+
+    /**
+     * Read the contents written by {@link #writeContents(DataOutput)}, after the format version. Called with this cache's lock held.<br>
+     * <br>
+     * The contents should only replace this cache's own once they have been read in full, so a truncated file leaves the cache as it was.
+     *
+     * @param in
+     *            The inflated file
+     * @throws IOException
+     *             If the file cannot be read, or is not in the expected format
+     */
+    protected abstract void readContents( DataInput in ) throws IOException;
+
+    /**
+     * Write this cache's contents, after the format version. Called with this cache's lock held.
+     *
+     * @param out
+     *            The temporary file, deflated as it is written
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    protected abstract void writeContents( DataOutput out ) throws IOException;
+}
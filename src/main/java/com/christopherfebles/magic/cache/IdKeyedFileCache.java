@@ -0,0 +1,135 @@
+package com.christopherfebles.magic.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.christopherfebles.magic.model.MultiverseIdSet;
+
+/**
+ * A file-backed cache of a fixed number of 64-bit values for each multiverse ID.<br>
+ * <br>
+ * Values are held in arrays indexed by ID, since IDs are small and dense. A first value of 0 marks an ID with nothing stored, so subclasses must never
+ * store 0 as the first value. The file holds the {@link MultiverseIdSet} of stored IDs, followed by their values in ID order.
+ *
+ * @author Christopher Febles
+ *
+ */
+public abstract class IdKeyedFileCache extends FileBackedCache {
+
+    // One array per value, each indexed by multiverse ID. Guarded by this.
+    private long[][] values;
+
+    /**
+     * @param cacheFile
+     *            The file this cache is persisted to
+     * @param formatVersion
+     *            The version of the file format. Change it whenever the meaning of the values changes.
+     * @param description
+     *            What this cache holds, for logging
+     * @param valuesPerId
+     *            The number of values stored for each ID
+     */
+    protected IdKeyedFileCache( File cacheFile, int formatVersion, String description, int valuesPerId ) {
+        super( cacheFile, formatVersion, description );
+        this.values = new long[valuesPerId][0];
+    }
+
+    /**
+     * Forget the values of the given IDs.
+     *
+     * @param ids
+     *            The IDs to forget
+     */
+    public synchronized void forget( MultiverseIdSet ids ) {
+        long[] first = values[0];
+        for ( int id = ids.nextId( 0 ); id >= 0 && id < first.length; id = ids.nextId( id + 1 ) ) {
+            if ( first[id] != 0 ) {
+                for ( long[] column : values ) {
+                    column[id] = 0;
+                }
+                this.markModified();
+            }
+        }
+    }
+
+    /**
+     * @return The number of IDs with stored values
+     */
+    @Override
+    public synchronized int size() {
+        return this.getStoredIds().size();
+    }
+
+    /**
+     * @param multiverseId
+     *            The ID to look up
+     * @param index
+     *            Which of the ID's values to return
+     * @return The value, or 0 if none is stored for the ID
+     */
+    protected synchronized long get( int multiverseId, int index ) {
+        long[] column = values[index];
+        return multiverseId >= 0 && multiverseId < column.length ? column[multiverseId] : 0;
+    }
+
+    /**
+     * Store every value of an ID, replacing any stored before. Negative IDs are ignored.
+     *
+     * @param multiverseId
+     *            The ID to store values for
+     * @param idValues
+     *            One value for each index, the first of which must not be 0
+     */
+    protected synchronized void set( int multiverseId, long... idValues ) {
+        if ( multiverseId < 0 ) {
+            return;
+        }
+        if ( multiverseId >= values[0].length ) {
+            int length = Math.max( multiverseId + 1, values[0].length * 2 );
+            for ( int x = 0; x < values.length; x++ ) {
+                values[x] = Arrays.copyOf( values[x], length );
+            }
+        }
+        for ( int x = 0; x < values.length; x++ ) {
+            values[x][multiverseId] = idValues[x];
+        }
+        this.markModified();
+    }
+
+    @Override
+    protected void readContents( DataInput in ) throws IOException {
+        MultiverseIdSet ids = MultiverseIdSet.readFrom( in );
+        long[][] loaded = new long[values.length][ids.isEmpty() ? 0 : ids.max() + 1];
+        for ( int id = ids.nextId( 0 ); id >= 0; id = ids.nextId( id + 1 ) ) {
+            for ( long[] column : loaded ) {
+                column[id] = in.readLong();
+            }
+        }
+        values = loaded;
+    }
+
+    @Override
+    protected void writeContents( DataOutput out ) throws IOException {
+        MultiverseIdSet ids = this.getStoredIds();
+        ids.writeTo( out );
+        for ( int id = ids.nextId( 0 ); id >= 0; id = ids.nextId( id + 1 ) ) {
+            for ( long[] column : values ) {
+                out.writeLong( column[id] );
+            }
+        }
+    }
+
+    private synchronized MultiverseIdSet getStoredIds() {
+        MultiverseIdSet ids = new MultiverseIdSet();
+        long[] first = values[0];
+        for ( int id = 0; id < first.length; id++ ) {
+            if ( first[id] != 0 ) {
+                ids.add( id );
+            }
+        }
+        return ids;
+    }
+}
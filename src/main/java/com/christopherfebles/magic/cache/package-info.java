@@ -0,0 +1,4 @@
+/**
+ * Persistence shared by the caches which are kept on disk between runs.
+ */
+package com.christopherfebles.magic.cache;
@@ -1,9 +1,13 @@
 package com.christopherfebles.magic.cli;
 
+import java.io.BufferedReader;
 import java.io.Console;
-import java.util.ArrayList;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -26,9 +30,19 @@ import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import com.christopherfebles.magic.config.UpdaterConfiguration;
 import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.downloader.EmptyIdCache;
+import com.christopherfebles.magic.downloader.GathererConnectionPool;
+import com.christopherfebles.magic.downloader.RetryScheduler;
+import com.christopherfebles.magic.downloader.ValidatorCache;
+import com.christopherfebles.magic.model.MultiverseIdSet;
+import com.christopherfebles.magic.observer.CardDigestCache;
+import com.christopherfebles.magic.observer.ContentHashCache;
 import com.christopherfebles.magic.observer.MagicGathererDataObserver;
 import com.christopherfebles.magic.service.MagicCardDatabaseService;
+import com.christopherfebles.magic.source.DistinctIdSource;
+import com.christopherfebles.magic.source.TextIdSource;
 
 /**
  * Command line interface to update the database of Magic cards.
@@ -52,7 +66,10 @@ public class UpdateMagicDatabase {
      * -updateDatabase<br>
      * -updateWithId {@literal <id>}<br>
      * -updateWithIds {@literal <comma delimited ids>}<br>
+     * -updateRange {@literal <first-last[,first-last...]>}<br>
+     * -updateFromFile {@literal <file, or - for standard input>}<br>
      * -populateDatabase<br>
+     * -discoverNewCards<br>
      * 
      * @return  An Options object with all the command line options set.
      */
@@ -62,8 +79,13 @@ public class UpdateMagicDatabase {
         options.addOption( "updateDatabase", false, "Update all Magic cards currently in the database." );
         options.addOption( "updateWithId", true, "Update or Insert the Magic card specified by the given multiverse id." );
         options.addOption( "updateWithIds", true, "Update or Insert the Magic cards specified by the given multiverse ids (comma-separated)." );
-        options.addOption( "populateDatabase", false,
-                "Insert all Magic cards not currently present in the database starting from the highest existing multiverse id." );
+        options.addOption( "updateRange", true,
+                "Update or Insert the Magic cards in the given inclusive multiverse id ranges, e.g. 1-5000 or 1-100,250,4000-4999." );
+        options.addOption( "updateFromFile", true,
+                "Update or Insert the Magic cards whose multiverse ids or id ranges are listed in the given file, or on standard input if the file is -." );
+        options.addOption( "populateDatabase", false, "Insert all Magic cards not currently present in the database, up to multiverse id 500000." );
+        options.addOption( "discoverNewCards", false,
+                "Insert new Magic cards starting from the highest existing multiverse id, stopping once no more cards are found." );
 
         return options;
     }
@@ -106,9 +128,12 @@ public class UpdateMagicDatabase {
      * -updateDatabase<br>
      * -updateWithId {@literal <id>}<br>
      * -updateWithIds {@literal <comma delimited ids>}<br>
+     * -updateRange {@literal <first-last[,first-last...]>}<br>
+     * -updateFromFile {@literal <file, or - for standard input>}<br>
      * -populateDatabase<br>
+     * -discoverNewCards<br>
      * <br>
-     * All options except populateDatabase will overwrite existing data in the database. The user will be prompted for confirmation in all overwrite cases.
+     * All options except populateDatabase and discoverNewCards will overwrite existing data in the database. The user will be prompted for confirmation in all overwrite cases.
      * 
      * @param args
      *            Command line arguments
@@ -153,11 +178,22 @@ public class UpdateMagicDatabase {
             case "updateWithIds":
                 workActuallyDone = self.updateWithIds( cmdLineValue );
                 break;
+            case "updateRange":
+                workActuallyDone = self.updateWithIdText( new BufferedReader( new StringReader( cmdLineValue ) ) );
+                break;
+            case "updateFromFile":
+                workActuallyDone = self.updateFromFile( cmdLineValue );
+                break;
             case "populateDatabase":
                 isUpdate = false;
                 self.dbUpdaterService.populateMagicDatabase();
                 workActuallyDone = true;
                 break;
+            case "discoverNewCards":
+                isUpdate = false;
+                self.dbUpdaterService.discoverNewCards();
+                workActuallyDone = true;
+                break;
             default:
                 workActuallyDone = false;
             }
@@ -177,6 +213,13 @@ public class UpdateMagicDatabase {
                 } else {
                     LOG.info( "{} records were added to the database.", MagicGathererDataObserver.NUMBER_OF_DATABASE_WRITES.get() );
                 }
+                LOG.info( "HTTP connection usage: {}", GathererConnectionPool.getSharedInstance().getStatistics() );
+                LOG.info( "{}", RetryScheduler.getSharedInstance().getStatistics() );
+                ValidatorCache.saveSharedInstance();
+                EmptyIdCache.saveSharedInstance();
+                ContentHashCache.saveSharedInstance();
+                CardDigestCache.saveSharedInstance();
+                GathererConnectionPool.shutdownSharedInstance();
             }
         }
     }
@@ -194,18 +237,62 @@ public class UpdateMagicDatabase {
 
         if ( this.confirmOverwriteOption() ) {
             String[] idStrAr = commaSeparatedIds.split( "," );
-            List<Integer> idList = new ArrayList<>();
+            // Duplicate ids are only loaded once
+            MultiverseIdSet idSet = new MultiverseIdSet();
 
             for ( String idStr : idStrAr ) {
-                idList.add( Integer.parseInt( idStr ) );
+                idSet.add( Integer.parseInt( idStr.trim() ) );
             }
 
-            this.dbUpdaterService.updateMagicDatabase( idList );
+            this.dbUpdaterService.updateMagicDatabase( idSet.toList() );
             workActuallyDone = true;
         }
         return workActuallyDone;
     }
 
+    /**
+     * Update the database with the IDs listed in a file, or on standard input
+     * 
+     * @param fileName
+     *            The file to read, or - for standard input
+     * @return True if the user confirms this action and the file can be opened, false otherwise
+     */
+    private boolean updateFromFile( String fileName ) {
+
+        BufferedReader reader;
+        if ( "-".equals( fileName ) ) {
+            reader = new BufferedReader( new InputStreamReader( System.in, StandardCharsets.UTF_8 ) );
+        } else {
+            try {
+                reader = new BufferedReader( new InputStreamReader( new FileInputStream( fileName ), StandardCharsets.UTF_8 ) );
+            } catch ( FileNotFoundException e ) {
+                LOG.error( "Unable to open multiverse id file {}.", fileName, e );
+                return false;
+            }
+        }
+        return this.updateWithIdText( reader );
+    }
+
+    /**
+     * Update the database with the IDs and ID ranges in the given text, as read by {@link TextIdSource}.<br>
+     * <br>
+     * IDs are read as the downloaders need them, and duplicates are dropped as they are read, so even very large ranges or files start downloading at once.
+     * 
+     * @param reader
+     *            The text to read IDs from. It is closed once all IDs are read.
+     * @return True if the user confirms this action, false otherwise
+     */
+    private boolean updateWithIdText( BufferedReader reader ) {
+
+        TextIdSource idSource = new TextIdSource( reader );
+        if ( !this.confirmOverwriteOption() ) {
+            idSource.close();
+            return false;
+        }
+        this.dbUpdaterService.updateMagicDatabase( new DistinctIdSource( idSource ) );
+        return true;
+    }
+
     /**
      * Confirm a user's selection on the command line which will cause data overwrite
      * 
@@ -213,7 +300,16 @@ public class UpdateMagicDatabase {
      */
     private boolean confirmOverwriteOption() {
 
+        if ( UpdaterConfiguration.getBoolean( "magic.cli.assumeYes", false ) ) {
+            return true;
+        }
+
         Console console = System.console();
+        if ( console == null ) {
+            // Standard input is redirected, e.g. -updateFromFile -
+            LOG.error( "No console is available to confirm overwriting the database. Set magic.cli.assumeYes=true to run without confirmation." );
+            return false;
+        }
         String response = console
                 .readLine( "This option will cause card information in the database to be overwritten from Gatherer. Are you sure you want to do this? Y/[N]: " );
 
@@ -0,0 +1,149 @@
+package com.christopherfebles.magic.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only access to the tuning values of the database updater.<br>
+ * <br>
+ * Values are loaded once from {@value #PROPERTIES_FILE} on the classpath. Any value may be overridden on the command line with a Java system property of the
+ * same name, for example: -Dmagic.http.maxTotalConnections=200
+ * 
+ * @author Christopher Febles
+ *
+ */
+public final class UpdaterConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger( UpdaterConfiguration.class );
+    private static final String PROPERTIES_FILE = "magicdbupdater.properties";
+
+    private static final Properties PROPERTIES = loadProperties();
+
+    private UpdaterConfiguration() {
+        // Static access only
+    }
+
+    /**
+     * Load {@value #PROPERTIES_FILE} from the classpath.
+     * 
+     * @return The loaded properties, or an empty object if the file is missing or unreadable.
+     */
+    private static Properties loadProperties() {
+
+        Properties properties = new Properties();
+        try ( InputStream is = UpdaterConfiguration.class.getClassLoader().getResourceAsStream( PROPERTIES_FILE ) ) {
+            if ( is != null ) {
+                properties.load( is );
+            } else {
+                LOG.warn( "Unable to find {} on the classpath. Using default values.", PROPERTIES_FILE );
+            }
+        } catch ( IOException e ) {
+            LOG.error( "Error loading {}. Using default values.", PROPERTIES_FILE, e );
+        }
+        return properties;
+    }
+
+    /**
+     * Get the raw value of the given key. System properties take precedence over {@value #PROPERTIES_FILE}.
+     * 
+     * @param key
+     *            The property to look up
+     * @return The trimmed value, or null if the property is not set
+     */
+    public static String getString( String key ) {
+        String value = System.getProperty( key, PROPERTIES.getProperty( key ) );
+        return StringUtils.trimToNull( value );
+    }
+
+    /**
+     * Get the value of the given key as a String.
+     * 
+     * @param key
+     *            The property to look up
+     * @param defaultValue
+     *            The value to return if the property is not set
+     * @return The configured value, or defaultValue
+     */
+    public static String getString( String key, String defaultValue ) {
+        String value = getString( key );
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Get the value of the given key as an int.
+     * 
+     * @param key
+     *            The property to look up
+     * @param defaultValue
+     *            The value to return if the property is not set or is not a number
+     * @return The configured value, or defaultValue
+     */
+    public static int getInt( String key, int defaultValue ) {
+        return ( int ) getLong( key, defaultValue );
+    }
+
+    /**
+     * Get the value of the given key as a long.
+     * 
+     * @param key
+     *            The property to look up
+     * @param defaultValue
+     *            The value to return if the property is not set or is not a number
+     * @return The configured value, or defaultValue
+     */
+    public static long getLong( String key, long defaultValue ) {
+
+        String value = getString( key );
+        if ( value == null ) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong( value );
+        } catch ( NumberFormatException e ) {
+            LOG.error( "Invalid numeric value {} for property {}. Using default value {}.", value, key, defaultValue );
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get the value of the given key as a double.
+     * 
+     * @param key
+     *            The property to look up
+     * @param defaultValue
+     *            The value to return if the property is not set or is not a number
+     * @return The configured value, or defaultValue
+     */
+    public static double getDouble( String key, double defaultValue ) {
+
+        String value = getString( key );
+        if ( value == null ) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble( value );
+        } catch ( NumberFormatException e ) {
+            LOG.error( "Invalid numeric value {} for property {}. Using default value {}.", value, key, defaultValue );
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get the value of the given key as a boolean.
+     * 
+     * @param key
+     *            The property to look up
+     * @param defaultValue
+     *            The value to return if the property is not set
+     * @return The configured value, or defaultValue
+     */
+    public static boolean getBoolean( String key, boolean defaultValue ) {
+        String value = getString( key );
+        return value != null ? Boolean.parseBoolean( value ) : defaultValue;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Runtime configuration for the database updater.
+ */
+package com.christopherfebles.magic.config;
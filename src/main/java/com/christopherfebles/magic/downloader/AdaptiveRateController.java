@@ -0,0 +1,304 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * Limits the requests sent to a single host, adjusting the limits to what the host tolerates.<br>
+ * <br>
+ * Two limits are enforced: the number of requests in flight, and the number of requests started per second. Both follow additive-increase,
+ * multiplicative-decrease (AIMD): every successful request raises the limits slightly, so that they grow by about one per round trip, and every sign of
+ * stress cuts them by a constant factor. Stress is a 5xx response, a network failure or timeout, or a response much slower than the host's usual latency.
+ * Decreases are spaced out by a cooldown, so a burst of failures from the same moment only counts once.<br>
+ * <br>
+ * The usual latency is a high percentile (magic.rate.latencyPercentile) of the host's last magic.rate.latencyWindow successful responses. Requests to one
+ * host vary widely, from a quick 304 to a full card page, so the baseline has to cover the slow requests which are normal, not just the fastest ones.
+ * Only a response slower than latencyTolerance times that percentile counts as stress, and none do until the window holds enough samples to judge by.<br>
+ * <br>
+ * Controllers are shared by every downloader in the JVM, one per host, and are tuned with the magic.rate.* properties.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class AdaptiveRateController {
+
+    private static final Logger LOG = LoggerFactory.getLogger( AdaptiveRateController.class );
+    private static final ConcurrentMap<String, AdaptiveRateController> CONTROLLERS = new ConcurrentHashMap<>();
+
+    // Successful responses needed before latency is judged against the baseline
+    private static final int MIN_BASELINE_SAMPLES = 10;
+
+    /**
+     * How a request finished, as far as the controller is concerned.
+     */
+    public enum Outcome {
+        /** The host answered normally. */
+        SUCCESS,
+        /** The host is struggling: a 5xx response, a network failure, or a timeout. */
+        OVERLOAD,
+        /** The request failed for a reason that says nothing about the host's load, such as a 404. */
+        IGNORED
+    }
+
+    private final String host;
+    private final boolean enabled;
+    private final double minConcurrency;
+    private final double maxConcurrency;
+    private final double minRequestsPerSecond;
+    private final double maxRequestsPerSecond;
+    private final double decreaseFactor;
+    private final double latencyTolerance;
+    private final long cooldownNanos;
+    private final double latencyPercentile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition capacityAvailable = lock.newCondition();
+
+    // Guarded by lock
+    private double concurrencyLimit;
+    private double requestsPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastDecreaseNanos;
+    private int inFlight;
+    // The latencies of the most recent successful responses, oldest overwritten first
+    private final long[] latencyWindow;
+    private int latencySamples;
+    private int nextLatencySample;
+
+    /**
+     * Get the controller for the given host, creating it on first use.
+     * 
+     * @param host
+     *            The host name requests are sent to
+     * @return The controller shared by all requests to that host
+     */
+    public static AdaptiveRateController forHost( String host ) {
+        AdaptiveRateController controller = CONTROLLERS.get( host );
+        if ( controller == null ) {
+            AdaptiveRateController newController = new AdaptiveRateController( host );
+            controller = CONTROLLERS.putIfAbsent( host, newController );
+            if ( controller == null ) {
+                controller = newController;
+            }
+        }
+        return controller;
+    }
+
+    /**
+     * Create a new controller for the given host, tuned from {@link UpdaterConfiguration}.
+     * 
+     * @param host
+     *            The host this controller limits
+     */
+    public AdaptiveRateController( String host ) {
+        this.host = host;
+        this.enabled = UpdaterConfiguration.getBoolean( "magic.rate.enabled", true );
+        this.minConcurrency = Math.max( 1, UpdaterConfiguration.getDouble( "magic.rate.minConcurrency", 1 ) );
+        this.maxConcurrency = Math.max( minConcurrency, UpdaterConfiguration.getDouble( "magic.rate.maxConcurrency", 100 ) );
+        this.minRequestsPerSecond = Math.max( 0.1, UpdaterConfiguration.getDouble( "magic.rate.minRequestsPerSecond", 1 ) );
+        this.maxRequestsPerSecond = Math.max( minRequestsPerSecond, UpdaterConfiguration.getDouble( "magic.rate.maxRequestsPerSecond", 500 ) );
+        this.decreaseFactor = UpdaterConfiguration.getDouble( "magic.rate.decreaseFactor", 0.7 );
+        this.latencyTolerance = UpdaterConfiguration.getDouble( "magic.rate.latencyTolerance", 3.0 );
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos( UpdaterConfiguration.getLong( "magic.rate.cooldownMilliseconds", 1000 ) );
+        this.latencyPercentile = clamp( UpdaterConfiguration.getDouble( "magic.rate.latencyPercentile", 90 ), 0, 100 );
+        this.latencyWindow = new long[Math.max( MIN_BASELINE_SAMPLES, UpdaterConfiguration.getInt( "magic.rate.latencyWindow", 100 ) )];
+
+        this.concurrencyLimit = clamp( UpdaterConfiguration.getDouble( "magic.rate.initialConcurrency", 16 ), minConcurrency, maxConcurrency );
+        this.requestsPerSecond = clamp( UpdaterConfiguration.getDouble( "magic.rate.initialRequestsPerSecond", 50 ), minRequestsPerSecond,
+                maxRequestsPerSecond );
+        this.tokens = 1;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos - cooldownNanos;
+    }
+
+    /**
+     * Wait until this host may be sent another request.<br>
+     * <br>
+     * Every call must be followed by exactly one call to {@link #release(long, Outcome)}.
+     * 
+     * @return The time, from {@link System#nanoTime()}, at which the request was allowed to start
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    public long acquire() throws InterruptedException {
+
+        if ( !enabled ) {
+            return System.nanoTime();
+        }
+
+        lock.lockInterruptibly();
+        try {
+            while ( true ) {
+                long now = System.nanoTime();
+                this.refill( now );
+
+                boolean concurrencyAvailable = inFlight < ( int ) concurrencyLimit;
+                if ( concurrencyAvailable && tokens >= 1 ) {
+                    tokens -= 1;
+                    inFlight++;
+                    return now;
+                }
+
+                if ( concurrencyAvailable ) {
+                    // Only waiting on the rate; sleep until the next token is due
+                    long waitNanos = ( long ) ( ( 1 - tokens ) / requestsPerSecond * TimeUnit.SECONDS.toNanos( 1 ) );
+                    capacityAvailable.awaitNanos( Math.max( 1, waitNanos ) );
+                } else {
+                    capacityAvailable.await();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Report that a request started with {@link #acquire()} has finished, and adjust the limits accordingly.
+     * 
+     * @param latencyNanos
+     *            How long the request took, in nanoseconds
+     * @param outcome
+     *            How the request finished
+     */
+    public void release( long latencyNanos, Outcome outcome ) {
+
+        if ( !enabled ) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            inFlight--;
+            switch ( outcome ) {
+            case SUCCESS:
+                long baselineLatencyNanos = this.getBaselineLatencyNanos();
+                if ( baselineLatencyNanos > 0 && latencyNanos > baselineLatencyNanos * latencyTolerance ) {
+                    this.decrease( "latency of " + TimeUnit.NANOSECONDS.toMillis( latencyNanos ) + "ms" );
+                } else {
+                    this.increase();
+                }
+                this.addLatencySample( latencyNanos );
+                break;
+            case OVERLOAD:
+                this.decrease( "server error or network failure" );
+                break;
+            default:
+                break;
+            }
+            capacityAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The host this controller limits
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return The current maximum number of requests in flight
+     */
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return ( int ) concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The current maximum number of requests started per second
+     */
+    public double getRequestsPerSecond() {
+        lock.lock();
+        try {
+            return requestsPerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of requests currently in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the tokens earned since the last refill. At most one second's worth of tokens are kept, to limit bursts.
+     */
+    private void refill( long now ) {
+        double elapsedSeconds = ( now - lastRefillNanos ) / ( double ) TimeUnit.SECONDS.toNanos( 1 );
+        tokens = Math.min( Math.max( 1, requestsPerSecond ), tokens + elapsedSeconds * requestsPerSecond );
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Additive increase: both limits grow by about one for every concurrencyLimit successful requests.
+     */
+    private void increase() {
+        concurrencyLimit = Math.min( maxConcurrency, concurrencyLimit + 1 / concurrencyLimit );
+        requestsPerSecond = Math.min( maxRequestsPerSecond, requestsPerSecond + 1 / concurrencyLimit );
+    }
+
+    /**
+     * Multiplicative decrease, at most once per cooldown period.
+     */
+    private void decrease( String reason ) {
+        long now = System.nanoTime();
+        if ( now - lastDecreaseNanos < cooldownNanos ) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        concurrencyLimit = Math.max( minConcurrency, concurrencyLimit * decreaseFactor );
+        requestsPerSecond = Math.max( minRequestsPerSecond, requestsPerSecond * decreaseFactor );
+        LOG.debug( "Backing off {} after {}. Now allowing {} concurrent requests, {} requests per second.", host, reason, ( int ) concurrencyLimit,
+                String.format( "%.1f", requestsPerSecond ) );
+    }
+
+    /**
+     * @return The latencyPercentile of the latency window, or 0 if it holds too few samples to judge by
+     */
+    private long getBaselineLatencyNanos() {
+        if ( latencySamples < MIN_BASELINE_SAMPLES ) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf( latencyWindow, latencySamples );
+        Arrays.sort( sorted );
+        int index = ( int ) Math.ceil( latencyPercentile / 100 * sorted.length ) - 1;
+        return sorted[Math.max( 0, index )];
+    }
+
+    /**
+     * Add a successful response's latency to the window, replacing the oldest once it is full.
+     */
+    private void addLatencySample( long latencyNanos ) {
+        latencyWindow[nextLatencySample] = latencyNanos;
+        nextLatencySample = ( nextLatencySample + 1 ) % latencyWindow.length;
+        latencySamples = Math.min( latencyWindow.length, latencySamples + 1 );
+    }
+
+    private static double clamp( double value, double min, double max ) {
+        return Math.max( min, Math.min( max, value ) );
+    }
+}
@@ -0,0 +1,39 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.concurrent.TimeUnit;
+
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Decides which threads run the download work for a stream of multiverse IDs.
+ * 
+ * @see DownloadWorkerPool
+ * @see PerCardDownloadScheduler
+ * @author Christopher Febles
+ *
+ */
+public interface DownloadScheduler {
+
+    /**
+     * Start downloading the given IDs. This method returns immediately; IDs are read from the source as workers become free.
+     * 
+     * @param idSource
+     *            The multiverse IDs to download
+     * @param workerFactory
+     *            Creates the workers which download each ID
+     */
+    void start( MultiverseIdSource idSource, DownloadWorker.Factory workerFactory );
+
+    /**
+     * Block until all IDs have been downloaded, and {@link DownloadWorker#finished()} has been called.
+     * 
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of timeout
+     * @return True if all work finished, false if the timeout elapsed first
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    boolean awaitCompletion( long timeout, TimeUnit unit ) throws InterruptedException;
+}
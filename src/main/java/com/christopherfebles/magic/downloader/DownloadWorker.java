@@ -0,0 +1,43 @@
+package com.christopherfebles.magic.downloader;
+
+/**
+ * A unit of download work run by a {@link DownloadScheduler}.<br>
+ * <br>
+ * A {@link DownloadWorkerPool} gives each of its threads its own worker, which does not need to be thread-safe. A {@link PerCardDownloadScheduler} shares
+ * one worker between all of its tasks, so its workers must be thread-safe.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public interface DownloadWorker {
+
+    /**
+     * Download and process the card with the given multiverse ID.
+     * 
+     * @param multiverseId
+     *            The ID of the card to download
+     */
+    void download( int multiverseId );
+
+    /**
+     * Called once, after this worker has downloaded all IDs assigned to it.
+     */
+    void finished();
+
+    /**
+     * Creates the workers of a {@link DownloadScheduler}: one for each thread of a {@link DownloadWorkerPool}, or one for every task of a
+     * {@link PerCardDownloadScheduler}.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    interface Factory {
+
+        /**
+         * @param queue
+         *            The queue the worker's IDs come from. Workers may defer and requeue failed IDs through it.
+         * @return A new worker
+         */
+        DownloadWorker newWorker( MultiverseIdChunkQueue queue );
+    }
+}
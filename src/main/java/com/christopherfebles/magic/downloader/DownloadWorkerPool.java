@@ -0,0 +1,181 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.source.CollectionIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Runs download work on a fixed number of threads.<br>
+ * <br>
+ * No matter how many IDs are submitted, this pool never starts more than its configured number of worker threads. Each thread gets its own
+ * {@link DownloadWorker} and repeatedly takes small chunks of IDs from a shared {@link MultiverseIdChunkQueue} until none remain.<br>
+ * <br>
+ * Worker threads are named with the prefix "DL_", and are not daemon threads.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class DownloadWorkerPool implements DownloadScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger( DownloadWorkerPool.class );
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int workerCount;
+    private final int chunkSize;
+    private ExecutorService executor;
+
+    /**
+     * Create a new pool sized from {@link UpdaterConfiguration}.
+     */
+    public DownloadWorkerPool() {
+        this( UpdaterConfiguration.getInt( "magic.downloader.workerThreads", 16 ), UpdaterConfiguration.getInt( "magic.downloader.chunkSize", 25 ) );
+    }
+
+    /**
+     * Create a new pool.
+     * 
+     * @param workerCount
+     *            The maximum number of threads this pool will start
+     * @param chunkSize
+     *            The number of IDs a worker takes from the queue at a time
+     */
+    public DownloadWorkerPool( int workerCount, int chunkSize ) {
+        this.workerCount = Math.max( 1, workerCount );
+        this.chunkSize = Math.max( 1, chunkSize );
+    }
+
+    /**
+     * Start downloading the given IDs. This method returns immediately.<br>
+     * <br>
+     * At least one worker is always started, so that {@link DownloadWorker#finished()} is called even for an empty list.
+     * 
+     * @param idList
+     *            The multiverse IDs to download
+     * @param workerFactory
+     *            Creates one worker for each thread
+     */
+    public void start( List<Integer> idList, DownloadWorker.Factory workerFactory ) {
+        this.start( new CollectionIdSource( idList ), workerFactory );
+    }
+
+    /**
+     * Start downloading the IDs from the given source. This method returns immediately.<br>
+     * <br>
+     * If the size of the source is known, no more threads are started than there are chunks to download. At least one worker is always started, so that
+     * {@link DownloadWorker#finished()} is called even for an empty source.
+     * 
+     * @param idSource
+     *            The multiverse IDs to download
+     * @param workerFactory
+     *            Creates one worker for each thread
+     */
+    @Override
+    public synchronized void start( MultiverseIdSource idSource, DownloadWorker.Factory workerFactory ) {
+
+        if ( executor != null ) {
+            throw new IllegalStateException( "This DownloadWorkerPool has already been started." );
+        }
+
+        MultiverseIdChunkQueue queue = new MultiverseIdChunkQueue( idSource, chunkSize );
+        int numberOfChunks = queue.numberOfChunks();
+        int numberOfThreads = numberOfChunks < 0 ? workerCount : Math.max( 1, Math.min( workerCount, numberOfChunks ) );
+        LOG.debug( "Downloading {} multiverse ids with {} threads in chunks of {}.",
+                idSource.estimatedSize() == MultiverseIdSource.UNKNOWN_SIZE ? "a stream of" : idSource.estimatedSize(), numberOfThreads, chunkSize );
+
+        executor = Executors.newFixedThreadPool( numberOfThreads, new DownloaderThreadFactory() );
+        for ( int x = 0; x < numberOfThreads; x++ ) {
+            executor.execute( new ChunkRunner( queue, workerFactory.newWorker( queue ) ) );
+        }
+        // Threads exit once the queue is drained
+        executor.shutdown();
+    }
+
+    /**
+     * Block until all workers have finished.
+     * 
+     * @param timeout
+     *            The maximum time to wait
+     * @param unit
+     *            The unit of timeout
+     * @return True if all workers finished, false if the timeout elapsed first
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    @Override
+    public boolean awaitCompletion( long timeout, TimeUnit unit ) throws InterruptedException {
+        ExecutorService localExecutor;
+        synchronized ( this ) {
+            localExecutor = executor;
+        }
+        return localExecutor == null || localExecutor.awaitTermination( timeout, unit );
+    }
+
+    /**
+     * Drains the shared queue with a single worker.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class ChunkRunner implements Runnable {
+
+        private final MultiverseIdChunkQueue queue;
+        private final DownloadWorker worker;
+
+        ChunkRunner( MultiverseIdChunkQueue queue, DownloadWorker worker ) {
+            this.queue = queue;
+            this.worker = worker;
+        }
+
+        @Override
+        public void run() {
+
+            String threadName = Thread.currentThread().getName();
+            LOG.trace( "Download thread {} started.", threadName );
+
+            int downloaded = 0;
+            List<Integer> chunk = queue.nextChunk();
+            while ( !chunk.isEmpty() ) {
+                for ( Integer id : chunk ) {
+                    try {
+                        worker.download( id );
+                    } catch ( RuntimeException e ) {
+                        // Don't let one bad card stop the rest of the queue
+                        LOG.error( "Error downloading Multiverse ID {} on thread {}.", id, threadName, e );
+                    }
+                    downloaded++;
+                }
+                chunk = queue.nextChunk();
+            }
+            worker.finished();
+
+            LOG.trace( "Download thread {} finished after {} ids.", threadName, downloaded );
+        }
+    }
+
+    /**
+     * Creates named, non-daemon download threads that log uncaught exceptions.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class DownloaderThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread newThread = new Thread( r, "DL_" + THREAD_COUNTER.incrementAndGet() );
+            newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+            newThread.setDaemon( false );
+            return newThread;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.christopherfebles.magic.downloader;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.cache.FileBackedCache;
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.model.MultiverseIdSet;
+
+/**
+ * A persistent record of the multiverse IDs which Gatherer has confirmed have no card assigned.<br>
+ * <br>
+ * IDs are kept in generations, one bitmap per run, stamped with the time that run checked them. An ID moves to the newest generation each time it is
+ * found empty again, and is removed as soon as a card is found for it. Populate runs skip every ID checked within magic.cache.emptyIdTtlDays, except for
+ * a random magic.cache.emptyIdSampleRate fraction which is checked again anyway, so new cards assigned to old IDs are eventually found.<br>
+ * <br>
+ * The generations are written, deflated, to magic.cache.emptyIdFile by {@link #saveSharedInstance()}.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class EmptyIdCache extends FileBackedCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger( EmptyIdCache.class );
+    private static final int FILE_FORMAT_VERSION = 2;
+    private static final int MAX_GENERATIONS = 32;
+
+    private static EmptyIdCache sharedInstance;
+
+    private final long ttlMilliseconds;
+    private final double sampleRate;
+    private final Random random = new Random();
+
+    // Oldest first. The last generation holds the IDs checked by this run. Guarded by this.
+    private final List<Generation> generations = new ArrayList<>();
+    private final Generation currentGeneration;
+    private int skippedIds;
+
+    /**
+     * Get the cache shared by all downloaders in this JVM, loading it from magic.cache.emptyIdFile on first use.
+     *
+     * @return The shared empty ID cache
+     */
+    public static synchronized EmptyIdCache getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new EmptyIdCache( new File( UpdaterConfiguration.getString( "magic.cache.emptyIdFile", "magicdbupdater-emptyids.bin" ) ),
+                    TimeUnit.DAYS.toMillis( UpdaterConfiguration.getLong( "magic.cache.emptyIdTtlDays", 30 ) ),
+                    UpdaterConfiguration.getDouble( "magic.cache.emptyIdSampleRate", 0.01 ) );
+            sharedInstance.load();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Write the shared cache to disk, if it has been used and modified.
+     */
+    public static synchronized void saveSharedInstance() {
+        if ( sharedInstance != null ) {
+            LOG.info( "Empty multiverse ids: {}", sharedInstance.getStatistics() );
+            sharedInstance.save();
+        }
+    }
+
+    /**
+     * Create a new, empty cache backed by the given file. Call {@link #load()} to read the file's contents.
+     *
+     * @param cacheFile
+     *            The file generations are persisted to
+     * @param ttlMilliseconds
+     *            How long an empty ID is skipped after it was last checked
+     * @param sampleRate
+     *            The fraction of skippable IDs which are checked again anyway, between 0 and 1
+     */
+    public EmptyIdCache( File cacheFile, long ttlMilliseconds, double sampleRate ) {
+        super( cacheFile, FILE_FORMAT_VERSION, "empty id cache" );
+        this.ttlMilliseconds = ttlMilliseconds;
+        this.sampleRate = sampleRate;
+        this.currentGeneration = new Generation( System.currentTimeMillis(), new MultiverseIdSet() );
+        this.generations.add( currentGeneration );
+    }
+
+    /**
+     * Decide whether a populate run should skip the given ID.
+     *
+     * @param multiverseId
+     *            The ID to check
+     * @return True if the ID was confirmed empty within the TTL, and was not sampled for another check
+     */
+    public synchronized boolean shouldSkip( int multiverseId ) {
+
+        long now = System.currentTimeMillis();
+        for ( Generation generation : generations ) {
+            if ( generation.ids.contains( multiverseId ) ) {
+                if ( now - generation.checkedAt >= ttlMilliseconds || random.nextDouble() < sampleRate ) {
+                    return false;
+                }
+                skippedIds++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record that Gatherer has no card for the given ID.
+     *
+     * @param multiverseId
+     *            The empty ID
+     */
+    public synchronized void recordEmpty( int multiverseId ) {
+        for ( Generation generation : generations ) {
+            generation.ids.remove( multiverseId );
+        }
+        currentGeneration.ids.add( multiverseId );
+        this.markModified();
+    }
+
+    /**
+     * Record that Gatherer has a card for the given ID, so it is never skipped.
+     *
+     * @param multiverseId
+     *            The ID with a card
+     */
+    public synchronized void recordCard( int multiverseId ) {
+        for ( Generation generation : generations ) {
+            if ( generation.ids.remove( multiverseId ) ) {
+                this.markModified();
+            }
+        }
+    }
+
+    /**
+     * @return The number of IDs known to be empty
+     */
+    @Override
+    public synchronized int size() {
+        int size = 0;
+        for ( Generation generation : generations ) {
+            size += generation.ids.size();
+        }
+        return size;
+    }
+
+    /**
+     * Summarize cache contents for logging.
+     *
+     * @return A human-readable description of the cache
+     */
+    public synchronized String getStatistics() {
+        return String.format( "%d known empty in %d generations, %d skipped, %d confirmed by this run.", this.size(), generations.size(), skippedIds,
+                currentGeneration.ids.size() );
+    }
+
+    @Override
+    protected void readContents( DataInput in ) throws IOException {
+
+        List<Generation> loaded = new ArrayList<>();
+        int count = in.readInt();
+        for ( int x = 0; x < count; x++ ) {
+            long checkedAt = in.readLong();
+            loaded.add( new Generation( checkedAt, MultiverseIdSet.readFrom( in ) ) );
+        }
+        // Keep the current generation last
+        generations.addAll( generations.size() - 1, loaded );
+    }
+
+    /**
+     * Write every generation. Empty generations are dropped first, and the oldest are merged once there are more than {@link #MAX_GENERATIONS}. Merged
+     * IDs keep the older timestamp, so they are never skipped for longer than their TTL.
+     */
+    @Override
+    protected void writeContents( DataOutput out ) throws IOException {
+
+        Iterator<Generation> iterator = generations.iterator();
+        while ( iterator.hasNext() ) {
+            Generation generation = iterator.next();
+            if ( generation != currentGeneration && generation.ids.isEmpty() ) {
+                iterator.remove();
+            }
+        }
+        while ( generations.size() > MAX_GENERATIONS ) {
+            Generation oldest = generations.remove( 0 );
+            generations.get( 0 ).ids.addAll( oldest.ids );
+            generations.set( 0, new Generation( oldest.checkedAt, generations.get( 0 ).ids ) );
+        }
+
+        out.writeInt( generations.size() );
+        for ( Generation generation : generations ) {
+            out.writeLong( generation.checkedAt );
+            generation.ids.writeTo( out );
+        }
+    }
+
+    /**
+     * The IDs confirmed empty by a single run.
+     */
+    private static class Generation {
+
+        private final long checkedAt;
+        private final MultiverseIdSet ids;
+
+        Generation( long checkedAt, MultiverseIdSet ids ) {
+            this.checkedAt = checkedAt;
+            this.ids = ids;
+        }
+    }
+}
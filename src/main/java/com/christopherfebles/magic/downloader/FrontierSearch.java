@@ -0,0 +1,170 @@
+package com.christopherfebles.magic.downloader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * Finds the highest multiverse ID with a card assigned, starting from an ID known to have one, with as few probes as possible.<br>
+ * <br>
+ * New sets are assigned blocks of IDs just above the previous ones, with small gaps between cards. The search gallops upward, doubling its step after each
+ * hit and halving it after each miss. Once a step of 1 misses, it probes the next magic.frontier.maxConsecutiveMisses IDs one by one; if none of them has a
+ * card, the last hit is the frontier. Otherwise the search continues galloping from the new hit.<br>
+ * <br>
+ * A probe which fails, for instance because Gatherer is unreachable, says nothing about whether its ID has a card, so it is never counted as a miss.
+ * Probes retry on their own, so a failure ends the search at the last ID confirmed to have a card, and {@link #isComplete()} reports that the frontier
+ * may lie further on.<br>
+ * <br>
+ * A search across a few new sets costs a few thousand probes at most, rather than a scan of every possible ID.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class FrontierSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger( FrontierSearch.class );
+
+    private final Probe probe;
+    private final int maxConsecutiveMisses;
+    private final int maxStep;
+    private final Map<Integer, Boolean> results = new HashMap<>();
+    private int failedProbes;
+    private boolean complete;
+
+    /**
+     * Checks whether a single multiverse ID has a card assigned.
+     *
+     * @author Christopher Febles
+     *
+     */
+    public interface Probe {
+
+        /**
+         * @param multiverseId
+         *            The ID to check
+         * @return True if Gatherer has a card for the ID, false if it has none
+         * @throws IOException
+         *             If the ID could not be checked
+         */
+        boolean hasCard( int multiverseId ) throws IOException;
+    }
+
+    /**
+     * Create a new search configured by magic.frontier.maxConsecutiveMisses and magic.frontier.maxStep.
+     *
+     * @param probe
+     *            Checks single IDs for a card
+     */
+    public FrontierSearch( Probe probe ) {
+        this( probe, UpdaterConfiguration.getInt( "magic.frontier.maxConsecutiveMisses", 1000 ), UpdaterConfiguration.getInt( "magic.frontier.maxStep",
+                4096 ) );
+    }
+
+    /**
+     * Create a new search.
+     *
+     * @param probe
+     *            Checks single IDs for a card
+     * @param maxConsecutiveMisses
+     *            The number of IDs in a row without a card after which the search stops
+     * @param maxStep
+     *            The largest jump made while galloping
+     */
+    public FrontierSearch( Probe probe, int maxConsecutiveMisses, int maxStep ) {
+        this.probe = probe;
+        this.maxConsecutiveMisses = Math.max( 1, maxConsecutiveMisses );
+        this.maxStep = Math.max( 1, maxStep );
+    }
+
+    /**
+     * Search upward from the given ID for the last ID with a card.
+     *
+     * @param startId
+     *            The ID to start from, usually the highest ID already in the database. It is not probed.
+     * @return The highest ID found with a card, or startId if none was found above it. If a probe failed, this is the highest ID confirmed to have a card
+     *         before it did.
+     */
+    public int findFrontier( int startId ) {
+
+        int lastHit = startId;
+        int step = 1;
+        complete = false;
+
+        try {
+            while ( true ) {
+                if ( this.probe( lastHit + step ) ) {
+                    lastHit += step;
+                    step = Math.min( step * 2, maxStep );
+                    continue;
+                }
+                if ( step > 1 ) {
+                    // Overshot the end of the current block of cards
+                    step /= 2;
+                    continue;
+                }
+
+                // Walk the gap one ID at a time, in case another block of cards starts after it
+                int nextHit = -1;
+                for ( int x = 2; x <= maxConsecutiveMisses && nextHit < 0; x++ ) {
+                    if ( this.probe( lastHit + x ) ) {
+                        nextHit = lastHit + x;
+                    }
+                }
+                if ( nextHit < 0 ) {
+                    break;
+                }
+                lastHit = nextHit;
+            }
+        } catch ( IOException e ) {
+            LOG.error( "Probe failed. Stopping the search at multiverse id {}, the last id confirmed to have a card.", lastHit, e );
+            return lastHit;
+        }
+
+        complete = true;
+        LOG.debug( "Frontier found at multiverse id {} after {} probes, starting from {}.", lastHit, results.size(), startId );
+        return lastHit;
+    }
+
+    /**
+     * @return True if the last search ended by finding magic.frontier.maxConsecutiveMisses IDs in a row without a card, false if a probe failed first
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The number of probes which failed, and so were counted as neither a hit nor a miss
+     */
+    public int getNumberOfFailedProbes() {
+        return failedProbes;
+    }
+
+    /**
+     * @return The number of distinct IDs probed successfully so far
+     */
+    public int getNumberOfProbes() {
+        return results.size();
+    }
+
+    /**
+     * Probe an ID, remembering the result so no ID is requested twice. Failures are counted, but not remembered.
+     */
+    private boolean probe( int multiverseId ) throws IOException {
+        Boolean result = results.get( multiverseId );
+        if ( result == null ) {
+            try {
+                result = probe.hasCard( multiverseId );
+            } catch ( IOException e ) {
+                failedProbes++;
+                throw e;
+            }
+            results.put( multiverseId, result );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,293 @@
+package com.christopherfebles.magic.downloader;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * A single pooled HTTP client shared by every MagicGathererDataDownloader and its clones.<br>
+ * <br>
+ * Connections to Gatherer are kept alive and reused between requests, rather than opening a new TCP connection for every URL. Pool limits, keep-alive and
+ * idle eviction are configured through {@link UpdaterConfiguration}. The pool also records how long requests wait to lease a connection, and how long each
+ * connection stays leased.
+ * 
+ * @see MagicGathererDataDownloader
+ * @author Christopher Febles
+ *
+ */
+public class GathererConnectionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger( GathererConnectionPool.class );
+
+    private static GathererConnectionPool sharedInstance;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Thread idleConnectionMonitor;
+
+    // Pool statistics
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong releaseCount = new AtomicLong();
+    private final AtomicLong totalLeaseNanos = new AtomicLong();
+    private final Map<HttpClientConnection, Long> leaseStartTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Get the pool shared by all downloaders in this JVM, creating it on first use.
+     * 
+     * @return The shared connection pool
+     */
+    public static synchronized GathererConnectionPool getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new GathererConnectionPool();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Shut down the shared pool, if it has been created. A later call to {@link #getSharedInstance()} will create a new pool.
+     */
+    public static synchronized void shutdownSharedInstance() {
+        if ( sharedInstance != null ) {
+            sharedInstance.shutdown();
+            sharedInstance = null;
+        }
+    }
+
+    /**
+     * Create a new pool configured from {@link UpdaterConfiguration}.
+     */
+    public GathererConnectionPool() {
+
+        int maxTotal = UpdaterConfiguration.getInt( "magic.http.maxTotalConnections", 100 );
+        int maxPerRoute = UpdaterConfiguration.getInt( "magic.http.maxConnectionsPerRoute", 100 );
+        long connectionTimeToLive = UpdaterConfiguration.getLong( "magic.http.connectionTimeToLiveMilliseconds", 5 * 60 * 1000 );
+        final long defaultKeepAlive = UpdaterConfiguration.getLong( "magic.http.keepAliveMilliseconds", 30 * 1000 );
+        final long idleTimeout = UpdaterConfiguration.getLong( "magic.http.idleTimeoutMilliseconds", 60 * 1000 );
+        final long evictionInterval = UpdaterConfiguration.getLong( "magic.http.idleEvictionIntervalMilliseconds", 10 * 1000 );
+        int connectTimeout = UpdaterConfiguration.getInt( "magic.http.connectTimeoutMilliseconds", 30 * 1000 );
+        int socketTimeout = UpdaterConfiguration.getInt( "magic.http.socketTimeoutMilliseconds", 60 * 1000 );
+        int leaseTimeout = UpdaterConfiguration.getInt( "magic.http.connectionRequestTimeoutMilliseconds", 5 * 60 * 1000 );
+
+        connectionManager = new PoolingHttpClientConnectionManager( connectionTimeToLive, TimeUnit.MILLISECONDS );
+        connectionManager.setMaxTotal( maxTotal );
+        connectionManager.setDefaultMaxPerRoute( maxPerRoute );
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout( connectTimeout )
+                .setSocketTimeout( socketTimeout )
+                .setConnectionRequestTimeout( leaseTimeout )
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager( new InstrumentedConnectionManager() )
+                .setKeepAliveStrategy( new ConnectionKeepAliveStrategy() {
+
+                    @Override
+                    public long getKeepAliveDuration( HttpResponse response, HttpContext context ) {
+                        // Honor the server's Keep-Alive header if present, otherwise use the configured default
+                        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration( response, context );
+                        return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+                    }
+                } )
+                .setDefaultRequestConfig( requestConfig )
+                .build();
+
+        idleConnectionMonitor = new Thread( "HTTP_IdleConnectionMonitor" ) {
+
+            @Override
+            public void run() {
+                try {
+                    while ( !isInterrupted() ) {
+                        Thread.sleep( evictionInterval );
+                        connectionManager.closeExpiredConnections();
+                        connectionManager.closeIdleConnections( idleTimeout, TimeUnit.MILLISECONDS );
+                        LOG.trace( "Evicted expired and idle connections. {}", GathererConnectionPool.this.getStatistics() );
+                    }
+                } catch ( InterruptedException e ) {
+                    LOG.trace( "Idle connection monitor stopped." );
+                }
+            }
+        };
+        idleConnectionMonitor.setDaemon( true );
+        idleConnectionMonitor.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+        idleConnectionMonitor.start();
+
+        LOG.debug( "Created HTTP connection pool with {} total connections, {} per route.", maxTotal, maxPerRoute );
+    }
+
+    /**
+     * Get the pooled client. Callers must close each response they receive, but must never close the client itself.
+     * 
+     * @return The HTTP client backed by this pool
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Close all pooled connections and stop the idle connection monitor.
+     */
+    public void shutdown() {
+        LOG.debug( "Shutting down HTTP connection pool. {}", this.getStatistics() );
+        idleConnectionMonitor.interrupt();
+        try {
+            httpClient.close();
+        } catch ( IOException e ) {
+            LOG.error( "Error closing pooled HTTP client.", e );
+        }
+    }
+
+    /**
+     * @return The number of connections leased from this pool so far
+     */
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * @return The average time, in milliseconds, a request waited to lease a connection
+     */
+    public double getAverageWaitMilliseconds() {
+        long leases = leaseCount.get();
+        return leases == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros( totalWaitNanos.get() ) / 1000.0 / leases;
+    }
+
+    /**
+     * @return The longest time, in milliseconds, a request waited to lease a connection
+     */
+    public double getMaximumWaitMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMicros( maxWaitNanos.get() ) / 1000.0;
+    }
+
+    /**
+     * @return The average time, in milliseconds, a connection was held before being returned to the pool
+     */
+    public double getAverageLeaseMilliseconds() {
+        long releases = releaseCount.get();
+        return releases == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros( totalLeaseNanos.get() ) / 1000.0 / releases;
+    }
+
+    /**
+     * Summarize the current state of the pool for logging.
+     * 
+     * @return A human-readable description of pool usage
+     */
+    public String getStatistics() {
+        PoolStats stats = connectionManager.getTotalStats();
+        return String.format( "Pool: %d leased, %d pending, %d available, %d max. %d leases, wait avg %.2fms max %.2fms, lease avg %.2fms.",
+                stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax(), this.getLeaseCount(), this.getAverageWaitMilliseconds(),
+                this.getMaximumWaitMilliseconds(), this.getAverageLeaseMilliseconds() );
+    }
+
+    /**
+     * Record the time a caller spent waiting for a connection.
+     * 
+     * @param waitNanos
+     *            Time spent waiting, in nanoseconds
+     */
+    private void recordWait( long waitNanos ) {
+        leaseCount.incrementAndGet();
+        totalWaitNanos.addAndGet( waitNanos );
+        long currentMax;
+        do {
+            currentMax = maxWaitNanos.get();
+        } while ( waitNanos > currentMax && !maxWaitNanos.compareAndSet( currentMax, waitNanos ) );
+    }
+
+    /**
+     * Wraps the pooling connection manager to measure lease wait and lease duration.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private class InstrumentedConnectionManager implements HttpClientConnectionManager {
+
+        @Override
+        public ConnectionRequest requestConnection( HttpRoute route, Object state ) {
+
+            final ConnectionRequest request = connectionManager.requestConnection( route, state );
+            return new ConnectionRequest() {
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+
+                @Override
+                public HttpClientConnection get( long timeout, TimeUnit tunit ) throws InterruptedException, ExecutionException,
+                        ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    HttpClientConnection connection = request.get( timeout, tunit );
+                    long leased = System.nanoTime();
+                    recordWait( leased - start );
+                    leaseStartTimes.put( connection, leased );
+                    return connection;
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection( HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit ) {
+            Long leased = leaseStartTimes.remove( conn );
+            if ( leased != null ) {
+                releaseCount.incrementAndGet();
+                totalLeaseNanos.addAndGet( System.nanoTime() - leased );
+            }
+            connectionManager.releaseConnection( conn, newState, validDuration, timeUnit );
+        }
+
+        @Override
+        public void connect( HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context ) throws IOException {
+            connectionManager.connect( conn, route, connectTimeout, context );
+        }
+
+        @Override
+        public void upgrade( HttpClientConnection conn, HttpRoute route, HttpContext context ) throws IOException {
+            connectionManager.upgrade( conn, route, context );
+        }
+
+        @Override
+        public void routeComplete( HttpClientConnection conn, HttpRoute route, HttpContext context ) throws IOException {
+            connectionManager.routeComplete( conn, route, context );
+        }
+
+        @Override
+        public void closeIdleConnections( long idletime, TimeUnit tunit ) {
+            connectionManager.closeIdleConnections( idletime, tunit );
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            connectionManager.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            connectionManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.List;
+import java.util.Observer;
+
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Common contract of the Gatherer download engines.<br>
+ * <br>
+ * An engine downloads the raw data of each requested card and sends it, as a MagicCardRawData object, to every registered Observer. Once an engine's
+ * threads have finished, a null object is sent to the Observers.
+ * 
+ * @see MagicGathererDataDownloader
+ * @see MagicGathererAsyncDataDownloader
+ * @author Christopher Febles
+ *
+ */
+public interface GathererDownloader {
+
+    /**
+     * Register an Observer to receive downloaded card data. Observers which implement CloneableObserver are cloned for each thread that notifies them.
+     * 
+     * @param o
+     *            The Observer to add
+     */
+    void addObserver( Observer o );
+
+    /**
+     * Download all cards with the Multiverse Ids in the given list. This method returns immediately; downloads happen on the engine's own threads.
+     * 
+     * @param idList
+     *            The list of multiverse Ids to load
+     */
+    void start( List<Integer> idList );
+
+    /**
+     * Download all cards with the Multiverse Ids from the given source. This method returns immediately; IDs are read lazily on the engine's own threads,
+     * and the source is closed once it has been read.
+     * 
+     * @param idSource
+     *            The multiverse Ids to load
+     */
+    void start( MultiverseIdSource idSource );
+}
@@ -0,0 +1,495 @@
+package com.christopherfebles.magic.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.model.MagicCardRawData;
+import com.christopherfebles.magic.observer.CloneableObserver;
+import com.christopherfebles.magic.source.CollectionIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Download Magic card data from Gatherer with a non-blocking HTTP client.<br>
+ * <br>
+ * This engine follows the same start/Observer contract as {@link MagicGathererDataDownloader}, but no thread is blocked while a request is in flight. A few
+ * I/O reactor threads keep up to magic.async.maxConcurrentRequests requests open at a time. IDs are only taken from the list as capacity frees up, so a
+ * slow Gatherer (or a slow database) holds back the ID source rather than filling memory.<br>
+ * <br>
+ * Completed cards are handed to magic.async.processingThreads "DO_" threads. Each of these notifies its own clones of this object's CloneableObservers, so
+ * parsing and database writes never run on an I/O reactor thread.<br>
+ * <br>
+ * With magic.cache.emptyIds enabled, the processing threads record every data page found with or without a card in the {@link EmptyIdCache}, as
+ * {@link MagicGathererDataDownloader} does, so later populate runs can skip IDs already known to be empty.<br>
+ * <br>
+ * NOTE: A null object will be sent to all Observers by each processing Thread once all cards have been downloaded.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class MagicGathererAsyncDataDownloader extends Observable implements GathererDownloader, Cloneable {
+
+    private static final Logger LOG = LoggerFactory.getLogger( MagicGathererAsyncDataDownloader.class );
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final int PAGES_PER_CARD = 3;
+    // How often the feeder checks for retries while it waits for request permits
+    private static final long RETRY_POLL_MILLISECONDS = 10;
+
+    private Set<CloneableObserver> cloneableObservers;
+    private int maxConcurrentRequests;
+    private int processingThreads;
+    private EmptyIdCache emptyIdCache;
+
+    /**
+     * Default Constructor. Limits are read from {@link UpdaterConfiguration}.
+     */
+    public MagicGathererAsyncDataDownloader() {
+        this( UpdaterConfiguration.getInt( "magic.async.maxConcurrentRequests", 200 ), UpdaterConfiguration.getInt( "magic.async.processingThreads", Runtime
+                .getRuntime().availableProcessors() ) );
+    }
+
+    /**
+     * Create a new downloader with the given limits.
+     * 
+     * @param maxConcurrentRequests
+     *            The maximum number of HTTP requests in flight, or waiting to be processed, at any time. At least three, since each card has three pages.
+     * @param processingThreads
+     *            The number of threads which send downloaded cards to Observers
+     */
+    public MagicGathererAsyncDataDownloader( int maxConcurrentRequests, int processingThreads ) {
+        this.cloneableObservers = new HashSet<>();
+        this.maxConcurrentRequests = Math.max( PAGES_PER_CARD, maxConcurrentRequests );
+        this.processingThreads = Math.max( 1, processingThreads );
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.emptyIds", true ) ) {
+            this.emptyIdCache = EmptyIdCache.getSharedInstance();
+        }
+    }
+
+    @Override
+    public MagicGathererAsyncDataDownloader clone() {
+        MagicGathererAsyncDataDownloader clone = new MagicGathererAsyncDataDownloader( maxConcurrentRequests, processingThreads );
+
+        if ( CollectionUtils.isNotEmpty( cloneableObservers ) ) {
+            Iterator<CloneableObserver> iterator = cloneableObservers.iterator();
+            while ( iterator.hasNext() ) {
+                CloneableObserver o = iterator.next();
+                clone.addObserver( ( Observer ) o.clone() );
+            }
+        }
+
+        return clone;
+    }
+
+    @Override
+    /**
+     * Overridden method tracks all Observers watching this object.
+     */
+    public void addObserver( Observer o ) {
+        super.addObserver( o );
+        if ( o instanceof CloneableObserver ) {
+            cloneableObservers.add( ( CloneableObserver ) o );
+        }
+    }
+
+    /**
+     * Download all cards with the Multiverse Ids in the given list.
+     * 
+     * @param idList
+     *            The list of multiverse Ids to load
+     */
+    @Override
+    public void start( List<Integer> idList ) {
+        this.start( new CollectionIdSource( idList ) );
+    }
+
+    /**
+     * Download all cards with the Multiverse Ids from the given source.<br>
+     * <br>
+     * A single "DL_" thread feeds IDs to the HTTP client, waiting whenever magic.async.maxConcurrentRequests requests are outstanding. IDs are only read
+     * from the source as requests complete. Failed pages are handed back to the same thread by the {@link RetryScheduler} once their backoff delay has
+     * passed, so only this thread ever waits on the host's rate controller.
+     * 
+     * @param idSource
+     *            The multiverse Ids to load
+     */
+    @Override
+    public void start( final MultiverseIdSource idSource ) {
+        LOG.trace( "New MagicGathererAsyncDataDownloader with id {} started.", System.identityHashCode( this ) );
+
+        Thread feederThread = new Thread( "DL_async_" + THREAD_COUNTER.incrementAndGet() ) {
+
+            @Override
+            public void run() {
+                new AsyncDownload( MagicGathererAsyncDataDownloader.this ).run( idSource );
+            }
+        };
+        feederThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+        feederThread.setDaemon( false );
+        feederThread.start();
+    }
+
+    /**
+     * Send downloaded data to this object's Observers.
+     * 
+     * @param data
+     *            The data to send, or null to indicate downloading is complete
+     */
+    private void notifyAllObservers( MagicCardRawData data ) {
+        this.setChanged();
+        this.notifyObservers( data );
+    }
+
+    /**
+     * Record whether a card's data page describes a card. A page which failed to load says nothing either way, so it is not recorded.
+     * 
+     * @param data
+     *            A downloaded card
+     */
+    private void recordEmptyId( MagicCardRawData data ) {
+        if ( emptyIdCache == null || data.getDataByteArray() == null ) {
+            return;
+        }
+        if ( MagicGathererDataDownloader.hasCard( data.getDataByteArray() ) ) {
+            emptyIdCache.recordCard( data.getMultiverseId() );
+        } else {
+            emptyIdCache.recordEmpty( data.getMultiverseId() );
+        }
+    }
+
+    /**
+     * The state of a single call to {@link MagicGathererAsyncDataDownloader#start(List)}.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private class AsyncDownload {
+
+        private final MagicGathererAsyncDataDownloader prototype;
+        private final Semaphore requestPermits;
+        private final BlockingQueue<MagicCardRawData> processingQueue = new LinkedBlockingQueue<>();
+        // Failed pages whose backoff delay has passed, waiting for the feeder thread to request them again
+        private final BlockingQueue<PageRetry> retryQueue = new LinkedBlockingQueue<>();
+        private final MagicCardRawData endOfQueue = new MagicCardRawData( -1, null, null, null );
+        private final RetryScheduler retryScheduler = RetryScheduler.getSharedInstance();
+        private CloseableHttpAsyncClient httpClient;
+
+        AsyncDownload( MagicGathererAsyncDataDownloader prototype ) {
+            this.prototype = prototype;
+            this.requestPermits = new Semaphore( maxConcurrentRequests );
+        }
+
+        /**
+         * Feed all IDs to the HTTP client, then wait for every card to be processed.
+         * 
+         * @param idSource
+         *            The IDs to download
+         */
+        void run( MultiverseIdSource idSource ) {
+
+            int connectTimeout = UpdaterConfiguration.getInt( "magic.http.connectTimeoutMilliseconds", 30 * 1000 );
+            int socketTimeout = UpdaterConfiguration.getInt( "magic.http.socketTimeoutMilliseconds", 60 * 1000 );
+            int ioThreads = UpdaterConfiguration.getInt( "magic.async.ioThreads", Runtime.getRuntime().availableProcessors() );
+
+            httpClient = HttpAsyncClients.custom()
+                    .setMaxConnTotal( maxConcurrentRequests )
+                    .setMaxConnPerRoute( maxConcurrentRequests )
+                    .setDefaultIOReactorConfig( IOReactorConfig.custom().setIoThreadCount( ioThreads ).build() )
+                    .setDefaultRequestConfig( RequestConfig.custom().setConnectTimeout( connectTimeout ).setSocketTimeout( socketTimeout ).build() )
+                    .build();
+            httpClient.start();
+
+            List<Thread> processors = new ArrayList<>();
+            for ( int x = 0; x < processingThreads; x++ ) {
+                Thread processor = new CardProcessorThread( prototype.clone() );
+                processor.start();
+                processors.add( processor );
+            }
+
+            LOG.debug( "Downloading multiverse ids with at most {} concurrent requests.", maxConcurrentRequests );
+            try {
+                for ( int id = idSource.nextId(); id != MultiverseIdSource.NO_MORE_IDS; id = idSource.nextId() ) {
+                    // Backpressure: wait until there is room for all pages of this card
+                    this.acquirePermits( PAGES_PER_CARD );
+                    this.downloadCard( id );
+                }
+                // Wait for every outstanding card to be downloaded and processed
+                this.acquirePermits( maxConcurrentRequests );
+            } catch ( InterruptedException e ) {
+                LOG.error( "Interrupted while downloading. Remaining ids will not be loaded.", e );
+                Thread.currentThread().interrupt();
+            } finally {
+                idSource.close();
+                for ( int x = 0; x < processors.size(); x++ ) {
+                    processingQueue.add( endOfQueue );
+                }
+                try {
+                    httpClient.close();
+                } catch ( IOException e ) {
+                    LOG.error( "Error closing asynchronous HTTP client.", e );
+                }
+            }
+            LOG.trace( "MagicGathererAsyncDataDownloader feeder thread finished." );
+        }
+
+        /**
+         * Wait for the given number of request permits, requesting any retries which become due in the meantime.<br>
+         * <br>
+         * Retries already hold their card's permits, so they are requested whether or not permits are free, and before any new card.
+         * 
+         * @param permits
+         *            The number of permits to acquire
+         * @throws InterruptedException
+         *             If interrupted while waiting
+         */
+        private void acquirePermits( int permits ) throws InterruptedException {
+
+            this.requestDueRetries();
+            while ( !requestPermits.tryAcquire( permits ) ) {
+                PageRetry retry = retryQueue.poll( RETRY_POLL_MILLISECONDS, TimeUnit.MILLISECONDS );
+                if ( retry != null ) {
+                    this.request( retry.card, retry.page, retry.url, retry.attemptNumber );
+                    this.requestDueRetries();
+                }
+            }
+        }
+
+        /**
+         * Request every retry handed back by the {@link RetryScheduler} so far, without waiting for more.
+         */
+        private void requestDueRetries() {
+            for ( PageRetry retry = retryQueue.poll(); retry != null; retry = retryQueue.poll() ) {
+                this.request( retry.card, retry.page, retry.url, retry.attemptNumber );
+            }
+        }
+
+        /**
+         * Request all pages of a single card.
+         * 
+         * @param id
+         *            The multiverse ID of the card
+         */
+        private void downloadCard( int id ) {
+            LOG.debug( "Loading Magic Card with Multiverse ID: {}", id );
+            PendingCard card = new PendingCard( id );
+            this.request( card, 0, MagicGathererDataDownloader.GATHERER_BASE_URL + id, 0 );
+            this.request( card, 1, MagicGathererDataDownloader.GATHERER_IMAGE_BASE_URL + id, 0 );
+            this.request( card, 2, MagicGathererDataDownloader.GATHERER_LANGUAGE_BASE_URL + id, 0 );
+        }
+
+        /**
+         * Issue a single non-blocking request for one page of a card.
+         * 
+         * @param card
+         *            The card the page belongs to
+         * @param page
+         *            The index of the page within the card
+         * @param url
+         *            The URL to load
+         * @param attemptNumber
+         *            The number of times this URL has already failed
+         */
+        private void request( final PendingCard card, final int page, final String url, final int attemptNumber ) {
+
+            HttpGet httpGet = new HttpGet( url );
+
+            // Wait until the host's rate controller allows another request. This blocks the feeder thread, never an I/O thread or the retry timer.
+            final AdaptiveRateController rateController = AdaptiveRateController.forHost( httpGet.getURI().getHost() );
+            final long requestStart;
+            try {
+                requestStart = rateController.acquire();
+            } catch ( InterruptedException e ) {
+                LOG.error( "Interrupted while waiting to load URL: {}", url, e );
+                Thread.currentThread().interrupt();
+                pageLoaded( card, page, null, attemptNumber );
+                return;
+            }
+
+            httpClient.execute( httpGet, new FutureCallback<HttpResponse>() {
+
+                @Override
+                public void completed( HttpResponse response ) {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    try {
+                        if ( statusCode == HttpStatus.SC_OK ) {
+                            byte[] content = EntityUtils.toByteArray( response.getEntity() );
+                            rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.SUCCESS );
+                            pageLoaded( card, page, content, attemptNumber );
+                        } else if ( statusCode >= 500 && statusCode < 600 ) {
+                            // For server side errors, retry
+                            rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.OVERLOAD );
+                            retry( card, page, url, attemptNumber, new SocketException( "Non-OK Status Code returned: " + statusCode ) );
+                        } else {
+                            rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.IGNORED );
+                            LOG.error( "Error loading URL: {}", url, new IOException( "Non-OK Status Code returned: " + statusCode ) );
+                            pageLoaded( card, page, null, attemptNumber );
+                        }
+                    } catch ( IOException e ) {
+                        rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.IGNORED );
+                        LOG.error( "Error loading URL: {}", url, e );
+                        pageLoaded( card, page, null, attemptNumber );
+                    }
+                }
+
+                @Override
+                public void failed( Exception e ) {
+                    if ( e instanceof SocketException ) {
+                        // Assuming a SocketException indicates a network failure
+                        rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.OVERLOAD );
+                        retry( card, page, url, attemptNumber, e );
+                    } else {
+                        AdaptiveRateController.Outcome outcome = e instanceof InterruptedIOException ? AdaptiveRateController.Outcome.OVERLOAD
+                                : AdaptiveRateController.Outcome.IGNORED;
+                        rateController.release( System.nanoTime() - requestStart, outcome );
+                        LOG.error( "Error loading URL: {}", url, e );
+                        pageLoaded( card, page, null, attemptNumber );
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    rateController.release( System.nanoTime() - requestStart, AdaptiveRateController.Outcome.IGNORED );
+                    LOG.error( "Request cancelled for URL: {}", url );
+                    pageLoaded( card, page, null, attemptNumber );
+                }
+            } );
+        }
+
+        /**
+         * Schedule another attempt at a failed page with the {@link RetryScheduler}, without blocking any thread while waiting. Once its delay has passed,
+         * the timer only hands the page back to the feeder thread, which requests it.
+         */
+        private void retry( PendingCard card, int page, String url, int attemptNumber, Exception cause ) {
+
+            final PageRetry pageRetry = new PageRetry( card, page, url, attemptNumber + 1 );
+            LOG.warn( "Unable to connect to given URL: {}.", url, cause );
+            boolean scheduled = retryScheduler.scheduleRetry( pageRetry.attemptNumber, url, new Runnable() {
+
+                @Override
+                public void run() {
+                    retryQueue.add( pageRetry );
+                }
+            } );
+            if ( scheduled ) {
+                retryScheduler.recordAttempt( attemptNumber, RetryScheduler.AttemptResult.RETRYABLE_FAILURE );
+            } else {
+                pageLoaded( card, page, null, attemptNumber );
+            }
+        }
+
+        /**
+         * Record a finished page. Once all pages of the card are finished, the card is queued for processing.
+         */
+        private void pageLoaded( PendingCard card, int page, byte[] content, int attemptNumber ) {
+            retryScheduler.recordAttempt( attemptNumber, content == null ? RetryScheduler.AttemptResult.FAILURE : RetryScheduler.AttemptResult.SUCCESS );
+            card.pages[page] = content;
+            if ( card.remainingPages.decrementAndGet() == 0 ) {
+                processingQueue.add( new MagicCardRawData( card.multiverseId, card.pages[0], card.pages[1], card.pages[2] ) );
+            }
+        }
+
+        /**
+         * Sends completed cards to a private clone of the downloader's Observers.
+         * 
+         * @author Christopher Febles
+         *
+         */
+        private class CardProcessorThread extends Thread {
+
+            private final MagicGathererAsyncDataDownloader downloader;
+
+            CardProcessorThread( MagicGathererAsyncDataDownloader downloader ) {
+                super( "DO_async_" + THREAD_COUNTER.incrementAndGet() );
+                this.downloader = downloader;
+                this.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                this.setDaemon( false );
+            }
+
+            @Override
+            public void run() {
+                try {
+                    MagicCardRawData data = processingQueue.take();
+                    while ( data != endOfQueue ) {
+                        try {
+                            prototype.recordEmptyId( data );
+                            LOG.trace( "Notifying all observers new data object with id {} available for processing.", data.getMultiverseId() );
+                            downloader.notifyAllObservers( data );
+                        } catch ( RuntimeException e ) {
+                            LOG.error( "Error processing Multiverse ID {}.", data.getMultiverseId(), e );
+                        } finally {
+                            // The card's pages no longer count against the request limit
+                            requestPermits.release( PAGES_PER_CARD );
+                        }
+                        data = processingQueue.take();
+                    }
+                } catch ( InterruptedException e ) {
+                    LOG.error( "Card processor interrupted.", e );
+                }
+                downloader.notifyAllObservers( null );
+            }
+        }
+    }
+
+    /**
+     * A failed page of a card, to be requested again.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class PageRetry {
+
+        private final PendingCard card;
+        private final int page;
+        private final String url;
+        private final int attemptNumber;
+
+        PageRetry( PendingCard card, int page, String url, int attemptNumber ) {
+            this.card = card;
+            this.page = page;
+            this.url = url;
+            this.attemptNumber = attemptNumber;
+        }
+    }
+
+    /**
+     * The pages of a card, as they arrive.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class PendingCard {
+
+        private final int multiverseId;
+        private final byte[][] pages = new byte[PAGES_PER_CARD][];
+        private final AtomicInteger remainingPages = new AtomicInteger( PAGES_PER_CARD );
+
+        PendingCard( int multiverseId ) {
+            this.multiverseId = multiverseId;
+        }
+    }
+}
@@ -1,14 +1,25 @@
 package com.christopherfebles.magic.downloader;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.SocketException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.http.HttpEntity;
@@ -16,52 +27,119 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.downloader.RetryScheduler.AttemptResult;
 import com.christopherfebles.magic.model.MagicCardRawData;
 import com.christopherfebles.magic.observer.CloneableObserver;
+import com.christopherfebles.magic.source.CollectionIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
 
 /**
  * Download Magic card data from Gatherer.<br>
  * <br>
- * This class is multi-threaded and uses a recursive method to handle HTTP errors. Downloading thousands of cards will be memory-intensive.<br>
+ * This class is multi-threaded. Downloading thousands of cards will be memory-intensive.<br>
+ * <br>
+ * Pages which fail with a network or server-side error are retried by the {@link RetryScheduler}. Rather than waiting, the download thread defers the card
+ * and moves on to other IDs; the card is requeued once its backoff delay has passed, and only its failed pages are requested again.<br>
+ * <br>
+ * With magic.cache.revalidate enabled, pages are requested with the validators stored in the {@link ValidatorCache}. A card whose pages all come back 304
+ * Not Modified is not sent to Observers, so it is neither parsed nor written again. The validators of a changed page are only stored once the Observer has
+ * saved its card. IDs found to have no card keep no validators, so their data page is always requested in full.<br>
+ * <br>
+ * With magic.downloader.probeFirst enabled, the data page of each card is loaded first, and the image and language pages are only requested if it
+ * describes a card. Most multiverse IDs have no card, so this saves two requests for each of them.<br>
+ * <br>
+ * With magic.cache.emptyIds enabled, every data page found with or without a card is recorded in the {@link EmptyIdCache}, so later populate runs can
+ * skip IDs already known to be empty.<br>
  * <br>
  * NOTE: A null object will be sent to all Observers by each Thread once all cards assigned have been downloaded. This indicates that a downloader Thread has
- * completed.
+ * completed. With magic.downloader.executionMode=virtual, there is a single set of Observers for the whole run, shared by every card's thread, and the null
+ * object is sent once, after the last card.
  * 
  * @author Christopher Febles
  *
  */
-public class MagicGathererDataDownloader extends Observable implements Cloneable {
+public class MagicGathererDataDownloader extends Observable implements GathererDownloader, Cloneable {
 
     private static final Logger LOG = LoggerFactory.getLogger( MagicGathererDataDownloader.class );
 
-    // Constants for loading URLs
-    private static final int MAX_ATTEMPTS = 5;
-    private static final long WAIT_BEFORE_RETRY_MILLISECONDS = 10 * 1000;
+    // Values of magic.downloader.executionMode
+    private static final String EXECUTION_MODE_PLATFORM = "platform";
+    private static final String EXECUTION_MODE_VIRTUAL = "virtual";
 
     // True to download text printed on physical card, false for WoTC Oracle text
     private static final boolean GATHERER_PRINTED_TEXT = false;
-    private static final String GATHERER_BASE_URL = "http://gatherer.wizards.com/Pages/Card/Details.aspx?printed=" + GATHERER_PRINTED_TEXT + "&multiverseid=";
-    private static final String GATHERER_IMAGE_BASE_URL = "http://gatherer.wizards.com/Handlers/Image.ashx?type=card&multiverseid=";
-    private static final String GATHERER_LANGUAGE_BASE_URL = "http://gatherer.wizards.com/Pages/Card/Languages.aspx?multiverseid=";
+    static final String GATHERER_BASE_URL = "http://gatherer.wizards.com/Pages/Card/Details.aspx?printed=" + GATHERER_PRINTED_TEXT + "&multiverseid=";
+    static final String GATHERER_IMAGE_BASE_URL = "http://gatherer.wizards.com/Handlers/Image.ashx?type=card&multiverseid=";
+    static final String GATHERER_LANGUAGE_BASE_URL = "http://gatherer.wizards.com/Pages/Card/Languages.aspx?multiverseid=";
+
+    // Indexes of a card's pages in PendingCard
+    private static final int DATA_PAGE = 0;
+    private static final int IMAGE_PAGE = 1;
+    private static final int LANGUAGE_PAGE = 2;
+
+    // Present in the data page of every multiverse ID with a card assigned
+    private static final byte[] CARD_MARKER = "nameRow".getBytes( StandardCharsets.US_ASCII );
+
+    // Returned by loadURL for a 304 Not Modified response. Compared by identity.
+    private static final byte[] NOT_MODIFIED = new byte[0];
 
     private Set<CloneableObserver> cloneableObservers;
+    // Every Observer, notified by publish()
+    private final List<Observer> observers = new CopyOnWriteArrayList<>();
+    private GathererConnectionPool connectionPool;
+    private RetryScheduler retryScheduler;
+    private ValidatorCache validatorCache;
+    private EmptyIdCache emptyIdCache;
+    private boolean concurrentPageFetch;
+    private boolean probeFirst;
+
+    // Shared by all clones working on the same run, so a deferred card can be resumed by any of them
+    private MultiverseIdChunkQueue idQueue;
+    private ConcurrentMap<Integer, PendingCard> pendingCards;
 
     /**
-     * Default Constructor
+     * Default Constructor.<br>
+     * <br>
+     * Downloads through the connection pool shared by all downloaders.
+     * 
+     * @see GathererConnectionPool#getSharedInstance()
      */
     public MagicGathererDataDownloader() {
+        this( GathererConnectionPool.getSharedInstance() );
+    }
+
+    /**
+     * Create a new downloader which loads all URLs through the given connection pool.
+     * 
+     * @param connectionPool
+     *            The pool of HTTP connections to Gatherer
+     */
+    public MagicGathererDataDownloader( GathererConnectionPool connectionPool ) {
         cloneableObservers = new HashSet<>();
+        this.connectionPool = connectionPool;
+        this.retryScheduler = RetryScheduler.getSharedInstance();
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.revalidate", true ) ) {
+            this.validatorCache = ValidatorCache.getSharedInstance();
+        }
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.emptyIds", true ) ) {
+            this.emptyIdCache = EmptyIdCache.getSharedInstance();
+        }
+        this.concurrentPageFetch = UpdaterConfiguration.getBoolean( "magic.downloader.concurrentPageFetch", false );
+        this.probeFirst = UpdaterConfiguration.getBoolean( "magic.downloader.probeFirst", true );
     }
 
     @Override
     public MagicGathererDataDownloader clone() {
         LOG.trace( "Cloning a new copy of MagicGathererDataDownloader with id {}.", System.identityHashCode( this ) );
-        MagicGathererDataDownloader clone = new MagicGathererDataDownloader();
+        // Clones share this object's connection pool
+        MagicGathererDataDownloader clone = new MagicGathererDataDownloader( connectionPool );
+        clone.setConcurrentPageFetch( concurrentPageFetch );
+        clone.setProbeFirst( probeFirst );
         LOG.trace( "Created a new copy of MagicGathererDataDownloader with id {}.", System.identityHashCode( clone ) );
 
         if ( CollectionUtils.isNotEmpty( cloneableObservers ) ) {
@@ -82,193 +160,621 @@ public class MagicGathererDataDownloader extends Observable implements Cloneable
     public void addObserver( Observer o ) {
         LOG.trace( "Adding new Observer to MagicGathererDataDownloader with id {}.", System.identityHashCode( this ) );
         super.addObserver( o );
+        if ( !observers.contains( o ) ) {
+            observers.add( o );
+        }
         if ( o instanceof CloneableObserver ) {
             cloneableObservers.add( ( CloneableObserver ) o );
         }
     }
 
+    @Override
+    public synchronized void deleteObserver( Observer o ) {
+        super.deleteObserver( o );
+        observers.remove( o );
+        cloneableObservers.remove( o );
+    }
+
+    @Override
+    public synchronized void deleteObservers() {
+        super.deleteObservers();
+        observers.clear();
+        cloneableObservers.clear();
+    }
+
     /**
-     * Method to execute as a separate thread
+     * If true, the data, image and language pages of each card are requested at the same time, rather than one after the other.<br>
+     * <br>
+     * Defaults to the value of magic.downloader.concurrentPageFetch.
      * 
-     * @param idList
-     *            The list of IDs to load from Gatherer
+     * @param concurrentPageFetch
+     *            True to fetch the three pages of a card concurrently
+     */
+    public void setConcurrentPageFetch( boolean concurrentPageFetch ) {
+        this.concurrentPageFetch = concurrentPageFetch;
+    }
+
+    public boolean isConcurrentPageFetch() {
+        return concurrentPageFetch;
+    }
+
+    /**
+     * If true, the data page of each card is loaded first, and the image and language pages are only requested if the data page describes a card.<br>
+     * <br>
+     * Defaults to the value of magic.downloader.probeFirst.
+     * 
+     * @param probeFirst
+     *            True to probe the data page before requesting the other pages
      */
-    private void run( List<Integer> idList ) {
+    public void setProbeFirst( boolean probeFirst ) {
+        this.probeFirst = probeFirst;
+    }
+
+    public boolean isProbeFirst() {
+        return probeFirst;
+    }
 
-        long currentThreadId = Thread.currentThread().getId();
-        LOG.trace( "New MagicGathererDataDownloader thread {} launched.", currentThreadId );
+    /**
+     * Download the data for a single card and send it to all Observers.<br>
+     * <br>
+     * If any page fails with a retryable error, the card is deferred for a retry instead, and is sent to Observers once it has been retried.
+     * 
+     * @param id
+     *            The multiverse ID of the card to load from Gatherer
+     */
+    private void downloadCard( int id ) {
 
-        // Start main loop
-        // Load data from URL
-        // Notify observers
-        LOG.trace( "Starting update process..." );
-        for ( Integer id : idList ) {
+        PendingCard card = pendingCards == null ? null : pendingCards.remove( id );
+        if ( card == null ) {
             LOG.debug( "Loading Magic Card with Multiverse ID: {}", id );
-            String dataUrl = GATHERER_BASE_URL + id;
-            String imageUrl = GATHERER_IMAGE_BASE_URL + id;
-            String languageUrl = GATHERER_LANGUAGE_BASE_URL + id;
+            card = new PendingCard( id );
+        } else {
+            LOG.debug( "Retrying Magic Card with Multiverse ID: {}. This is attempt number {}.", id, card.attemptNumber );
+        }
+
+        boolean complete = this.loadPages( card );
+        if ( complete && card.isPartlyNotModified() ) {
+            // Observers need every page of a changed card, so request the unchanged pages again without validators
+            for ( int page = DATA_PAGE; page <= LANGUAGE_PAGE; page++ ) {
+                if ( card.pages[page] == NOT_MODIFIED ) {
+                    validatorCache.remove( card.urls[page] );
+                    card.loaded[page] = false;
+                }
+            }
+            complete = this.loadPages( card );
+        }
+
+        if ( !complete && this.deferForRetry( card ) ) {
+            // This thread moves on to other IDs while the card waits out its backoff delay
+            return;
+        }
+
+        if ( card.isNotModified() ) {
+            LOG.debug( "Magic Card with Multiverse ID {} has not changed. Skipping.", id );
+            validatorCache.recordUnchangedCard();
+            return;
+        }
+
+        byte[] dataPage = card.getPage( DATA_PAGE );
+        if ( dataPage != null ) {
+            boolean hasCard = hasCard( dataPage );
+            if ( emptyIdCache != null ) {
+                if ( hasCard ) {
+                    emptyIdCache.recordCard( id );
+                } else {
+                    emptyIdCache.recordEmpty( id );
+                }
+            }
+            if ( !hasCard && validatorCache != null ) {
+                // A 304 could not tell whether a card has been assigned since, so the next probe must be unconditional
+                validatorCache.forget( id );
+            }
+        }
+
+        MagicCardRawData data = new MagicCardRawData( id, dataPage, card.getPage( IMAGE_PAGE ), card.getPage( LANGUAGE_PAGE ) );
+
+        // Send newly created object to all observers
+        LOG.trace( "Notifying all observers new data object with id {} available for processing.", data.getMultiverseId() );
+        this.publish( data );
+    }
+
+    /**
+     * Request every page of the given card which has not yet been loaded.
+     * 
+     * @param card
+     *            The card to load
+     * @return True if every page is done, false if any page failed with a retryable error
+     */
+    private boolean loadPages( PendingCard card ) {
+
+        if ( probeFirst && !card.loaded[DATA_PAGE] ) {
+            if ( !this.loadPage( card, DATA_PAGE, null ) ) {
+                return false;
+            }
+            if ( !hasCard( card.pages[DATA_PAGE] ) ) {
+                // Nothing to parse, so there is no use for the other pages
+                LOG.debug( "No card assigned to Multiverse ID {}. Skipping image and language pages.", card.multiverseId );
+                card.loaded[IMAGE_PAGE] = true;
+                card.loaded[LANGUAGE_PAGE] = true;
+                return true;
+            }
+        }
+
+        boolean complete = true;
+        if ( concurrentPageFetch ) {
+            // Request the image and language pages in the background, and the data page on this thread
+            Future<byte[]> imageFuture = card.loaded[IMAGE_PAGE] ? null : this.loadURLInBackground( card.urls[IMAGE_PAGE] );
+            Future<byte[]> langFuture = card.loaded[LANGUAGE_PAGE] ? null : this.loadURLInBackground( card.urls[LANGUAGE_PAGE] );
+
+            if ( !card.loaded[DATA_PAGE] ) {
+                complete &= this.loadPage( card, DATA_PAGE, null );
+            }
+            if ( imageFuture != null ) {
+                complete &= this.loadPage( card, IMAGE_PAGE, imageFuture );
+            }
+            if ( langFuture != null ) {
+                complete &= this.loadPage( card, LANGUAGE_PAGE, langFuture );
+            }
+        } else {
+            for ( int page = DATA_PAGE; page <= LANGUAGE_PAGE; page++ ) {
+                if ( !card.loaded[page] ) {
+                    complete &= this.loadPage( card, page, null );
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Load a single page of the given card, and record the attempt with the {@link RetryScheduler}.
+     * 
+     * @param card
+     *            The card to load
+     * @param page
+     *            The index of the page to load
+     * @param pendingPage
+     *            The page if it is already being loaded in the background, or null to load it on this thread
+     * @return False if the page failed with a retryable error, otherwise true
+     */
+    private boolean loadPage( PendingCard card, int page, Future<byte[]> pendingPage ) {
+
+        String url = card.urls[page];
+        try {
+            card.pages[page] = pendingPage == null ? this.loadURL( url ) : this.waitForURL( pendingPage, url );
+            card.loaded[page] = true;
+            retryScheduler.recordAttempt( card.attemptNumber, card.pages[page] == null ? AttemptResult.FAILURE : AttemptResult.SUCCESS );
+            return true;
+        } catch ( RetryableDownloadException e ) {
+            LOG.warn( "Unable to load URL: {}", url, e );
+            retryScheduler.recordAttempt( card.attemptNumber, AttemptResult.RETRYABLE_FAILURE );
+            return false;
+        }
+    }
+
+    /**
+     * Check whether a data page describes a card, without parsing it.
+     * 
+     * @param dataPage
+     *            The content of a card's data page
+     * @return True if the page contains a card's nameRow, or has not changed since it was last loaded
+     */
+    static boolean hasCard( byte[] dataPage ) {
+
+        if ( dataPage == NOT_MODIFIED ) {
+            // Validators are only kept for IDs with a card, so an unchanged data page still has one
+            return true;
+        }
+        if ( dataPage == null ) {
+            return false;
+        }
+        int lastStart = dataPage.length - CARD_MARKER.length;
+        for ( int x = 0; x <= lastStart; x++ ) {
+            int y = 0;
+            while ( y < CARD_MARKER.length && dataPage[x + y] == CARD_MARKER[y] ) {
+                y++;
+            }
+            if ( y == CARD_MARKER.length ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the URLs of a card's data, image and language pages.
+     * 
+     * @param multiverseId
+     *            The multiverse ID of the card
+     * @return The URLs of its pages, in that order
+     */
+    static String[] getCardUrls( int multiverseId ) {
+        return new String[] { GATHERER_BASE_URL + multiverseId, GATHERER_IMAGE_BASE_URL + multiverseId, GATHERER_LANGUAGE_BASE_URL + multiverseId };
+    }
+
+    /**
+     * Hand the given card to the {@link RetryScheduler}, which requeues it once its backoff delay has passed.
+     * 
+     * @param card
+     *            The card with one or more failed pages
+     * @return True if the card will be retried, false if it should be sent to Observers as it is
+     */
+    private boolean deferForRetry( PendingCard card ) {
+
+        if ( idQueue == null || pendingCards == null ) {
+            // Not downloading from a queue, so there is nowhere to requeue the card
+            return false;
+        }
+
+        final int id = card.multiverseId;
+        final MultiverseIdChunkQueue queue = idQueue;
+        card.attemptNumber++;
+        pendingCards.put( id, card );
+        queue.defer();
+
+        boolean scheduled = retryScheduler.scheduleRetry( card.attemptNumber, "Multiverse ID " + id, new Runnable() {
+
+            @Override
+            public void run() {
+                queue.requeue( id );
+            }
+        } );
+        if ( !scheduled ) {
+            pendingCards.remove( id );
+            queue.abandonDeferred();
+        }
+        return scheduled;
+    }
 
-            byte[] dataByteArray = this.loadURL( dataUrl );
-            byte[] imageByteArray = this.loadURL( imageUrl );
-            byte[] langByteArray = this.loadURL( languageUrl );
+    /**
+     * The pages of a card downloaded so far, kept between attempts so only failed pages are requested again.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class PendingCard {
+
+        private final int multiverseId;
+        private final String[] urls;
+        private final byte[][] pages = new byte[3][];
+        private final boolean[] loaded = new boolean[3];
+        private int attemptNumber;
+
+        PendingCard( int multiverseId ) {
+            this.multiverseId = multiverseId;
+            this.urls = getCardUrls( multiverseId );
+        }
+
+        /**
+         * @return True if every page was answered with 304 Not Modified
+         */
+        boolean isNotModified() {
+            return pages[DATA_PAGE] == NOT_MODIFIED && pages[IMAGE_PAGE] == NOT_MODIFIED && pages[LANGUAGE_PAGE] == NOT_MODIFIED;
+        }
+
+        /**
+         * @return True if some, but not all, pages were answered with 304 Not Modified
+         */
+        boolean isPartlyNotModified() {
+            return !this.isNotModified()
+                    && ( pages[DATA_PAGE] == NOT_MODIFIED || pages[IMAGE_PAGE] == NOT_MODIFIED || pages[LANGUAGE_PAGE] == NOT_MODIFIED );
+        }
+
+        /**
+         * @return The content of the given page, or null if it was not loaded
+         */
+        byte[] getPage( int page ) {
+            return pages[page] == NOT_MODIFIED ? null : pages[page];
+        }
+    }
 
-            MagicCardRawData data = new MagicCardRawData( id, dataByteArray, imageByteArray, langByteArray );
+    /**
+     * Check whether Gatherer has a card for the given ID, loading only its data page. Nothing is sent to Observers.<br>
+     * <br>
+     * Unlike card downloads, this method waits for its own retries on the calling thread, so it should not be called from a download thread.
+     * 
+     * @see FrontierSearch
+     * @param id
+     *            The multiverse ID to check
+     * @return True if the ID has a card, false if it has none
+     * @throws IOException
+     *             If the data page could not be loaded, even after retrying
+     */
+    public boolean probe( int id ) throws IOException {
 
-            this.setChanged();
-            // Send newly created object to all observers
-            LOG.trace( "Notifying all observers new data object with id {} available for processing.", data.getMultiverseId() );
-            this.notifyObservers( data );
+        String url = GATHERER_BASE_URL + id;
+        if ( validatorCache != null ) {
+            // A 304 would say nothing about whether the page has a card
+            validatorCache.remove( url );
+        }
+
+        for ( int attemptNumber = 0;; attemptNumber++ ) {
+            try {
+                byte[] dataPage = this.loadURL( url );
+                retryScheduler.recordAttempt( attemptNumber, dataPage == null ? AttemptResult.FAILURE : AttemptResult.SUCCESS );
+                if ( dataPage == null ) {
+                    throw new IOException( "Unable to load the data page of Multiverse ID " + id );
+                }
+                boolean hasCard = hasCard( dataPage );
+                if ( emptyIdCache != null ) {
+                    if ( hasCard ) {
+                        emptyIdCache.recordCard( id );
+                    } else {
+                        emptyIdCache.recordEmpty( id );
+                    }
+                }
+                return hasCard;
+            } catch ( RetryableDownloadException e ) {
+                retryScheduler.recordAttempt( attemptNumber, AttemptResult.RETRYABLE_FAILURE );
+                if ( attemptNumber >= retryScheduler.getMaxAttempts() ) {
+                    throw new IOException( "Unable to probe Multiverse ID " + id + ". Retried " + attemptNumber + " times.", e );
+                }
+                long delay = retryScheduler.computeDelayMilliseconds( attemptNumber + 1 );
+                LOG.warn( "Unable to probe Multiverse ID {}. Retrying in {}ms.", id, delay, e );
+                try {
+                    Thread.sleep( delay );
+                } catch ( InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException( "Interrupted while probing Multiverse ID " + id );
+                }
+            }
         }
+    }
+
+    /**
+     * Notify all Observers that this downloader is done processing.
+     */
+    private void notifyDownloadComplete() {
         // Using null to indicate this downloader is done processing
         // Using this notification for unit testing
-        this.setChanged();
-        this.notifyObservers( null );
+        this.publish( null );
+    }
 
-        // Execution complete
-        LOG.trace( "MagicGathererDataDownloader thread {} finished.", currentThreadId );
+    /**
+     * Send the given object to every Observer. Unlike Observable.notifyObservers(), this is safe to call from several threads at once.
+     */
+    private void publish( Object arg ) {
+        for ( Observer o : observers ) {
+            o.update( this, arg );
+        }
     }
 
     /**
-     * Download all cards with the Multiverse Ids in the given list.<br>
-     * <br>
-     * This method parses the given list into blocks of 1000, and launches a separate Thread for each block.
+     * Download all cards with the Multiverse Ids in the given list.
      * 
      * @param idList
      *            The list of multiverse Ids to load
      */
+    @Override
     public void start( List<Integer> idList ) {
+        this.start( new CollectionIdSource( idList ) );
+    }
+
+    /**
+     * Download all cards with the Multiverse Ids from the given source. IDs are read from the source only as threads become free to download them.<br>
+     * <br>
+     * With the default magic.downloader.executionMode of "platform", the IDs are downloaded by a {@link DownloadWorkerPool}, which never starts more than its
+     * configured number of threads. Each thread downloads with its own clone of this object, and takes IDs from the source in small chunks.<br>
+     * <br>
+     * With an executionMode of "virtual", the IDs are downloaded by a {@link PerCardDownloadScheduler}, which runs each ID on its own virtual thread. Every
+     * thread shares a single clone of this object and its Observers, so Observers must be thread-safe, as MagicGathererDataObserver is through its
+     * pipeline.<br>
+     * <br>
+     * Either way, cards deferred for a retry are returned to the same queue of IDs, and the download is not complete until they have been retried.
+     * 
+     * @param idSource
+     *            The multiverse Ids to load
+     */
+    @Override
+    public void start( MultiverseIdSource idSource ) {
         LOG.trace( "New MagicGathererDataDownloader with id {} started.", System.identityHashCode( this ) );
 
-        // For non-threaded operation, call this.run( idList ) directly.
+        // For non-threaded operation, call this.downloadCard( id ) directly for each id.
 
         // Threaded operation
-        // Separate idList into groups, and launch a thread for each group
-        int partitionSize = 1000;
-        List<Integer> partitionedList = new ArrayList<>();
-
-        for ( int x = 0; x < idList.size(); x++ ) {
-            partitionedList.add( idList.get( x ) );
-            if ( x % partitionSize == 0 && x != 0 ) {
-                Thread newThread = new MagicGathererDataDownloaderThread( this.clone(), partitionedList );
-                LOG.debug( "New MagicGathererDataDownloaderThread {} launched.", newThread.getId() );
-                newThread.start();
-                partitionedList = new ArrayList<>();
+        final ConcurrentMap<Integer, PendingCard> runPendingCards = new ConcurrentHashMap<>();
+        DownloadScheduler scheduler = this.createScheduler();
+        scheduler.start( idSource, new DownloadWorker.Factory() {
+
+            @Override
+            public DownloadWorker newWorker( MultiverseIdChunkQueue queue ) {
+                MagicGathererDataDownloader clone = MagicGathererDataDownloader.this.clone();
+                clone.idQueue = queue;
+                clone.pendingCards = runPendingCards;
+                return new MagicGathererDataDownloadWorker( clone );
             }
-        }
-        // Handle left over Ids
-        Thread newThread = new MagicGathererDataDownloaderThread( this.clone(), partitionedList );
-        LOG.debug( "Final MagicGathererDataDownloaderThread {} launched.", newThread.getId() );
-        newThread.start();
+        } );
+    }
 
+    /**
+     * Create the scheduler selected by magic.downloader.executionMode.
+     * 
+     * @return A new, unstarted scheduler
+     */
+    private DownloadScheduler createScheduler() {
+
+        String executionMode = UpdaterConfiguration.getString( "magic.downloader.executionMode", EXECUTION_MODE_PLATFORM );
+        if ( EXECUTION_MODE_VIRTUAL.equalsIgnoreCase( executionMode ) ) {
+            return new PerCardDownloadScheduler();
+        }
+        if ( !EXECUTION_MODE_PLATFORM.equalsIgnoreCase( executionMode ) ) {
+            LOG.error( "Unknown execution mode {}. Using {}.", executionMode, EXECUTION_MODE_PLATFORM );
+        }
+        return new DownloadWorkerPool();
     }
 
     /**
-     * Thread wrapper for a MagicGathererDataDownloader object.<br>
+     * Worker wrapper for a MagicGathererDataDownloader object.<br>
      * <br>
      * Objects of this class will have access to private methods of a given MagicGathererDataDownloader instance.
      * 
      * @author Christopher Febles
      *
      */
-    private class MagicGathererDataDownloaderThread extends Thread {
+    private static class MagicGathererDataDownloadWorker implements DownloadWorker {
 
         private MagicGathererDataDownloader downloader;
-        private List<Integer> finalIdList;
 
         /**
-         * Create a new Thread to process the given list of Ids with the given downloader.
+         * Create a new worker which downloads with the given downloader.
          * 
          * @param downloader
-         *            The object this Thread wraps.
-         * @param finalIdList
-         *            The list of Ids to process.
+         *            The object this worker wraps.
          */
-        public MagicGathererDataDownloaderThread( MagicGathererDataDownloader downloader, List<Integer> finalIdList ) {
-            super();
-            this.setDownloader( downloader );
-            this.setIdList( finalIdList );
-            this.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
-            this.setName( "DL_" + this.getId() );
-            this.setDaemon( false );
-        }
-
-        private void setIdList( List<Integer> finalIdList ) {
-            this.finalIdList = finalIdList;
-        }
-
-        private void setDownloader( MagicGathererDataDownloader downloader ) {
+        public MagicGathererDataDownloadWorker( MagicGathererDataDownloader downloader ) {
             this.downloader = downloader;
         }
 
         @Override
-        /**
-         * Calls the run() method on this object's MagicGathererDataDownloader
-         */
-        public void run() {
-            downloader.run( finalIdList );
+        public void download( int multiverseId ) {
+            downloader.downloadCard( multiverseId );
         }
-    }
 
-    /**
-     * Load the given URL into a byte array.
-     * 
-     * @param url
-     *            The URL to load
-     * @return The response from the URL as a byte array.
-     */
-    private byte[] loadURL( String url ) {
-        return this.loadURLWithCounter( url, 0 );
+        @Override
+        public void finished() {
+            downloader.notifyDownloadComplete();
+        }
     }
 
     /**
-     * Recursive method to load the given URLs. In case of network error, this method will recurse {@link #MAX_ATTEMPTS} in an attempt to load the page
+     * Load the given URL into a byte array. This method makes a single attempt; retries are left to the caller.
      * 
      * @param url
      *            The URL to load
-     * @param attemptNumber
-     *            The attempt number this is. If a failure occurs, and attemptNumber is less than {@link #MAX_ATTEMPTS}, this method will recurse.
-     * @return The response from the URL as a byte array
+     * @return The response from the URL as a byte array, {@link #NOT_MODIFIED} if the URL has not changed since its validators were cached, or null if it
+     *         could not be loaded and should not be retried
+     * @throws RetryableDownloadException
+     *             If the URL failed with a network or server-side error, and may be retried
      */
-    private byte[] loadURLWithCounter( String url, int attemptNumber ) {
+    private byte[] loadURL( String url ) throws RetryableDownloadException {
 
         byte[] retVal = null;
-        int localAttemptCounter = attemptNumber;
 
         HttpGet httpGet = new HttpGet( url );
+        if ( validatorCache != null ) {
+            validatorCache.addConditionalHeaders( url, httpGet );
+        }
+
+        // Wait until the host's rate controller allows another request
+        AdaptiveRateController rateController = AdaptiveRateController.forHost( httpGet.getURI().getHost() );
+        long requestStart;
+        try {
+            requestStart = rateController.acquire();
+        } catch ( InterruptedException e ) {
+            LOG.error( "Interrupted while waiting to load URL: {}", url, e );
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        AdaptiveRateController.Outcome outcome = AdaptiveRateController.Outcome.IGNORED;
 
-        try ( CloseableHttpClient httpClient = HttpClients.createDefault(); 
-              CloseableHttpResponse response = httpClient.execute( httpGet ) ) {
+        // The pooled client is shared, and must not be closed here. Closing the response returns its connection to the pool.
+        CloseableHttpClient httpClient = connectionPool.getHttpClient();
+        try ( CloseableHttpResponse response = httpClient.execute( httpGet ) ) {
 
             int statusCode = response.getStatusLine().getStatusCode();
-            if ( this.checkStatusCode( statusCode ) ) {
-                HttpEntity entity = response.getEntity();
-                retVal = EntityUtils.toByteArray( entity );
-
-                EntityUtils.consume( entity );
+            HttpEntity entity = response.getEntity();
+            try {
+                if ( statusCode == HttpStatus.SC_NOT_MODIFIED && validatorCache != null ) {
+                    validatorCache.recordNotModified();
+                    retVal = NOT_MODIFIED;
+                    outcome = AdaptiveRateController.Outcome.SUCCESS;
+                } else if ( this.checkStatusCode( statusCode ) ) {
+                    retVal = EntityUtils.toByteArray( entity );
+                    outcome = AdaptiveRateController.Outcome.SUCCESS;
+                    if ( validatorCache != null ) {
+                        validatorCache.hold( url, response );
+                    }
+                }
+            } finally {
+                // Fully read the response, even on error, so the connection can be reused
+                EntityUtils.consumeQuietly( entity );
             }
             
         } catch ( SocketException e ) {
             // Assuming a SocketException indicates a network failure
-            if ( localAttemptCounter < MAX_ATTEMPTS ) {
-                localAttemptCounter++;
-                LOG.warn( "Unable to connect to given URL: {}. Retrying... This is attempt number {}.", url, localAttemptCounter, e );
-                // Wait before retry
-                try {
-                    Thread.sleep( WAIT_BEFORE_RETRY_MILLISECONDS );
-                } catch ( InterruptedException ie ) {
-                    LOG.error( "This should never happen", ie );
-                }
-                return this.loadURLWithCounter( url, localAttemptCounter );
-            } else {
-                LOG.error( "Error loading URL: {}. Retried {} times. Giving up.", url, localAttemptCounter, e );
-            }
+            outcome = AdaptiveRateController.Outcome.OVERLOAD;
+            throw new RetryableDownloadException( "Unable to connect to given URL: " + url, e );
+        } catch ( InterruptedIOException e ) {
+            // Connection and socket timeouts are not retried, but do indicate a struggling server
+            outcome = AdaptiveRateController.Outcome.OVERLOAD;
+            LOG.error( "Timed out loading URL: {}", url, e );
         } catch ( IOException e ) {
             LOG.error( "Error loading URL: {}", url, e );
+        } finally {
+            rateController.release( System.nanoTime() - requestStart, outcome );
         }
 
         return retVal;
     }
 
+    /**
+     * Load the given URL into a byte array on a page fetch thread. Errors are handled exactly as in {@link #loadURL(String)}.
+     * 
+     * @param url
+     *            The URL to load
+     * @return The pending response from the URL
+     */
+    private Future<byte[]> loadURLInBackground( final String url ) {
+        return PageFetchExecutorHolder.EXECUTOR.submit( new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() throws RetryableDownloadException {
+                return MagicGathererDataDownloader.this.loadURL( url );
+            }
+        } );
+    }
+
+    /**
+     * Wait for a URL started with {@link #loadURLInBackground(String)} to finish loading.
+     * 
+     * @param future
+     *            The pending response
+     * @param url
+     *            The URL being loaded, for logging
+     * @return The response from the URL as a byte array, or null if it could not be loaded
+     * @throws RetryableDownloadException
+     *             If the URL failed with a network or server-side error, and may be retried
+     */
+    private byte[] waitForURL( Future<byte[]> future, String url ) throws RetryableDownloadException {
+
+        byte[] retVal = null;
+        try {
+            retVal = future.get();
+        } catch ( InterruptedException e ) {
+            LOG.error( "Interrupted while loading URL: {}", url, e );
+            future.cancel( true );
+            Thread.currentThread().interrupt();
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof RetryableDownloadException ) {
+                throw ( RetryableDownloadException ) e.getCause();
+            }
+            LOG.error( "Error loading URL: {}", url, e.getCause() );
+        }
+        return retVal;
+    }
+
+    /**
+     * Lazily creates the threads used to fetch pages concurrently. They are only created if concurrent page fetch is used.
+     * 
+     * @author Christopher Febles
+     *
+     */
+    private static class PageFetchExecutorHolder {
+
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                UpdaterConfiguration.getInt( "magic.downloader.pageFetchThreads", 32 ), new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread( Runnable r ) {
+                        // Daemon threads, since they may sit idle after all downloads are complete
+                        Thread newThread = new Thread( r, "DF_" + THREAD_COUNTER.incrementAndGet() );
+                        newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                        newThread.setDaemon( true );
+                        return newThread;
+                    }
+                } );
+    }
+
     /**
      * Check the if the given status code is {@link HttpStatus#SC_OK}, if not, throw the appropriate exception
      * 
@@ -0,0 +1,159 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import com.christopherfebles.magic.source.CollectionIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Hands out multiverse IDs in small chunks to any number of threads.<br>
+ * <br>
+ * IDs are read from a {@link MultiverseIdSource} only as chunks are requested, so downloads start as soon as the first chunk is read, and only the
+ * IDs in flight are held in memory.<br>
+ * <br>
+ * Threads which finish their chunk early simply ask for another, so work stays balanced even when some IDs take much longer to download than others.<br>
+ * <br>
+ * IDs whose download failed may be deferred and later requeued by a {@link RetryScheduler}. Requeued IDs are handed out before any new ones, and the
+ * queue is not drained until every deferred ID has been requeued or abandoned.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class MultiverseIdChunkQueue {
+
+    private final MultiverseIdSource idSource;
+    private final int chunkSize;
+    private boolean sourceExhausted;
+    private final Deque<Integer> requeuedIds = new ArrayDeque<>();
+    private int deferredCount;
+
+    /**
+     * Create a new queue over the given IDs.
+     * 
+     * @param idList
+     *            The IDs to hand out. This list must not be modified while the queue is in use.
+     * @param chunkSize
+     *            The maximum number of IDs returned by each call to {@link #nextChunk()}
+     */
+    public MultiverseIdChunkQueue( List<Integer> idList, int chunkSize ) {
+        this( new CollectionIdSource( idList ), chunkSize );
+    }
+
+    /**
+     * Create a new queue which reads IDs from the given source as they are needed.
+     * 
+     * @param idSource
+     *            The IDs to hand out. The source is closed once it is exhausted.
+     * @param chunkSize
+     *            The maximum number of IDs returned by each call to {@link #nextChunk()}
+     */
+    public MultiverseIdChunkQueue( MultiverseIdSource idSource, int chunkSize ) {
+        if ( chunkSize < 1 ) {
+            throw new IllegalArgumentException( "Chunk size must be positive: " + chunkSize );
+        }
+        this.idSource = idSource;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Take the next chunk of IDs from this queue.<br>
+     * <br>
+     * If all IDs have been handed out but some are still deferred, this method blocks until one is requeued or abandoned.
+     * 
+     * @return Up to chunkSize IDs, or an empty list once all IDs have been handed out and none are deferred
+     */
+    public synchronized List<Integer> nextChunk() {
+
+        while ( true ) {
+            if ( !requeuedIds.isEmpty() ) {
+                List<Integer> chunk = new ArrayList<>();
+                while ( !requeuedIds.isEmpty() && chunk.size() < chunkSize ) {
+                    chunk.add( requeuedIds.poll() );
+                }
+                return chunk;
+            }
+            if ( !sourceExhausted ) {
+                List<Integer> chunk = this.readChunk();
+                if ( !chunk.isEmpty() ) {
+                    return chunk;
+                }
+            }
+            if ( deferredCount == 0 ) {
+                return Collections.emptyList();
+            }
+            try {
+                this.wait();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
+        }
+    }
+
+    /**
+     * Read up to chunkSize IDs from the source, closing it once it is exhausted.
+     */
+    private List<Integer> readChunk() {
+        List<Integer> chunk = new ArrayList<>( chunkSize );
+        while ( chunk.size() < chunkSize ) {
+            int id = idSource.nextId();
+            if ( id == MultiverseIdSource.NO_MORE_IDS ) {
+                sourceExhausted = true;
+                idSource.close();
+                break;
+            }
+            chunk.add( id );
+        }
+        return chunk;
+    }
+
+    /**
+     * Record that an ID handed out by this queue will be returned later through {@link #requeue(int)}, so the queue must not report itself drained
+     * until then.
+     */
+    public synchronized void defer() {
+        deferredCount++;
+    }
+
+    /**
+     * Return a deferred ID to this queue, to be handed out ahead of any new IDs.
+     * 
+     * @param multiverseId
+     *            The ID passed to {@link #defer()} earlier
+     */
+    public synchronized void requeue( int multiverseId ) {
+        deferredCount--;
+        requeuedIds.add( multiverseId );
+        this.notifyAll();
+    }
+
+    /**
+     * Give up on a deferred ID without requeueing it.
+     */
+    public synchronized void abandonDeferred() {
+        deferredCount--;
+        this.notifyAll();
+    }
+
+    /**
+     * @return True if any ID is deferred or waiting to be handed out again
+     */
+    public synchronized boolean hasDeferredIds() {
+        return deferredCount > 0 || !requeuedIds.isEmpty();
+    }
+
+    /**
+     * @return The total number of chunks this queue will hand out, not counting requeued IDs, or -1 if the source's size is unknown
+     */
+    public int numberOfChunks() {
+        long size = idSource.estimatedSize();
+        if ( size == MultiverseIdSource.UNKNOWN_SIZE ) {
+            return -1;
+        }
+        return ( int ) ( ( size + chunkSize - 1 ) / chunkSize );
+    }
+}
@@ -0,0 +1,166 @@
+package com.christopherfebles.magic.downloader;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+
+/**
+ * Runs the download of every multiverse ID as its own task, on a virtual thread where the JVM supports them.<br>
+ * <br>
+ * Concurrency is limited by a semaphore rather than by the size of a thread pool: a single "DL_" coordinator thread takes a permit before starting each
+ * ID, and the permit is returned when the ID's fetch-parse-save sequence completes. A single {@link DownloadWorker} is shared by every task, so it must be
+ * thread-safe, and the coordinator calls its {@link DownloadWorker#finished()} once every task has finished.<br>
+ * <br>
+ * Virtual threads are looked up reflectively, so this class still runs on JVMs without them. In that case it falls back to a cached pool of platform
+ * threads, still limited by the semaphore.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class PerCardDownloadScheduler implements DownloadScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger( PerCardDownloadScheduler.class );
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final int maxConcurrentCards;
+    private final CountDownLatch completionLatch = new CountDownLatch( 1 );
+    private boolean started;
+
+    /**
+     * Create a new scheduler limited by magic.downloader.virtualThreadConcurrency.
+     */
+    public PerCardDownloadScheduler() {
+        this( UpdaterConfiguration.getInt( "magic.downloader.virtualThreadConcurrency", 64 ) );
+    }
+
+    /**
+     * Create a new scheduler.
+     * 
+     * @param maxConcurrentCards
+     *            The maximum number of IDs being downloaded at once
+     */
+    public PerCardDownloadScheduler( int maxConcurrentCards ) {
+        this.maxConcurrentCards = Math.max( 1, maxConcurrentCards );
+    }
+
+    @Override
+    public synchronized void start( final MultiverseIdSource idSource, final DownloadWorker.Factory workerFactory ) {
+
+        if ( started ) {
+            throw new IllegalStateException( "This PerCardDownloadScheduler has already been started." );
+        }
+        started = true;
+
+        Thread coordinator = new Thread( "DL_card_coordinator_" + THREAD_COUNTER.incrementAndGet() ) {
+
+            @Override
+            public void run() {
+                try {
+                    PerCardDownloadScheduler.this.run( idSource, workerFactory );
+                } finally {
+                    completionLatch.countDown();
+                }
+            }
+        };
+        coordinator.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+        coordinator.setDaemon( false );
+        coordinator.start();
+    }
+
+    @Override
+    public boolean awaitCompletion( long timeout, TimeUnit unit ) throws InterruptedException {
+        return completionLatch.await( timeout, unit );
+    }
+
+    /**
+     * Start one task per ID, waiting for a permit before each, then wait for every task to finish.
+     */
+    private void run( MultiverseIdSource idSource, DownloadWorker.Factory workerFactory ) {
+
+        final Semaphore permits = new Semaphore( maxConcurrentCards );
+        final MultiverseIdChunkQueue queue = new MultiverseIdChunkQueue( idSource, maxConcurrentCards );
+        final DownloadWorker worker = workerFactory.newWorker( queue );
+        ExecutorService executor = createExecutor();
+        LOG.debug( "Downloading multiverse ids one task per id, at most {} at a time.", maxConcurrentCards );
+
+        try {
+            while ( true ) {
+                List<Integer> chunk = queue.nextChunk();
+                if ( chunk.isEmpty() ) {
+                    // Every permit is back once all tasks have finished, but a finished task may have deferred its id for a retry
+                    permits.acquire( maxConcurrentCards );
+                    boolean retriesPending = queue.hasDeferredIds();
+                    permits.release( maxConcurrentCards );
+                    if ( !retriesPending ) {
+                        break;
+                    }
+                    continue;
+                }
+                for ( final Integer id : chunk ) {
+                    permits.acquire();
+                    executor.execute( new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                worker.download( id );
+                            } catch ( RuntimeException e ) {
+                                LOG.error( "Error downloading Multiverse ID {}.", id, e );
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    } );
+                }
+            }
+        } catch ( InterruptedException e ) {
+            LOG.error( "Interrupted while downloading. Remaining ids will not be loaded.", e );
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        worker.finished();
+    }
+
+    /**
+     * Create an executor which starts a new virtual thread for every task, or a cached platform thread pool if virtual threads are unavailable.
+     * 
+     * @return A new executor
+     */
+    static ExecutorService createExecutor() {
+
+        try {
+            Method factoryMethod = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return ( ExecutorService ) factoryMethod.invoke( null );
+        } catch ( NoSuchMethodException e ) {
+            LOG.warn( "Virtual threads are not available in this JVM. Using platform threads for per-card downloads." );
+        } catch ( IllegalAccessException | InvocationTargetException e ) {
+            LOG.error( "Unable to create virtual thread executor. Using platform threads for per-card downloads.", e );
+        }
+
+        return Executors.newCachedThreadPool( new ThreadFactory() {
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread newThread = new Thread( r, "DL_card_" + THREAD_COUNTER.incrementAndGet() );
+                newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                newThread.setDaemon( false );
+                return newThread;
+            }
+        } );
+    }
+}
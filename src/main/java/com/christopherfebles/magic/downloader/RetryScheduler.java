@@ -0,0 +1,214 @@
+package com.christopherfebles.magic.downloader;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * Schedules retries of failed downloads on a timer, so no download thread sleeps while waiting to retry.<br>
+ * <br>
+ * Each retry waits with exponential backoff and jitter: the n-th retry waits between half and all of baseDelay * 2^(n-1), capped at maxDelay. The jitter
+ * keeps threads which failed at the same moment from retrying in lockstep.<br>
+ * <br>
+ * Retries also draw from a global budget. Every first attempt adds magic.retry.budgetRatio tokens to the budget, and every retry spends one. During an
+ * outage the budget runs dry, and failed downloads are given up rather than multiplying the load on Gatherer.<br>
+ * <br>
+ * The number of requests, successes and failures at each attempt number are counted for reporting.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class RetryScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger( RetryScheduler.class );
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private static RetryScheduler sharedInstance;
+
+    private final int maxAttempts;
+    private final long baseDelayMilliseconds;
+    private final long maxDelayMilliseconds;
+    private final double budgetRatio;
+    private final double maxBudget;
+    private final ScheduledExecutorService timer;
+    private final Random random = new Random();
+
+    // Guarded by this
+    private double budget;
+
+    // Per-attempt metrics, indexed by attempt number (0 is the first attempt)
+    private final AtomicLongArray attempts;
+    private final AtomicLongArray successes;
+    private final AtomicLongArray failures;
+    private final AtomicLong retriesScheduled = new AtomicLong();
+    private final AtomicLong retriesExhausted = new AtomicLong();
+    private final AtomicLong retriesOverBudget = new AtomicLong();
+
+    /**
+     * What happened to a single download attempt.
+     */
+    public enum AttemptResult {
+        /** The URL was loaded. */
+        SUCCESS,
+        /** The URL failed in a way that may be retried. */
+        RETRYABLE_FAILURE,
+        /** The URL failed in a way that will not be retried. */
+        FAILURE
+    }
+
+    /**
+     * Get the scheduler shared by all downloaders in this JVM, creating it on first use.
+     * 
+     * @return The shared retry scheduler
+     */
+    public static synchronized RetryScheduler getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new RetryScheduler();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Create a new scheduler configured from {@link UpdaterConfiguration}.
+     */
+    public RetryScheduler() {
+        this.maxAttempts = Math.max( 0, UpdaterConfiguration.getInt( "magic.retry.maxAttempts", DEFAULT_MAX_ATTEMPTS ) );
+        this.baseDelayMilliseconds = Math.max( 1, UpdaterConfiguration.getLong( "magic.retry.baseDelayMilliseconds", 500 ) );
+        this.maxDelayMilliseconds = Math.max( baseDelayMilliseconds, UpdaterConfiguration.getLong( "magic.retry.maxDelayMilliseconds", 30 * 1000 ) );
+        this.budgetRatio = UpdaterConfiguration.getDouble( "magic.retry.budgetRatio", 0.1 );
+        this.maxBudget = UpdaterConfiguration.getDouble( "magic.retry.maxBudget", 100 );
+        this.budget = Math.min( maxBudget, UpdaterConfiguration.getDouble( "magic.retry.initialBudget", 20 ) );
+
+        this.attempts = new AtomicLongArray( maxAttempts + 1 );
+        this.successes = new AtomicLongArray( maxAttempts + 1 );
+        this.failures = new AtomicLongArray( maxAttempts + 1 );
+
+        this.timer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread newThread = new Thread( r, "RetryTimer" );
+                newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                newThread.setDaemon( true );
+                return newThread;
+            }
+        } );
+    }
+
+    /**
+     * Record the result of a download attempt. First attempts add to the retry budget.
+     * 
+     * @param attemptNumber
+     *            The attempt number, starting at 0 for the first attempt
+     * @param result
+     *            What happened to the attempt
+     */
+    public void recordAttempt( int attemptNumber, AttemptResult result ) {
+
+        int index = Math.min( Math.max( 0, attemptNumber ), maxAttempts );
+        attempts.incrementAndGet( index );
+        if ( result == AttemptResult.SUCCESS ) {
+            successes.incrementAndGet( index );
+        } else {
+            failures.incrementAndGet( index );
+        }
+
+        if ( attemptNumber == 0 ) {
+            synchronized ( this ) {
+                budget = Math.min( maxBudget, budget + budgetRatio );
+            }
+        }
+    }
+
+    /**
+     * Schedule a retry, if the attempt limit and retry budget allow it. This method never blocks.
+     * 
+     * @param attemptNumber
+     *            The attempt number of the retry, starting at 1 for the first retry
+     * @param description
+     *            What is being retried, for logging
+     * @param retry
+     *            The task to run once the backoff delay has passed
+     * @return True if the retry was scheduled, false if the caller should give up
+     */
+    public boolean scheduleRetry( int attemptNumber, String description, Runnable retry ) {
+
+        if ( attemptNumber > maxAttempts ) {
+            retriesExhausted.incrementAndGet();
+            LOG.error( "Giving up on {}. Retried {} times.", description, maxAttempts );
+            return false;
+        }
+
+        synchronized ( this ) {
+            if ( budget < 1 ) {
+                retriesOverBudget.incrementAndGet();
+                LOG.error( "Giving up on {}. The retry budget is exhausted.", description );
+                return false;
+            }
+            budget -= 1;
+        }
+
+        long delay = this.computeDelayMilliseconds( attemptNumber );
+        try {
+            timer.schedule( retry, delay, TimeUnit.MILLISECONDS );
+        } catch ( RejectedExecutionException e ) {
+            LOG.error( "Unable to schedule retry of {}.", description, e );
+            return false;
+        }
+        retriesScheduled.incrementAndGet();
+        LOG.warn( "Retrying {} in {}ms. This is attempt number {}.", description, delay, attemptNumber );
+        return true;
+    }
+
+    /**
+     * Compute the backoff delay for the given retry: a random value between half and all of baseDelay * 2^(attemptNumber-1), capped at maxDelay.
+     * 
+     * @param attemptNumber
+     *            The attempt number of the retry, starting at 1
+     * @return The delay in milliseconds
+     */
+    public long computeDelayMilliseconds( int attemptNumber ) {
+
+        int exponent = Math.min( Math.max( 0, attemptNumber - 1 ), 30 );
+        long ceiling = Math.min( maxDelayMilliseconds, baseDelayMilliseconds << exponent );
+        long half = ceiling / 2;
+        synchronized ( random ) {
+            return half + ( long ) ( random.nextDouble() * ( ceiling - half ) );
+        }
+    }
+
+    /**
+     * @return The maximum number of retries after a first attempt
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Summarize retry activity for logging.
+     * 
+     * @return A human-readable description of attempts and retries
+     */
+    public String getStatistics() {
+
+        StringBuilder sb = new StringBuilder();
+        sb.append( String.format( "Retries: %d scheduled, %d gave up after %d attempts, %d refused by budget. Attempts:", retriesScheduled.get(),
+                retriesExhausted.get(), maxAttempts, retriesOverBudget.get() ) );
+        for ( int x = 0; x < attempts.length(); x++ ) {
+            if ( attempts.get( x ) > 0 ) {
+                sb.append( String.format( " #%d %d ok/%d failed;", x, successes.get( x ), failures.get( x ) ) );
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.christopherfebles.magic.downloader;
+
+/**
+ * Indicates a download failed in a way that may succeed if tried again later, such as a network failure or a server-side (5xx) error.
+ * 
+ * @see RetryScheduler
+ * @author Christopher Febles
+ *
+ */
+public class RetryableDownloadException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message
+     *            A description of the failure
+     * @param cause
+     *            The underlying error
+     */
+    public RetryableDownloadException( String message, Throwable cause ) {
+        super( message, cause );
+    }
+}
@@ -0,0 +1,241 @@
+package com.christopherfebles.magic.downloader;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.cache.FileBackedCache;
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * A persistent cache of the HTTP validators (ETag and Last-Modified) returned by Gatherer, keyed by URL.<br>
+ * <br>
+ * {@link MagicGathererDataDownloader} uses these to send conditional GETs. A page which has not changed since the last run is answered with a bodiless
+ * 304 Not Modified, and a card whose pages are all unchanged is neither parsed nor written to the database.<br>
+ * <br>
+ * The validators of a downloaded page are held until {@link #commit(int)} is called for its card, once the card has been saved. A card which fails to
+ * parse or save therefore keeps its old validators, and is downloaded in full again on the next run. IDs with no card assigned keep no validators at all
+ * (see {@link #forget(int)}), so a 304 for a data page always means it still describes a card.<br>
+ * <br>
+ * The cache is loaded from magic.cache.validatorFile on first use, and written back by {@link #saveSharedInstance()}. Validators describe what is
+ * already in the database, so the file should be deleted whenever the database is rebuilt.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class ValidatorCache extends FileBackedCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger( ValidatorCache.class );
+    private static final int FILE_FORMAT_VERSION = 1;
+    // Held for a response without validators, so committing it removes any stored for its URL
+    private static final String[] NO_VALIDATORS = new String[] { "", "" };
+
+    private static ValidatorCache sharedInstance;
+
+    private final Map<String, String[]> validators = new ConcurrentHashMap<>();
+    // Validators of pages whose cards are still being processed, stored by commit() once they are saved
+    private final Map<String, String[]> pendingValidators = new ConcurrentHashMap<>();
+
+    private final AtomicLong conditionalRequests = new AtomicLong();
+    private final AtomicLong notModifiedResponses = new AtomicLong();
+    private final AtomicLong unchangedCards = new AtomicLong();
+
+    /**
+     * Get the cache shared by all downloaders in this JVM, loading it from magic.cache.validatorFile on first use.
+     *
+     * @return The shared validator cache
+     */
+    public static synchronized ValidatorCache getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new ValidatorCache( new File( UpdaterConfiguration.getString( "magic.cache.validatorFile", "magicdbupdater-validators.bin" ) ) );
+            sharedInstance.load();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Write the shared cache to disk, if it has been used and modified.
+     */
+    public static synchronized void saveSharedInstance() {
+        if ( sharedInstance != null ) {
+            LOG.info( "HTTP revalidation: {}", sharedInstance.getStatistics() );
+            sharedInstance.save();
+        }
+    }
+
+    /**
+     * Create a new, empty cache backed by the given file. Call {@link #load()} to read the file's contents.
+     *
+     * @param cacheFile
+     *            The file validators are persisted to
+     */
+    public ValidatorCache( File cacheFile ) {
+        super( cacheFile, FILE_FORMAT_VERSION, "validator cache" );
+    }
+
+    /**
+     * Add If-None-Match and If-Modified-Since headers to the given request, if validators are known for its URL.
+     *
+     * @param url
+     *            The URL being requested
+     * @param request
+     *            The request to make conditional
+     */
+    public void addConditionalHeaders( String url, HttpRequest request ) {
+
+        String[] urlValidators = validators.get( url );
+        if ( urlValidators == null ) {
+            return;
+        }
+        if ( !urlValidators[0].isEmpty() ) {
+            request.setHeader( HttpHeaders.IF_NONE_MATCH, urlValidators[0] );
+        }
+        if ( !urlValidators[1].isEmpty() ) {
+            request.setHeader( HttpHeaders.IF_MODIFIED_SINCE, urlValidators[1] );
+        }
+        conditionalRequests.incrementAndGet();
+    }
+
+    /**
+     * Hold the validators of a successful response until {@link #commit(int)} is called for its card.
+     *
+     * @param url
+     *            The URL that was requested
+     * @param response
+     *            Gatherer's 200 OK response
+     */
+    public void hold( String url, HttpResponse response ) {
+
+        String eTag = this.headerValue( response, HttpHeaders.ETAG );
+        String lastModified = this.headerValue( response, HttpHeaders.LAST_MODIFIED );
+        if ( eTag.isEmpty() && lastModified.isEmpty() ) {
+            // Nothing to revalidate with next time
+            pendingValidators.put( url, NO_VALIDATORS );
+            return;
+        }
+        pendingValidators.put( url, new String[] { eTag, lastModified } );
+    }
+
+    /**
+     * Store the validators held by {@link #hold(String, HttpResponse)} for every page of a card, replacing any stored for their URLs. Called once the card
+     * has been saved.
+     *
+     * @param multiverseId
+     *            The ID of the card
+     */
+    public void commit( int multiverseId ) {
+
+        for ( String url : MagicGathererDataDownloader.getCardUrls( multiverseId ) ) {
+            String[] urlValidators = pendingValidators.remove( url );
+            if ( urlValidators == NO_VALIDATORS ) {
+                this.remove( url );
+            } else if ( urlValidators != null ) {
+                validators.put( url, urlValidators );
+                this.markModified();
+            }
+        }
+    }
+
+    /**
+     * Forget the validators held and stored for every page of a card, so its pages are next requested unconditionally. Called for an ID found to have no
+     * card assigned, whose data page must be downloaded again to tell whether a card has been assigned since.
+     *
+     * @param multiverseId
+     *            The ID of the card
+     */
+    public void forget( int multiverseId ) {
+        for ( String url : MagicGathererDataDownloader.getCardUrls( multiverseId ) ) {
+            pendingValidators.remove( url );
+            this.remove( url );
+        }
+    }
+
+    /**
+     * Forget the validators of the given URL, so its next request is unconditional.
+     *
+     * @param url
+     *            The URL to forget
+     */
+    public void remove( String url ) {
+        if ( validators.remove( url ) != null ) {
+            this.markModified();
+        }
+    }
+
+    /**
+     * Count a 304 Not Modified response.
+     */
+    public void recordNotModified() {
+        notModifiedResponses.incrementAndGet();
+    }
+
+    /**
+     * Count a card which was skipped because none of its pages changed.
+     */
+    public void recordUnchangedCard() {
+        unchangedCards.incrementAndGet();
+    }
+
+    /**
+     * @return The number of URLs with stored validators
+     */
+    @Override
+    public int size() {
+        return validators.size();
+    }
+
+    /**
+     * Summarize cache activity for logging.
+     *
+     * @return A human-readable description of conditional requests and their results
+     */
+    public String getStatistics() {
+        return String.format( "%d conditional requests, %d not modified, %d unchanged cards skipped, %d URLs cached.", conditionalRequests.get(),
+                notModifiedResponses.get(), unchangedCards.get(), validators.size() );
+    }
+
+    @Override
+    protected void readContents( DataInput in ) throws IOException {
+
+        Map<String, String[]> loaded = new HashMap<>();
+        int count = in.readInt();
+        for ( int x = 0; x < count; x++ ) {
+            String url = in.readUTF();
+            loaded.put( url, new String[] { in.readUTF(), in.readUTF() } );
+        }
+        validators.putAll( loaded );
+    }
+
+    @Override
+    protected void writeContents( DataOutput out ) throws IOException {
+
+        // Copied first, since downloads may still be storing validators
+        Map<String, String[]> written = new HashMap<>( validators );
+        out.writeInt( written.size() );
+        for ( Map.Entry<String, String[]> entry : written.entrySet() ) {
+            out.writeUTF( entry.getKey() );
+            out.writeUTF( entry.getValue()[0] );
+            out.writeUTF( entry.getValue()[1] );
+        }
+    }
+
+    /**
+     * Get a header's value, or an empty String if the response does not have it.
+     */
+    private String headerValue( HttpResponse response, String name ) {
+        Header header = response.getFirstHeader( name );
+        return header == null || header.getValue() == null ? "" : header.getValue();
+    }
+}
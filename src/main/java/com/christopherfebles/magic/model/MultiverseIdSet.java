@@ -0,0 +1,268 @@
+package com.christopherfebles.magic.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of multiverse IDs, stored as a bitmap rather than as boxed Integers.<br>
+ * <br>
+ * Multiverse IDs are small, dense, non-negative integers, so a bitmap of every ID up to 500,000 takes about 62KB, and membership tests, set differences
+ * and iteration in ID order are all cheap. Sets can be written to and read from the persistent caches as a bitmap, which deflates to far less again for
+ * runs of consecutive IDs.<br>
+ * <br>
+ * This class is not thread-safe.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class MultiverseIdSet implements Iterable<Integer> {
+
+    private final BitSet ids;
+
+    /**
+     * Create a new, empty set.
+     */
+    public MultiverseIdSet() {
+        this.ids = new BitSet();
+    }
+
+    private MultiverseIdSet( BitSet ids ) {
+        this.ids = ids;
+    }
+
+    /**
+     * Create a new set containing the given IDs. Null and negative values are ignored.
+     *
+     * @param idCollection
+     *            The IDs to add, such as the result of MagicCardDAO.getAllMultiverseIds()
+     * @return A new set
+     */
+    public static MultiverseIdSet of( Collection<Integer> idCollection ) {
+        MultiverseIdSet set = new MultiverseIdSet();
+        for ( Integer id : idCollection ) {
+            if ( id != null && id >= 0 ) {
+                set.ids.set( id );
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Create a new set containing every ID in a range.
+     *
+     * @param fromId
+     *            The first ID in the range, inclusive
+     * @param toId
+     *            The last ID in the range, exclusive
+     * @return A new set
+     */
+    public static MultiverseIdSet range( int fromId, int toId ) {
+        MultiverseIdSet set = new MultiverseIdSet();
+        set.addRange( fromId, toId );
+        return set;
+    }
+
+    /**
+     * @param multiverseId
+     *            The ID to add. Negative values are ignored.
+     * @return True if the ID was not already in this set
+     */
+    public boolean add( int multiverseId ) {
+        if ( multiverseId < 0 ) {
+            return false;
+        }
+        boolean added = !ids.get( multiverseId );
+        ids.set( multiverseId );
+        return added;
+    }
+
+    /**
+     * Add every ID in a range.
+     *
+     * @param fromId
+     *            The first ID in the range, inclusive
+     * @param toId
+     *            The last ID in the range, exclusive
+     */
+    public void addRange( int fromId, int toId ) {
+        if ( fromId < toId ) {
+            ids.set( Math.max( 0, fromId ), toId );
+        }
+    }
+
+    /**
+     * Add every ID in another set to this one.
+     *
+     * @param other
+     *            The IDs to add
+     */
+    public void addAll( MultiverseIdSet other ) {
+        ids.or( other.ids );
+    }
+
+    /**
+     * @param multiverseId
+     *            The ID to remove
+     * @return True if the ID was in this set
+     */
+    public boolean remove( int multiverseId ) {
+        boolean removed = this.contains( multiverseId );
+        if ( removed ) {
+            ids.clear( multiverseId );
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every ID in another set from this one, leaving the difference of the two sets.
+     *
+     * @param other
+     *            The IDs to remove
+     */
+    public void removeAll( MultiverseIdSet other ) {
+        ids.andNot( other.ids );
+    }
+
+    /**
+     * @param multiverseId
+     *            The ID to look for
+     * @return True if the ID is in this set
+     */
+    public boolean contains( int multiverseId ) {
+        return multiverseId >= 0 && ids.get( multiverseId );
+    }
+
+    /**
+     * @return The number of IDs in this set
+     */
+    public int size() {
+        return ids.cardinality();
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /**
+     * @return The highest ID in this set, or 0 if it is empty
+     */
+    public int max() {
+        return Math.max( 0, ids.length() - 1 );
+    }
+
+    /**
+     * Find the next ID in this set, for iterating over a range without creating an Iterator.
+     *
+     * @param fromId
+     *            The ID to start looking from, inclusive
+     * @return The lowest ID in this set greater than or equal to fromId, or -1 if there is none
+     */
+    public int nextId( int fromId ) {
+        return ids.nextSetBit( Math.max( 0, fromId ) );
+    }
+
+    /**
+     * Iterate over the IDs of this set in ascending order.
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+
+            private int next = ids.nextSetBit( 0 );
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Integer next() {
+                if ( next < 0 ) {
+                    throw new NoSuchElementException();
+                }
+                int current = next;
+                next = ids.nextSetBit( current + 1 );
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return A new list of the IDs in this set, in ascending order
+     */
+    public List<Integer> toList() {
+        List<Integer> idList = new ArrayList<>( this.size() );
+        for ( int id = ids.nextSetBit( 0 ); id >= 0; id = ids.nextSetBit( id + 1 ) ) {
+            idList.add( id );
+        }
+        return idList;
+    }
+
+    /**
+     * @return A new set containing the same IDs as this one
+     */
+    public MultiverseIdSet copy() {
+        return new MultiverseIdSet( ( BitSet ) ids.clone() );
+    }
+
+    /**
+     * Write this set as a length-prefixed bitmap, which can be read back with {@link #readFrom(DataInput)}. The caches which persist sets deflate their
+     * whole file, so the bitmap is written as it is, and may be followed by other data.
+     *
+     * @param out
+     *            The stream to write to
+     * @throws IOException
+     *             If the stream cannot be written
+     */
+    public void writeTo( DataOutput out ) throws IOException {
+        byte[] bitmap = ids.toByteArray();
+        out.writeInt( bitmap.length );
+        out.write( bitmap );
+    }
+
+    /**
+     * Read a set written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in
+     *            The stream to read from
+     * @return A new set
+     * @throws IOException
+     *             If the stream cannot be read, or does not contain a set
+     */
+    public static MultiverseIdSet readFrom( DataInput in ) throws IOException {
+        int length = in.readInt();
+        if ( length < 0 ) {
+            throw new IOException( "Invalid multiverse id set length: " + length );
+        }
+        byte[] bitmap = new byte[length];
+        in.readFully( bitmap );
+        return new MultiverseIdSet( BitSet.valueOf( bitmap ) );
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        return obj instanceof MultiverseIdSet && ids.equals( ( ( MultiverseIdSet ) obj ).ids );
+    }
+
+    @Override
+    public int hashCode() {
+        return ids.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "MultiverseIdSet" + ids;
+    }
+}
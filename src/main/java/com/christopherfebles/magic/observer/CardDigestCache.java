@@ -0,0 +1,207 @@
+package com.christopherfebles.magic.observer;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.cache.IdKeyedFileCache;
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.model.MagicCard;
+
+/**
+ * A persistent record of the fields of every card written to the database, as one digest of its text fields and one of its image, keyed by multiverse
+ * ID.<br>
+ * <br>
+ * Gatherer pages change in ways which do not change the card parsed from them, such as ads and view state, so a card can be downloaded as changed by
+ * {@link ContentHashCache} and still parse to exactly what is stored. {@link MagicGathererDataObserver} compares each parsed card with its digests before
+ * saving it, and does not write a card whose text and image are both unchanged. Changes are counted separately for text and image, to show how many writes
+ * only needed the text columns.<br>
+ * <br>
+ * Every digest is loaded in a single read of magic.cache.cardDigestFile on first use, and written back, deflated, by {@link #saveSharedInstance()}. Like
+ * the content hashes, they describe what is in the database, so the file should be deleted whenever the database is rebuilt.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class CardDigestCache extends IdKeyedFileCache {
+
+    /**
+     * What has changed in a card since it was last written.
+     */
+    public enum Change {
+        /** No digest is stored for the card */
+        NEW,
+        /** Neither text nor image has changed, so it need not be written */
+        NONE,
+        /** Only text fields have changed */
+        TEXT,
+        /** The image has changed, and perhaps text fields as well */
+        IMAGE
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger( CardDigestCache.class );
+    private static final int FILE_FORMAT_VERSION = 2;
+    // Stored in place of a digest which happens to be 0, which marks an ID without digests
+    private static final long ZERO_DIGEST = 1;
+    // The index of each digest among an ID's values
+    private static final int TEXT_DIGEST = 0;
+    private static final int IMAGE_DIGEST = 1;
+    // Separates fields, so text moving from one field to the next changes the digest
+    private static final byte FIELD_SEPARATOR = 0;
+    private static final byte NULL_FIELD = 1;
+
+    private static CardDigestCache sharedInstance;
+
+    private final AtomicLong newCards = new AtomicLong();
+    private final AtomicLong unchangedCards = new AtomicLong();
+    private final AtomicLong textChanges = new AtomicLong();
+    private final AtomicLong imageChanges = new AtomicLong();
+
+    /**
+     * Get the cache shared by all observers in this JVM, loading it from magic.cache.cardDigestFile on first use.
+     *
+     * @return The shared card digest cache
+     */
+    public static synchronized CardDigestCache getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new CardDigestCache( new File( UpdaterConfiguration.getString( "magic.cache.cardDigestFile",
+                    "magicdbupdater-carddigests.bin" ) ) );
+            sharedInstance.load();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Write the shared cache to disk, if it has been used and modified.
+     */
+    public static synchronized void saveSharedInstance() {
+        if ( sharedInstance != null ) {
+            LOG.info( "Card digests: {}", sharedInstance.getStatistics() );
+            sharedInstance.save();
+        }
+    }
+
+    /**
+     * Create a new, empty cache backed by the given file. Call {@link #load()} to read the file's contents.
+     *
+     * @param cacheFile
+     *            The file digests are persisted to
+     */
+    public CardDigestCache( File cacheFile ) {
+        super( cacheFile, FILE_FORMAT_VERSION, "card digest cache", 2 );
+    }
+
+    /**
+     * Digest every field of a card which is written to the database, apart from its image.
+     *
+     * @param card
+     *            The parsed card
+     * @return A 64-bit digest of its text fields, never 0
+     */
+    public static long textDigest( MagicCard card ) {
+
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        for ( Object field : new Object[] { card.getName(), card.getManaCostString(), card.getType(), card.getText(), card.getFlavorText(),
+                card.getPower(), card.getToughness(), card.getExpansion(), card.getRarity(), card.getNumber(), card.getArtist(), card.getWatermark(),
+                card.getLanguage() } ) {
+            if ( field == null ) {
+                crc.update( NULL_FIELD );
+                adler.update( NULL_FIELD );
+            } else {
+                byte[] bytes = field.toString().getBytes( StandardCharsets.UTF_8 );
+                crc.update( bytes, 0, bytes.length );
+                adler.update( bytes, 0, bytes.length );
+            }
+            crc.update( FIELD_SEPARATOR );
+            adler.update( FIELD_SEPARATOR );
+        }
+        return combine( crc, adler );
+    }
+
+    /**
+     * Digest the image of a card.
+     *
+     * @param card
+     *            The parsed card
+     * @return A 64-bit digest of its image, never 0
+     */
+    public static long imageDigest( MagicCard card ) {
+
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        byte[] image = card.getCardImageArray();
+        if ( image == null ) {
+            crc.update( NULL_FIELD );
+            adler.update( NULL_FIELD );
+        } else {
+            crc.update( image, 0, image.length );
+            adler.update( image, 0, image.length );
+        }
+        return combine( crc, adler );
+    }
+
+    /**
+     * Compare a parsed card with the digests of the card last written with its ID, and count the result.
+     *
+     * @param card
+     *            The parsed card
+     * @return What has changed
+     */
+    public Change compare( MagicCard card ) {
+
+        long textDigest = textDigest( card );
+        long imageDigest = imageDigest( card );
+        long storedTextDigest;
+        long storedImageDigest;
+        synchronized ( this ) {
+            storedTextDigest = this.get( card.getMultiverseId(), TEXT_DIGEST );
+            storedImageDigest = this.get( card.getMultiverseId(), IMAGE_DIGEST );
+        }
+
+        if ( storedTextDigest == 0 ) {
+            newCards.incrementAndGet();
+            return Change.NEW;
+        }
+        if ( storedImageDigest != imageDigest ) {
+            imageChanges.incrementAndGet();
+            return Change.IMAGE;
+        }
+        if ( storedTextDigest != textDigest ) {
+            textChanges.incrementAndGet();
+            return Change.TEXT;
+        }
+        unchangedCards.incrementAndGet();
+        return Change.NONE;
+    }
+
+    /**
+     * Record a card as written to the database.
+     *
+     * @param card
+     *            The card written
+     */
+    public void update( MagicCard card ) {
+        this.set( card.getMultiverseId(), textDigest( card ), imageDigest( card ) );
+    }
+
+    /**
+     * Summarize cache activity for logging.
+     *
+     * @return A human-readable description of the cards compared
+     */
+    public String getStatistics() {
+        return String.format( "%d new, %d unchanged writes skipped, %d text only changes, %d image changes, %d ids stored.", newCards.get(),
+                unchangedCards.get(), textChanges.get(), imageChanges.get(), this.size() );
+    }
+
+    private static long combine( CRC32 crc, Adler32 adler ) {
+        long digest = crc.getValue() << 32 | adler.getValue();
+        return digest == 0 ? ZERO_DIGEST : digest;
+    }
+}
@@ -0,0 +1,78 @@
+package com.christopherfebles.magic.observer;
+
+import java.util.List;
+
+import com.christopherfebles.magic.observer.StreamingGathererExtractor.Row;
+
+/**
+ * The raw field values read from a Gatherer card page by {@link StreamingGathererExtractor}, before they are converted into a MagicCard.<br>
+ * <br>
+ * A field is null if its row is not on the page.
+ * 
+ * @author Christopher Febles
+ *
+ */
+class CardPageFields {
+
+    private final boolean[] rowsFound = new boolean[Row.values().length];
+    private final String[] values = new String[Row.values().length];
+    private List<String> manaSymbols;
+    private boolean multipleCards;
+    private Row missingElement;
+
+    boolean hasRow( Row row ) {
+        return rowsFound[row.ordinal()];
+    }
+
+    void setRowFound( Row row ) {
+        rowsFound[row.ordinal()] = true;
+    }
+
+    /**
+     * @param row
+     *            The row to read
+     * @return The row's text, or null if the row is not on the page
+     */
+    String getField( Row row ) {
+        return values[row.ordinal()];
+    }
+
+    void setField( Row row, String value ) {
+        values[row.ordinal()] = value;
+    }
+
+    /**
+     * @return The alt text of each mana symbol in the mana row, or null if there is no mana row
+     */
+    List<String> getManaSymbols() {
+        return manaSymbols;
+    }
+
+    void setManaSymbols( List<String> manaSymbols ) {
+        this.manaSymbols = manaSymbols;
+    }
+
+    /**
+     * @return True if the page has more than one card, and these are the fields of the first
+     */
+    boolean hasMultipleCards() {
+        return multipleCards;
+    }
+
+    void setMultipleCards( boolean multipleCards ) {
+        this.multipleCards = multipleCards;
+    }
+
+    /**
+     * @return A row which is on the page but lacks the element its field is read from, or null if every row is complete
+     */
+    Row getMissingElement() {
+        return missingElement;
+    }
+
+    void setMissingElement( Row row ) {
+        if ( missingElement == null ) {
+            missingElement = row;
+        }
+    }
+}
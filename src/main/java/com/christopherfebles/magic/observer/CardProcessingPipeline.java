@@ -0,0 +1,248 @@
+package com.christopherfebles.magic.observer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.model.MagicCard;
+import com.christopherfebles.magic.model.MagicCardRawData;
+
+/**
+ * Parses and saves downloaded cards on threads of its own, so download threads go straight back to the network.<br>
+ * <br>
+ * Cards pass through two stages:
+ * <ul>
+ * <li>parse: a {@link PipelineStage} of magic.pipeline.parseThreads threads (one per core by default) turns raw Gatherer pages into MagicCards.</li>
+ * <li>write: a {@link CardWriterStage} of magic.pipeline.persistThreads writers, each owning a partition of multiverse IDs, writes the parsed cards
+ * which have changed to the database. Each writer saves the cards waiting in its queue together, up to magic.pipeline.writeBatchSize cards or
+ * magic.pipeline.writeBatchBytes bytes, in one transaction if the pipeline is given a transaction manager.</li>
+ * </ul>
+ * Each stage has a bounded queue (magic.pipeline.parseQueueCapacity and magic.pipeline.persistQueueCapacity, the latter shared between writers). When a
+ * queue is full, the stage before it waits, so a slow database eventually slows the downloaders rather than filling the heap with pages.<br>
+ * <br>
+ * A MagicGathererDataObserver given a pipeline submits cards to it, and waits in {@link #awaitIdle()} when its downloader is done. The downloader's thread
+ * therefore stays alive until every card submitted so far has been saved.<br>
+ * <br>
+ * The pipeline parses and saves cards with the observer it was given to, so its parser and caches are the ones configured on that observer. A pipeline
+ * serves one observer and its clones.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class CardProcessingPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger( CardProcessingPipeline.class );
+
+    private final PipelineStage parseStage;
+    private final CardWriterStage writeStage;
+    private volatile MagicGathererDataObserver processor;
+
+    // Cards submitted but not yet saved or discarded. Guarded by this.
+    private int cardsInFlight;
+    private boolean statisticsLogged = true;
+
+    /**
+     * Create a new pipeline configured by the magic.pipeline properties.
+     * 
+     * @param cardDAO
+     *            The DAO to save parsed cards with
+     */
+    public CardProcessingPipeline( MagicCardDAO cardDAO ) {
+        this( cardDAO, UpdaterConfiguration.getInt( "magic.pipeline.parseThreads", Runtime.getRuntime().availableProcessors() ), UpdaterConfiguration
+                .getInt( "magic.pipeline.parseQueueCapacity", 256 ), UpdaterConfiguration.getInt( "magic.pipeline.persistThreads", 4 ), UpdaterConfiguration
+                .getInt( "magic.pipeline.persistQueueCapacity", 256 ) );
+    }
+
+    /**
+     * Create a new pipeline.
+     * 
+     * @param cardDAO
+     *            The DAO to save parsed cards with
+     * @param parseThreads
+     *            The number of cards parsed at once
+     * @param parseQueueCapacity
+     *            The number of downloaded cards which may wait to be parsed
+     * @param persistThreads
+     *            The number of writer threads
+     * @param persistQueueCapacity
+     *            The number of parsed cards which may wait to be saved
+     */
+    public CardProcessingPipeline( MagicCardDAO cardDAO, int parseThreads, int parseQueueCapacity, int persistThreads, int persistQueueCapacity ) {
+        this.parseStage = new PipelineStage( "parse", parseThreads, parseQueueCapacity );
+        this.writeStage = new CardWriterStage( cardDAO, new CardWriterStage.Listener() {
+
+            @Override
+            public void cardWritten( MagicCard card, boolean success ) {
+                try {
+                    processor.cardWritten( card, success );
+                } finally {
+                    CardProcessingPipeline.this.cardFinished();
+                }
+            }
+        }, persistThreads, persistQueueCapacity, UpdaterConfiguration.getInt( "magic.pipeline.writeBatchSize", 50 ), UpdaterConfiguration.getLong(
+                "magic.pipeline.writeBatchBytes", 8L * 1024 * 1024 ) );
+    }
+
+    /**
+     * Save each writer's batches of cards in one transaction of the given manager. It must manage the DataSource the DAO writes through, or the DAO's
+     * writes will not join the transaction.
+     * 
+     * @param transactionManager
+     *            The transaction manager, or null to commit each card on its own
+     */
+    public void setTransactionManager( PlatformTransactionManager transactionManager ) {
+        writeStage.setTransactionManager( transactionManager );
+    }
+
+    /**
+     * Parse and save cards with the given observer. Parsing keeps no state in the observer, so every thread can share it.
+     * 
+     * @param observer
+     *            The observer this pipeline was given to
+     * @throws IllegalStateException
+     *             If this pipeline already serves another observer
+     */
+    synchronized void setProcessor( MagicGathererDataObserver observer ) {
+        if ( processor != null && processor != observer ) {
+            throw new IllegalStateException( "This pipeline already serves another observer." );
+        }
+        this.processor = observer;
+    }
+
+    /**
+     * Queue a downloaded card to be parsed and saved, waiting if the parse queue is full.
+     * 
+     * @param rawData
+     *            The card's pages
+     * @throws InterruptedException
+     *             If interrupted while waiting for room in the queue. The card is not processed.
+     */
+    public void submit( final MagicCardRawData rawData ) throws InterruptedException {
+
+        synchronized ( this ) {
+            cardsInFlight++;
+            statisticsLogged = false;
+        }
+
+        try {
+            parseStage.submit( new Runnable() {
+
+                @Override
+                public void run() {
+                    CardProcessingPipeline.this.parse( rawData );
+                }
+            } );
+        } catch ( InterruptedException e ) {
+            this.cardFinished();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until every card submitted so far has been saved or discarded.
+     * 
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while ( cardsInFlight > 0 ) {
+            this.wait();
+        }
+        if ( !statisticsLogged ) {
+            statisticsLogged = true;
+            LOG.info( "Card processing pipeline idle. {}", this.getStatistics() );
+        }
+    }
+
+    /**
+     * @return The number of cards submitted but not yet saved or discarded
+     */
+    public synchronized int getCardsInFlight() {
+        return cardsInFlight;
+    }
+
+    /**
+     * Summarize the activity and queue depths of every stage for logging.
+     * 
+     * @return A human-readable description of this pipeline
+     */
+    public String getStatistics() {
+        return parseStage.getStatistics() + "; " + writeStage.getStatistics();
+    }
+
+    /**
+     * @return The number of parsed cards waiting for a writer
+     */
+    public int getWriteQueueDepth() {
+        return writeStage.getQueueDepth();
+    }
+
+    /**
+     * @return The largest number of parsed cards seen waiting for a writer at once
+     */
+    public int getMaxWriteQueueDepth() {
+        return writeStage.getMaxQueueDepth();
+    }
+
+    /**
+     * @return The average time taken to write a card, in milliseconds
+     */
+    public double getAverageWriteMilliseconds() {
+        return writeStage.getAverageWriteMilliseconds();
+    }
+
+    /**
+     * @return The longest time taken to write a card, in milliseconds
+     */
+    public long getMaxWriteMilliseconds() {
+        return writeStage.getMaxWriteMilliseconds();
+    }
+
+    /**
+     * @return The average time taken to commit a writer's batch of cards, in milliseconds
+     */
+    public double getAverageCommitMilliseconds() {
+        return writeStage.getAverageCommitMilliseconds();
+    }
+
+    /**
+     * @return The longest time taken to commit a writer's batch of cards, in milliseconds
+     */
+    public long getMaxCommitMilliseconds() {
+        return writeStage.getMaxCommitMilliseconds();
+    }
+
+    /**
+     * Parse stage: convert a card's pages to a MagicCard, and pass it on to its writer if it has changed.
+     */
+    private void parse( MagicCardRawData rawData ) {
+
+        // Once queued for a writer, the card is finished when it is written
+        boolean handedOff = false;
+        try {
+            MagicCard newCard = processor.parseCard( rawData );
+            if ( newCard != null && processor.needsWrite( newCard ) ) {
+                writeStage.submit( newCard );
+                handedOff = true;
+            }
+        } catch ( InterruptedException e ) {
+            LOG.error( "Interrupted while waiting to save Multiverse ID {}. It will not be saved.", rawData.getMultiverseId(), e );
+            Thread.currentThread().interrupt();
+        } catch ( RuntimeException e ) {
+            LOG.error( "Error processing Multiverse ID {}.", rawData.getMultiverseId(), e );
+        } finally {
+            if ( !handedOff ) {
+                this.cardFinished();
+            }
+        }
+    }
+
+    private synchronized void cardFinished() {
+        cardsInFlight--;
+        if ( cardsInFlight == 0 ) {
+            this.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.christopherfebles.magic.observer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.downloader.MagicCardThreadLoggingExceptionHandler;
+import com.christopherfebles.magic.model.MagicCard;
+
+/**
+ * The last stage of a {@link CardProcessingPipeline}: a fixed number of writer threads, each the only one to write the cards of its own partition of
+ * multiverse IDs.<br>
+ * <br>
+ * Cards are partitioned by multiverse ID, so two writers never write the same card at once and never wait on each other's row locks. Each writer has a
+ * bounded queue. {@link #submit(MagicCard)} blocks while the queue is full, so a slow database holds back parsing, and in turn downloading, rather than
+ * filling the heap.<br>
+ * <br>
+ * Each writer takes every card already waiting in its queue, up to maxBatchCards cards or an estimated maxBatchBytes bytes, and saves them in the order
+ * they were queued. A writer never waits for a batch to fill, so a card queued to an idle writer is saved at once. Given a transaction manager, each batch
+ * is saved in one transaction, so the database commits once per batch rather than once per card. Without one, each card is committed on its own.<br>
+ * <br>
+ * The result of every card is reported to the {@link Listener}, only once its batch is committed. A batch in which any card fails is rolled back, and its
+ * cards are saved again one at a time, so each card's result is its own.<br>
+ * <br>
+ * Queue depth, write latency and commit latency are tracked for sizing the number of writers against the database, and included in
+ * {@link #getStatistics()}. Writer
+ * threads are daemons, and exit after sitting idle for a while.
+ *
+ * @author Christopher Febles
+ *
+ */
+class CardWriterStage {
+
+    /**
+     * Told the result of every card written.
+     */
+    interface Listener {
+
+        /**
+         * @param card
+         *            A card submitted to the stage
+         * @param success
+         *            True if it was saved to the database
+         */
+        void cardWritten( MagicCard card, boolean success );
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger( CardWriterStage.class );
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    // Added to the size of each card's image, for the row and its text
+    private static final long CARD_OVERHEAD_BYTES = 4096;
+
+    private final MagicCardDAO cardDAO;
+    private final Listener listener;
+    private final Writer[] writers;
+    private final int maxBatchCards;
+    private final long maxBatchBytes;
+    private volatile PlatformTransactionManager transactionManager;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong blockedSubmissions = new AtomicLong();
+    private final AtomicLong blockedNanoseconds = new AtomicLong();
+    private final AtomicLong cardsWritten = new AtomicLong();
+    private final AtomicLong cardsFailed = new AtomicLong();
+    // Every call to the DAO, including cards saved again after their batch was rolled back
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeNanoseconds = new AtomicLong();
+    private final AtomicLong maxWriteNanoseconds = new AtomicLong();
+    private final AtomicLong batchesCommitted = new AtomicLong();
+    private final AtomicLong batchCardsCommitted = new AtomicLong();
+    private final AtomicLong commitNanoseconds = new AtomicLong();
+    private final AtomicLong maxCommitNanoseconds = new AtomicLong();
+    private final AtomicLong batchesRolledBack = new AtomicLong();
+
+    /**
+     * @param cardDAO
+     *            The DAO to save cards with
+     * @param listener
+     *            Told the result of every card
+     * @param threads
+     *            The number of writers
+     * @param queueCapacity
+     *            The number of cards which may wait to be written, shared evenly between writers
+     * @param maxBatchCards
+     *            The largest number of cards saved in one transaction
+     * @param maxBatchBytes
+     *            The largest estimated size of the cards saved in one transaction, in bytes
+     */
+    CardWriterStage( MagicCardDAO cardDAO, Listener listener, int threads, int queueCapacity, int maxBatchCards, long maxBatchBytes ) {
+        this.cardDAO = cardDAO;
+        this.listener = listener;
+        this.maxBatchCards = Math.max( 1, maxBatchCards );
+        this.maxBatchBytes = Math.max( 1, maxBatchBytes );
+        this.writers = new Writer[Math.max( 1, threads )];
+        int partitionCapacity = Math.max( 1, queueCapacity / writers.length );
+        for ( int x = 0; x < writers.length; x++ ) {
+            writers[x] = new Writer( partitionCapacity );
+        }
+    }
+
+    /**
+     * Save each batch of cards in one transaction of the given manager, which must manage the DataSource the DAO writes through.
+     *
+     * @param transactionManager
+     *            The transaction manager, or null to commit each card on its own
+     */
+    void setTransactionManager( PlatformTransactionManager transactionManager ) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Queue a card for its partition's writer, waiting for room in the queue if it is full.
+     *
+     * @param card
+     *            The card to save
+     * @throws InterruptedException
+     *             If interrupted while waiting for room. The card is not saved.
+     */
+    void submit( MagicCard card ) throws InterruptedException {
+
+        Writer writer = writers[( card.getMultiverseId() & Integer.MAX_VALUE ) % writers.length];
+        if ( !writer.queue.offer( card ) ) {
+            long start = System.nanoTime();
+            writer.queue.put( card );
+            blockedSubmissions.incrementAndGet();
+            blockedNanoseconds.addAndGet( System.nanoTime() - start );
+        }
+        writer.ensureRunning();
+
+        updateMax( maxQueueDepth, this.getQueueDepth() );
+    }
+
+    /**
+     * @return The number of cards waiting for a writer, across every partition
+     */
+    int getQueueDepth() {
+        int depth = 0;
+        for ( Writer writer : writers ) {
+            depth += writer.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return The largest number of cards seen waiting for a writer at once
+     */
+    int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The average time taken to write a card, in milliseconds
+     */
+    double getAverageWriteMilliseconds() {
+        long count = writes.get();
+        return count == 0 ? 0.0 : writeNanoseconds.get() / 1e6 / count;
+    }
+
+    /**
+     * @return The longest time taken to write a card, in milliseconds
+     */
+    long getMaxWriteMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis( maxWriteNanoseconds.get() );
+    }
+
+    /**
+     * @return The average time taken to commit a batch, in milliseconds
+     */
+    double getAverageCommitMilliseconds() {
+        long batches = batchesCommitted.get();
+        return batches == 0 ? 0.0 : commitNanoseconds.get() / 1e6 / batches;
+    }
+
+    /**
+     * @return The longest time taken to commit a batch, in milliseconds
+     */
+    long getMaxCommitMilliseconds() {
+        return TimeUnit.NANOSECONDS.toMillis( maxCommitNanoseconds.get() );
+    }
+
+    /**
+     * Summarize writer activity for logging.
+     *
+     * @return A human-readable description of this stage
+     */
+    String getStatistics() {
+        long batches = batchesCommitted.get();
+        return String.format( "write: %d threads, %d cards saved, %d failed, write %.1fms avg (max %dms), %d batches committed (%.1f cards avg), "
+                + "commit %.1fms avg (max %dms), %d rolled back, queue depth %d (max %d), %d submissions waited %dms for room", writers.length, cardsWritten
+                .get(), cardsFailed.get(), this.getAverageWriteMilliseconds(), this.getMaxWriteMilliseconds(), batches, batches == 0 ? 0.0
+                : ( double ) batchCardsCommitted.get() / batches, this.getAverageCommitMilliseconds(), this.getMaxCommitMilliseconds(), batchesRolledBack
+                .get(), this.getQueueDepth(), maxQueueDepth.get(), blockedSubmissions.get(), TimeUnit.NANOSECONDS.toMillis( blockedNanoseconds.get() ) );
+    }
+
+    /**
+     * Save a batch of cards, in one transaction if there is a transaction manager, and report the result of each.
+     *
+     * @param batch
+     *            The cards to save, in the order they were queued
+     */
+    private void write( List<MagicCard> batch ) {
+
+        PlatformTransactionManager manager = transactionManager;
+        if ( manager != null && batch.size() > 1 ) {
+            if ( this.saveInTransaction( manager, batch ) ) {
+                for ( MagicCard card : batch ) {
+                    this.report( card, true );
+                }
+                return;
+            }
+            // Nothing in the batch was kept, so find out which cards fail on their own
+            batchesRolledBack.incrementAndGet();
+            LOG.debug( "Rolled back a batch of {} cards. Saving them one at a time.", batch.size() );
+        }
+
+        for ( MagicCard card : batch ) {
+            this.report( card, this.save( card ) );
+        }
+    }
+
+    /**
+     * Save every card of a batch in one transaction, rolling it back if any card fails.
+     *
+     * @return True if the transaction was committed
+     */
+    private boolean saveInTransaction( PlatformTransactionManager manager, List<MagicCard> batch ) {
+
+        TransactionStatus transaction;
+        try {
+            transaction = manager.getTransaction( new DefaultTransactionDefinition() );
+        } catch ( TransactionException e ) {
+            LOG.error( "Unable to start a transaction for {} cards.", batch.size(), e );
+            return false;
+        }
+
+        boolean success = true;
+        for ( MagicCard card : batch ) {
+            if ( !this.save( card ) ) {
+                success = false;
+                break;
+            }
+        }
+
+        try {
+            if ( success ) {
+                long start = System.nanoTime();
+                manager.commit( transaction );
+                long elapsed = System.nanoTime() - start;
+                commitNanoseconds.addAndGet( elapsed );
+                updateMax( maxCommitNanoseconds, elapsed );
+                batchCardsCommitted.addAndGet( batch.size() );
+                batchesCommitted.incrementAndGet();
+                return true;
+            }
+            manager.rollback( transaction );
+        } catch ( TransactionException e ) {
+            LOG.error( "Error committing {} cards to database.", batch.size(), e );
+        }
+        return false;
+    }
+
+    /**
+     * Save a card, without reporting its result.
+     *
+     * @param card
+     *            The card to save
+     * @return True if it was saved
+     */
+    private boolean save( MagicCard card ) {
+
+        long start = System.nanoTime();
+        try {
+            return cardDAO.addCardToDatabase( card );
+        } catch ( RuntimeException e ) {
+            LOG.error( "Error saving MagicCard {} with ID {} to database.", card.getName(), card.getMultiverseId(), e );
+            return false;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            writes.incrementAndGet();
+            writeNanoseconds.addAndGet( elapsed );
+            updateMax( maxWriteNanoseconds, elapsed );
+        }
+    }
+
+    /**
+     * Count a card's final result, and tell the listener.
+     */
+    private void report( MagicCard card, boolean success ) {
+        ( success ? cardsWritten : cardsFailed ).incrementAndGet();
+        listener.cardWritten( card, success );
+    }
+
+    private static long estimateSize( MagicCard card ) {
+        byte[] image = card.getCardImageArray();
+        return CARD_OVERHEAD_BYTES + ( image == null ? 0 : image.length );
+    }
+
+    private static void updateMax( AtomicInteger max, int value ) {
+        int current = max.get();
+        while ( value > current && !max.compareAndSet( current, value ) ) {
+            current = max.get();
+        }
+    }
+
+    private static void updateMax( AtomicLong max, long value ) {
+        long current = max.get();
+        while ( value > current && !max.compareAndSet( current, value ) ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * One partition's queue, and the thread which drains it.
+     */
+    private class Writer implements Runnable {
+
+        private final BlockingQueue<MagicCard> queue;
+        // Guarded by this
+        private boolean running;
+
+        Writer( int capacity ) {
+            this.queue = new ArrayBlockingQueue<>( capacity );
+        }
+
+        /**
+         * Start this writer's thread if it has exited. Called after every card is queued.
+         */
+        synchronized void ensureRunning() {
+            if ( !running ) {
+                running = true;
+                Thread newThread = new Thread( this, "CP_write_" + THREAD_COUNTER.incrementAndGet() );
+                newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                newThread.setDaemon( true );
+                newThread.start();
+            }
+        }
+
+        /**
+         * Take the cards already waiting behind the given one, up to the batch limits, without waiting for more.
+         */
+        private List<MagicCard> takeBatch( MagicCard first ) {
+            List<MagicCard> batch = new ArrayList<>();
+            batch.add( first );
+            long batchBytes = estimateSize( first );
+            while ( batch.size() < maxBatchCards && batchBytes < maxBatchBytes ) {
+                MagicCard card = queue.poll();
+                if ( card == null ) {
+                    break;
+                }
+                batch.add( card );
+                batchBytes += estimateSize( card );
+            }
+            return batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while ( true ) {
+                    MagicCard card = queue.poll( IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+                    if ( card == null ) {
+                        synchronized ( this ) {
+                            // A card queued after this check finds the writer stopped, and starts another
+                            if ( queue.isEmpty() ) {
+                                running = false;
+                                return;
+                            }
+                        }
+                        continue;
+                    }
+                    CardWriterStage.this.write( this.takeBatch( card ) );
+                }
+            } catch ( InterruptedException e ) {
+                LOG.error( "Writer interrupted with {} cards queued. They will not be saved.", queue.size(), e );
+                synchronized ( this ) {
+                    running = false;
+                }
+                // Report the abandoned cards, so nothing waits for them
+                List<MagicCard> abandoned = new ArrayList<>();
+                queue.drainTo( abandoned );
+                for ( MagicCard card : abandoned ) {
+                    cardsFailed.incrementAndGet();
+                    listener.cardWritten( card, false );
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.christopherfebles.magic.observer;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.cache.IdKeyedFileCache;
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+import com.christopherfebles.magic.model.MagicCardRawData;
+
+/**
+ * A persistent record of a 64-bit hash of the downloaded pages and image of every card processed, keyed by multiverse ID.<br>
+ * <br>
+ * {@link MagicGathererDataObserver} checks each downloaded card against it before doing any work. A card whose data page, language page and image are
+ * byte-for-byte the same as when it was last saved is neither parsed nor written to the database. A hash is only stored once its card has been saved,
+ * or found to have no card assigned, so a card which fails is tried again on the next run.<br>
+ * <br>
+ * The hashes are loaded from magic.cache.contentHashFile on first use, and written back, deflated, by {@link #saveSharedInstance()}. They describe what is
+ * already in the database, so the file should be deleted whenever the database is rebuilt. Populate runs forget the hashes of every ID they load, since
+ * those IDs are not in the database.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class ContentHashCache extends IdKeyedFileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger( ContentHashCache.class );
+    private static final int FILE_FORMAT_VERSION = 2;
+    // Stored in place of a hash which happens to be 0, which marks an ID without a hash
+    private static final long ZERO_HASH = 1;
+
+    private static ContentHashCache sharedInstance;
+
+    // Hashes of cards still being processed, stored by commit() once they are saved
+    private final Map<Integer, Long> pendingHashes = new ConcurrentHashMap<>();
+
+    private final AtomicLong newCards = new AtomicLong();
+    private final AtomicLong changedCards = new AtomicLong();
+    private final AtomicLong unchangedCards = new AtomicLong();
+
+    /**
+     * Get the cache shared by all observers in this JVM, loading it from magic.cache.contentHashFile on first use.
+     *
+     * @return The shared content hash cache
+     */
+    public static synchronized ContentHashCache getSharedInstance() {
+        if ( sharedInstance == null ) {
+            sharedInstance = new ContentHashCache( new File( UpdaterConfiguration.getString( "magic.cache.contentHashFile",
+                    "magicdbupdater-contenthashes.bin" ) ) );
+            sharedInstance.load();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Write the shared cache to disk, if it has been used and modified.
+     */
+    public static synchronized void saveSharedInstance() {
+        if ( sharedInstance != null ) {
+            LOG.info( "Content hashes: {}", sharedInstance.getStatistics() );
+            sharedInstance.save();
+        }
+    }
+
+    /**
+     * Create a new, empty cache backed by the given file. Call {@link #load()} to read the file's contents.
+     *
+     * @param cacheFile
+     *            The file hashes are persisted to
+     */
+    public ContentHashCache( File cacheFile ) {
+        super( cacheFile, FILE_FORMAT_VERSION, "content hash cache", 1 );
+    }
+
+    /**
+     * Hash a card's data page, language page and image together.
+     *
+     * @param rawData
+     *            The downloaded card
+     * @return A 64-bit hash of its content, never 0
+     */
+    public static long hash( MagicCardRawData rawData ) {
+
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        for ( byte[] part : new byte[][] { rawData.getDataByteArray(), rawData.getLanguageByteArray(), rawData.getImageByteArray() } ) {
+            // The length of each part first, so bytes moving from one part to the next change the hash
+            int length = part == null ? -1 : part.length;
+            updateWithInt( crc, length );
+            updateWithInt( adler, length );
+            if ( part != null ) {
+                crc.update( part, 0, part.length );
+                adler.update( part, 0, part.length );
+            }
+        }
+        long hash = crc.getValue() << 32 | adler.getValue();
+        return hash == 0 ? ZERO_HASH : hash;
+    }
+
+    /**
+     * Check whether a downloaded card is the same as when it was last saved, and count it as new, changed or unchanged.<br>
+     * <br>
+     * If it is not unchanged, its hash is held until {@link #commit(int)} is called for it.
+     *
+     * @param rawData
+     *            The downloaded card
+     * @return True if the card can be skipped
+     */
+    public boolean isUnchanged( MagicCardRawData rawData ) {
+
+        int multiverseId = rawData.getMultiverseId();
+        long hash = hash( rawData );
+        long storedHash = this.get( multiverseId, 0 );
+
+        if ( storedHash == hash ) {
+            unchangedCards.incrementAndGet();
+            return true;
+        }
+        if ( storedHash == 0 ) {
+            newCards.incrementAndGet();
+        } else {
+            changedCards.incrementAndGet();
+        }
+        pendingHashes.put( multiverseId, hash );
+        return false;
+    }
+
+    /**
+     * Store the hash held for a card by {@link #isUnchanged(MagicCardRawData)}, once the card has been saved.
+     *
+     * @param multiverseId
+     *            The ID of the saved card
+     */
+    public void commit( int multiverseId ) {
+        Long hash = pendingHashes.remove( multiverseId );
+        if ( hash != null ) {
+            this.set( multiverseId, hash );
+        }
+    }
+
+    /**
+     * Summarize cache activity for logging.
+     *
+     * @return A human-readable description of the cards checked
+     */
+    public String getStatistics() {
+        return String.format( "%d new, %d changed, %d unchanged skipped, %d ids stored.", newCards.get(), changedCards.get(), unchangedCards.get(),
+                this.size() );
+    }
+
+    private static void updateWithInt( Checksum checksum, int value ) {
+        checksum.update( value >>> 24 );
+        checksum.update( value >>> 16 );
+        checksum.update( value >>> 8 );
+        checksum.update( value );
+    }
+}
@@ -13,7 +13,7 @@ import org.slf4j.LoggerFactory;
 public class DownloaderCompleteObserver implements CloneableObserver {
 
     private static final Logger LOG = LoggerFactory.getLogger( DownloaderCompleteObserver.class );
-    private boolean isObserving = true;
+    private volatile boolean isObserving = true;
 
     @Override
     public void update( Observable downloader, Object rawDataObj ) {
@@ -0,0 +1,116 @@
+package com.christopherfebles.magic.observer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * The rows of a Gatherer card page, looked up by ID.<br>
+ * <br>
+ * Every row of a card's details has an id attribute made of a long ASP.NET prefix and the row's name, such as "nameRow" or "manaRow". Pages with more
+ * than one card assigned to a multiverse ID (split and flip cards) add "ctl0x_" to the prefix for each card. This index collects every element with the
+ * prefix in a single traversal of the document, then works out which prefix the first card uses, so each row lookup is a map lookup rather than a scan of
+ * the whole document.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class GathererElementIndex {
+
+    public static final String GATHERER_ID_DEFAULT_PREFIX = "ctl00_ctl00_ctl00_MainContent_SubContent_SubContent_";
+    private static final String NAME_ROW = "nameRow";
+    private static final int MAX_CARDS_PER_PAGE = 10;
+
+    private final Map<String, Element> elementsById = new HashMap<>();
+    private final String prefix;
+
+    /**
+     * Index the given Gatherer page.
+     * 
+     * @param gathererDocument
+     *            The parsed HTML of a card's details page
+     */
+    public GathererElementIndex( Element gathererDocument ) {
+
+        new NodeTraversor( new NodeVisitor() {
+
+            @Override
+            public void head( Node node, int depth ) {
+                if ( node instanceof Element ) {
+                    String id = node.attr( "id" );
+                    // Keep the first element with each ID, as select( "[id=...]" ).first() would
+                    if ( id.startsWith( GATHERER_ID_DEFAULT_PREFIX ) && !elementsById.containsKey( id ) ) {
+                        elementsById.put( id, ( Element ) node );
+                    }
+                }
+            }
+
+            @Override
+            public void tail( Node node, int depth ) {
+                // Nothing to do on the way back up
+            }
+        } ).traverse( gathererDocument );
+
+        this.prefix = this.findPrefix();
+    }
+
+    /**
+     * Find the prefix of the first card's name row, trying the single card prefix first.
+     */
+    private String findPrefix() {
+
+        if ( elementsById.containsKey( GATHERER_ID_DEFAULT_PREFIX + NAME_ROW ) ) {
+            return GATHERER_ID_DEFAULT_PREFIX;
+        }
+        for ( int x = 0; x < MAX_CARDS_PER_PAGE; x++ ) {
+            String cardPrefix = GATHERER_ID_DEFAULT_PREFIX + "ctl0" + x + "_";
+            if ( elementsById.containsKey( cardPrefix + NAME_ROW ) ) {
+                return cardPrefix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the page has a name row, which is to say a card is assigned to its multiverse ID
+     */
+    public boolean hasCard() {
+        return prefix != null;
+    }
+
+    /**
+     * @return True if the page describes more than one card, in which case rows are looked up for the first
+     */
+    public boolean hasMultipleCards() {
+        return prefix != null && !GATHERER_ID_DEFAULT_PREFIX.equals( prefix );
+    }
+
+    /**
+     * @return The ID prefix of the first card's rows, or null if the page has no card
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Look up a row of the first card on the page.
+     * 
+     * @param rowName
+     *            The row's ID without its prefix, such as "manaRow"
+     * @return The row's element, or null if the page has no card or the card has no such row
+     */
+    public Element getRow( String rowName ) {
+        return prefix == null ? null : elementsById.get( prefix + rowName );
+    }
+
+    /**
+     * @return The number of prefixed elements indexed
+     */
+    public int size() {
+        return elementsById.size();
+    }
+}
@@ -0,0 +1,233 @@
+package com.christopherfebles.magic.observer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.enums.Color;
+
+/**
+ * Decodes the alt text of the mana symbol images on Gatherer card pages, such as "Two or White" or "Phyrexian Red".<br>
+ * <br>
+ * Every symbol Gatherer can show is a color, a number, a hybrid of two of those, or a Phyrexian color, so the decoded value of each is computed once, when
+ * this class is loaded, and shared by every card. Alt text in any other form is decoded the long way each time it is seen, exactly as it would have been
+ * before.
+ *
+ * @author Christopher Febles
+ *
+ */
+public final class GathererSymbolTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger( GathererSymbolTable.class );
+
+    // Gatherer spells out colorless mana up to ten in symbols' alt text
+    private static final String[] NUMBER_WORDS = { "ONE", "TWO", "THREE", "FOUR", "FIVE", "SIX", "SEVEN", "EIGHT", "NINE", "TEN" };
+    private static final Map<String, Integer> NUMBER_VALUES = buildNumberValues();
+    private static final int LARGEST_NUMERIC_SYMBOL = 20;
+
+    // Keyed by alt text as Gatherer writes it, such as "Variable Colorless"
+    private static final Map<String, String> COLORS = buildColorTable();
+    private static final Map<String, String> TEXT_SYMBOLS = buildTextSymbolTable();
+
+    private GathererSymbolTable() {
+        // Static access only
+    }
+
+    /**
+     * Convert the alt text of a mana symbol image to its mana value, such as "W", "2/W" or "RP".
+     *
+     * @param alt
+     *            The alt text to decode
+     * @return The decoded mana, or the alt text itself if it is not a known color or number
+     */
+    public static String decodeColor( String alt ) {
+        String color = COLORS.get( alt );
+        return color != null ? color : decodeColor( alt, false );
+    }
+
+    /**
+     * Convert a symbol image in a card's text to the text it stands for, such as "{T}" or "{B/R}".
+     *
+     * @param alt
+     *            The alt text of the image
+     * @param multiverseId
+     *            The ID of the Magic card being parsed
+     * @return The symbol's text, in braces
+     */
+    public static String decodeTextSymbol( String alt, int multiverseId ) {
+
+        String symbol = TEXT_SYMBOLS.get( alt );
+        if ( symbol != null ) {
+            return symbol;
+        }
+
+        if ( alt.equalsIgnoreCase( "tap" ) ) {
+            return "{T}";
+        }
+        if ( StringUtils.isNumeric( alt.trim() ) ) {
+            // Colorless (numeric)
+            return "{" + alt + "}";
+        }
+        // alt is a String
+        String altColor = decodeColor( alt );
+        if ( altColor.equalsIgnoreCase( alt ) ) {
+            LOG.error( "Unexpected image in card text with alt: {} for card with id {}", alt, multiverseId );
+        }
+        return "{" + altColor + "}";
+    }
+
+    /**
+     * Convert the mana symbols of a card's mana row to its mana cost string, such as "2;B/R"
+     *
+     * @param manaSymbols
+     *            The alt text of each mana symbol image, in order
+     * @return The mana cost
+     */
+    public static String decodeManaCost( List<String> manaSymbols ) {
+
+        StringBuilder manaCost = new StringBuilder();
+        for ( String alt : manaSymbols ) {
+            manaCost.append( decodeColor( alt ) ).append( ';' );
+        }
+        // Remove trailing semicolon
+        manaCost.setLength( manaCost.length() - 1 );
+        return manaCost.toString();
+    }
+
+    /**
+     * Decode alt text which may not be in the table.
+     *
+     * @param colorStr
+     *            The color string to parse
+     * @param strict
+     *            True to return null for anything which is not a known color or number, rather than logging it and using it as is
+     * @return The parsed color, or colorStr if a processing error occurs.
+     */
+    private static String decodeColor( String colorStr, boolean strict ) {
+
+        String localColorStr = colorStr.toUpperCase().trim().replace( ' ', '_' );
+
+        String[] colorAr = null;
+        boolean isPhyrexian = false;
+
+        if ( localColorStr.contains( "PHYREXIAN_" ) ) {
+            colorAr = localColorStr.split( "PHYREXIAN_" );
+            isPhyrexian = true;
+        } else {
+            colorAr = localColorStr.split( "_OR_" );
+        }
+
+        StringBuilder retVal = new StringBuilder();
+        for ( String oneColor : colorAr ) {
+            if ( StringUtils.isEmpty( oneColor ) ) {
+                continue;
+            }
+            if ( Color.contains( oneColor ) ) {
+                Color color = Color.valueOf( oneColor );
+                retVal.append( color.getValue() );
+                if ( isPhyrexian ) {
+                    retVal.append( 'P' );
+                }
+            } else if ( NUMBER_VALUES.containsKey( oneColor ) ) {
+                retVal.append( NUMBER_VALUES.get( oneColor ) );
+            } else {
+                // Check for integer here (it should be colorless)
+                if ( !StringUtils.isNumeric( oneColor ) ) {
+                    if ( strict ) {
+                        return null;
+                    }
+                    LOG.error( "Unable to load Color {}", oneColor );
+                }
+                retVal.append( oneColor );
+            }
+
+            retVal.append( '/' );
+        }
+        retVal.setLength( retVal.length() - 1 );
+
+        return retVal.toString();
+    }
+
+    private static Map<String, Integer> buildNumberValues() {
+        Map<String, Integer> numberValues = new HashMap<>();
+        for ( int x = 0; x < NUMBER_WORDS.length; x++ ) {
+            numberValues.put( NUMBER_WORDS[x], x + 1 );
+        }
+        return numberValues;
+    }
+
+    /**
+     * Decode every single, hybrid and Phyrexian symbol Gatherer uses.
+     */
+    private static Map<String, String> buildColorTable() {
+
+        List<String> colors = new ArrayList<>();
+        for ( Color color : Color.values() ) {
+            colors.add( toAltText( color.name() ) );
+        }
+        List<String> numberWords = new ArrayList<>();
+        for ( String numberWord : NUMBER_WORDS ) {
+            numberWords.add( toAltText( numberWord ) );
+        }
+
+        List<String> symbols = new ArrayList<>();
+        for ( int x = 0; x <= LARGEST_NUMERIC_SYMBOL; x++ ) {
+            symbols.add( String.valueOf( x ) );
+        }
+        symbols.addAll( colors );
+        symbols.addAll( numberWords );
+        for ( String color : colors ) {
+            symbols.add( "Phyrexian " + color );
+            for ( String first : colors ) {
+                symbols.add( first + " or " + color );
+            }
+            for ( String first : numberWords ) {
+                symbols.add( first + " or " + color );
+            }
+        }
+
+        Map<String, String> table = new HashMap<>();
+        for ( String symbol : symbols ) {
+            String decoded = decodeColor( symbol, true );
+            if ( decoded != null ) {
+                table.put( symbol, decoded.intern() );
+            }
+        }
+        return Collections.unmodifiableMap( table );
+    }
+
+    /**
+     * Brace every symbol of the color table which can appear in card text without an error.
+     */
+    private static Map<String, String> buildTextSymbolTable() {
+
+        Map<String, String> table = new HashMap<>();
+        table.put( "Tap", "{T}" );
+        for ( Map.Entry<String, String> entry : COLORS.entrySet() ) {
+            String alt = entry.getKey();
+            if ( StringUtils.isNumeric( alt ) ) {
+                table.put( alt, ( "{" + alt + "}" ).intern() );
+            } else if ( !entry.getValue().equalsIgnoreCase( alt ) ) {
+                table.put( alt, ( "{" + entry.getValue() + "}" ).intern() );
+            }
+        }
+        return Collections.unmodifiableMap( table );
+    }
+
+    /**
+     * Convert an enum constant name such as VARIABLE_COLORLESS to Gatherer's form, "Variable Colorless".
+     */
+    private static String toAltText( String name ) {
+        String[] words = name.split( "_" );
+        for ( int x = 0; x < words.length; x++ ) {
+            words[x] = StringUtils.capitalize( words[x].toLowerCase() );
+        }
+        return StringUtils.join( words, ' ' );
+    }
+}
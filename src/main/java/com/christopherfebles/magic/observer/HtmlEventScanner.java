@@ -0,0 +1,343 @@
+package com.christopherfebles.magic.observer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+/**
+ * A forward-only HTML tokenizer, which reports start tags, end tags and text to its subclass as it reads them, without building a document tree.<br>
+ * <br>
+ * Only as much of HTML is understood as Gatherer's pages need: comments, doctypes and the contents of script and style elements are skipped, tag and
+ * attribute names are lower-cased, and entities are decoded with jsoup's own tables, so text and attribute values match what jsoup would produce.<br>
+ * <br>
+ * Pages are scanned as UTF-8 bytes. All of HTML's markup is ASCII, and no byte of a multi-byte UTF-8 character is, so the page is never decoded as a
+ * whole: only the tag names, attribute values and text reported to the subclass are, and text only while {@link #wantsText()} is true.
+ * 
+ * @author Christopher Febles
+ *
+ */
+abstract class HtmlEventScanner {
+
+    private static final int MAX_ATTRIBUTES = 16;
+
+    private byte[] html;
+    private int length;
+
+    // Attributes of the start tag currently being reported
+    private final String[] attributeNames = new String[MAX_ATTRIBUTES];
+    private final int[] attributeValueStarts = new int[MAX_ATTRIBUTES];
+    private final int[] attributeValueEnds = new int[MAX_ATTRIBUTES];
+    private int attributeCount;
+
+    /**
+     * Called for each start tag.
+     * 
+     * @param tagName
+     *            The lower-case tag name
+     * @param isVoid
+     *            True if the element can have no content, and no matching {@link #endTag(String)} will follow
+     */
+    protected abstract void startTag( String tagName, boolean isVoid );
+
+    /**
+     * Called for each end tag, including those implied by the end of a script or style element.
+     * 
+     * @param tagName
+     *            The lower-case tag name
+     */
+    protected abstract void endTag( String tagName );
+
+    /**
+     * Called for each run of text between tags, while {@link #wantsText()} is true.
+     * 
+     * @param text
+     *            The text, with entities decoded
+     */
+    protected abstract void text( String text );
+
+    /**
+     * @return True if the subclass needs the text currently being read
+     */
+    protected abstract boolean wantsText();
+
+    /**
+     * Look up an attribute of the start tag currently being reported. Only valid during {@link #startTag(String, boolean)}.
+     * 
+     * @param name
+     *            The lower-case attribute name
+     * @return The attribute's value with entities decoded, "" for an attribute without a value, or null if the tag has no such attribute
+     */
+    protected String attribute( String name ) {
+        // Later duplicates win, as they do in jsoup
+        for ( int x = attributeCount - 1; x >= 0; x-- ) {
+            if ( attributeNames[x].equals( name ) ) {
+                return this.decode( attributeValueStarts[x], attributeValueEnds[x], true );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the whole page, reporting its tags and text.
+     * 
+     * @param page
+     *            The UTF-8 bytes of the HTML to scan
+     */
+    protected void scan( byte[] page ) {
+
+        this.html = page;
+        this.length = page.length;
+
+        int pos = 0;
+        while ( pos < length ) {
+            int lt = this.indexOf( '<', pos );
+            if ( lt < 0 ) {
+                this.emitText( pos, length );
+                break;
+            }
+            if ( lt > pos ) {
+                this.emitText( pos, lt );
+            }
+            pos = this.readMarkup( lt );
+        }
+    }
+
+    /**
+     * Read whatever starts with the '&lt;' at the given position.
+     * 
+     * @return The position after it
+     */
+    private int readMarkup( int lt ) {
+
+        int next = lt + 1 < length ? html[lt + 1] : 0;
+        if ( this.startsWith( "<!--", lt ) ) {
+            return this.after( this.indexOf( "-->", lt + 4 ), 3 );
+        }
+        if ( next == '!' || next == '?' ) {
+            // Doctype or processing instruction
+            return this.after( this.indexOf( '>', lt ), 1 );
+        }
+        if ( next == '/' ) {
+            int nameEnd = this.nameEnd( lt + 2 );
+            int end = this.after( this.indexOf( '>', lt ), 1 );
+            if ( nameEnd > lt + 2 ) {
+                this.endTag( this.substring( lt + 2, nameEnd ).toLowerCase() );
+            }
+            return end;
+        }
+        if ( isLetter( next ) ) {
+            return this.readStartTag( lt );
+        }
+        // A bare '<' is text
+        this.emitText( lt, lt + 1 );
+        return lt + 1;
+    }
+
+    /**
+     * Read a start tag and its attributes, then skip the contents of script and style elements.
+     */
+    private int readStartTag( int lt ) {
+
+        int nameEnd = this.nameEnd( lt + 1 );
+        String tagName = this.substring( lt + 1, nameEnd ).toLowerCase();
+
+        attributeCount = 0;
+        boolean selfClosing = false;
+        int pos = nameEnd;
+        while ( pos < length ) {
+            byte c = html[pos];
+            if ( c == '>' ) {
+                pos++;
+                break;
+            }
+            if ( c == '/' ) {
+                selfClosing = pos + 1 < length && html[pos + 1] == '>';
+                pos++;
+                continue;
+            }
+            if ( isWhitespace( c ) ) {
+                pos++;
+                continue;
+            }
+            pos = this.readAttribute( pos );
+        }
+
+        Tag tag = Tag.valueOf( tagName );
+        boolean isVoid = tag.isEmpty() || selfClosing && !tag.isKnownTag();
+        this.startTag( tagName, isVoid );
+
+        if ( "script".equals( tagName ) || "style".equals( tagName ) ) {
+            int close = this.indexOfIgnoreCase( "</" + tagName, pos );
+            if ( close < 0 ) {
+                return length;
+            }
+            this.endTag( tagName );
+            return this.after( this.indexOf( '>', close ), 1 );
+        }
+        return pos;
+    }
+
+    /**
+     * Read one attribute, name and optional value, starting at its name.
+     * 
+     * @return The position after the attribute
+     */
+    private int readAttribute( int start ) {
+
+        int pos = start;
+        while ( pos < length ) {
+            byte c = html[pos];
+            if ( isWhitespace( c ) || c == '=' || c == '>' || c == '/' ) {
+                break;
+            }
+            pos++;
+        }
+        String name = this.substring( start, pos ).toLowerCase();
+        int valueStart = pos;
+        int valueEnd = pos;
+
+        int afterName = this.skipWhitespace( pos );
+        if ( afterName < length && html[afterName] == '=' ) {
+            pos = this.skipWhitespace( afterName + 1 );
+            byte quote = pos < length ? html[pos] : 0;
+            if ( quote == '"' || quote == '\'' ) {
+                valueStart = pos + 1;
+                valueEnd = this.indexOf( quote, valueStart );
+                if ( valueEnd < 0 ) {
+                    valueEnd = length;
+                }
+                pos = Math.min( length, valueEnd + 1 );
+            } else {
+                valueStart = pos;
+                while ( pos < length && !isWhitespace( html[pos] ) && html[pos] != '>' ) {
+                    pos++;
+                }
+                valueEnd = pos;
+            }
+        }
+
+        if ( attributeCount < MAX_ATTRIBUTES ) {
+            attributeNames[attributeCount] = name;
+            attributeValueStarts[attributeCount] = valueStart;
+            attributeValueEnds[attributeCount] = valueEnd;
+            attributeCount++;
+        }
+        return pos;
+    }
+
+    private void emitText( int start, int end ) {
+        if ( this.wantsText() ) {
+            this.text( this.decode( start, end, false ) );
+        }
+    }
+
+    private String decode( int start, int end, boolean inAttribute ) {
+        String raw = this.substring( start, end );
+        return raw.indexOf( '&' ) < 0 ? raw : Parser.unescapeEntities( raw, inAttribute );
+    }
+
+    private String substring( int start, int end ) {
+        return new String( html, start, end - start, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * @return The end of the tag name starting at the given position
+     */
+    private int nameEnd( int start ) {
+        int pos = start;
+        while ( pos < length ) {
+            byte c = html[pos];
+            if ( isWhitespace( c ) || c == '/' || c == '>' ) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private int skipWhitespace( int start ) {
+        int pos = start;
+        while ( pos < length && isWhitespace( html[pos] ) ) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @return The position after a match found by indexOf, or the end of the page if there was no match
+     */
+    private int after( int matchIndex, int matchLength ) {
+        return matchIndex < 0 ? length : matchIndex + matchLength;
+    }
+
+    private int indexOf( int target, int from ) {
+        for ( int pos = from; pos < length; pos++ ) {
+            if ( html[pos] == target ) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param target
+     *            ASCII text to look for
+     */
+    private int indexOf( String target, int from ) {
+        for ( int pos = this.indexOf( target.charAt( 0 ), from ); pos >= 0; pos = this.indexOf( target.charAt( 0 ), pos + 1 ) ) {
+            if ( this.startsWith( target, pos ) ) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param target
+     *            ASCII text to look for, starting with '&lt;'
+     */
+    private int indexOfIgnoreCase( String target, int from ) {
+        for ( int pos = this.indexOf( '<', from ); pos >= 0; pos = this.indexOf( '<', pos + 1 ) ) {
+            if ( this.regionMatchesIgnoreCase( target, pos ) ) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith( String target, int pos ) {
+        if ( pos + target.length() > length ) {
+            return false;
+        }
+        for ( int x = 0; x < target.length(); x++ ) {
+            if ( html[pos + x] != target.charAt( x ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatchesIgnoreCase( String target, int pos ) {
+        if ( pos + target.length() > length ) {
+            return false;
+        }
+        for ( int x = 0; x < target.length(); x++ ) {
+            if ( Character.toLowerCase( ( char ) html[pos + x] ) != Character.toLowerCase( target.charAt( x ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * HTML's whitespace, as jsoup's tokeniser recognizes it
+     */
+    private static boolean isWhitespace( int c ) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isLetter( int c ) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+}
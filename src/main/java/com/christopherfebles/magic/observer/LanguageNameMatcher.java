@@ -0,0 +1,168 @@
+package com.christopherfebles.magic.observer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+
+import com.christopherfebles.magic.enums.Language;
+
+/**
+ * Finds which language names appear in a Gatherer language page, in a single pass over its UTF-8 bytes.<br>
+ * <br>
+ * The names are compiled once into an Aho-Corasick automaton, flattened to a table of transitions for each state and each byte that appears in a name.
+ * Every other byte leads straight back to the start. Scanning a page costs one table lookup per byte, however many languages there are, and stops as soon
+ * as every name has been found.<br>
+ * <br>
+ * Instances are immutable, and may be shared between threads.
+ *
+ * @author Christopher Febles
+ *
+ */
+public class LanguageNameMatcher {
+
+    private final Language[] languages;
+    // The column of each byte in the transition table. Column 0 is every byte not in any name.
+    private final int[] byteClasses = new int[256];
+    private final int numberOfClasses;
+    // transitions[state * numberOfClasses + byteClass] is the start of the next state's row
+    private final int[] transitions;
+    // The languages whose names end at each state, as bits of their ordinals
+    private final long[] matches;
+    private final long allLanguages;
+
+    /**
+     * Create a matcher for the names of every {@link Language}.
+     */
+    public LanguageNameMatcher() {
+        this( Language.values() );
+    }
+
+    /**
+     * Create a matcher for the names of the given languages.
+     *
+     * @param languages
+     *            The languages to look for. Their names are their toString() values.
+     */
+    public LanguageNameMatcher( Language... languages ) {
+
+        this.languages = languages.clone();
+        byte[][] names = new byte[languages.length][];
+        long all = 0;
+        for ( int x = 0; x < languages.length; x++ ) {
+            names[x] = languages[x].toString().getBytes( StandardCharsets.UTF_8 );
+            all |= 1L << languages[x].ordinal();
+        }
+        this.allLanguages = all;
+
+        int classes = 1;
+        for ( byte[] name : names ) {
+            for ( byte b : name ) {
+                if ( byteClasses[b & 0xFF] == 0 ) {
+                    byteClasses[b & 0xFF] = classes++;
+                }
+            }
+        }
+        this.numberOfClasses = classes;
+
+        // Build the trie, with -1 for a missing edge
+        List<int[]> trie = new ArrayList<>();
+        List<Long> output = new ArrayList<>();
+        trie.add( this.newState() );
+        output.add( 0L );
+        for ( int x = 0; x < names.length; x++ ) {
+            int state = 0;
+            for ( byte b : names[x] ) {
+                int byteClass = byteClasses[b & 0xFF];
+                if ( trie.get( state )[byteClass] < 0 ) {
+                    trie.get( state )[byteClass] = trie.size();
+                    trie.add( this.newState() );
+                    output.add( 0L );
+                }
+                state = trie.get( state )[byteClass];
+            }
+            output.set( state, output.get( state ) | 1L << languages[x].ordinal() );
+        }
+
+        // Fill in missing edges from each state's failure link, breadth first, so every state has a transition for every class
+        this.transitions = new int[trie.size() * numberOfClasses];
+        this.matches = new long[trie.size()];
+        int[] failure = new int[trie.size()];
+        matches[0] = output.get( 0 );
+        Queue<Integer> queue = new ArrayDeque<>();
+        for ( int byteClass = 0; byteClass < numberOfClasses; byteClass++ ) {
+            int next = trie.get( 0 )[byteClass];
+            if ( next > 0 ) {
+                transitions[byteClass] = next;
+                queue.add( next );
+            }
+        }
+        while ( !queue.isEmpty() ) {
+            int state = queue.remove();
+            matches[state] = output.get( state ) | matches[failure[state]];
+            for ( int byteClass = 0; byteClass < numberOfClasses; byteClass++ ) {
+                int next = trie.get( state )[byteClass];
+                int fallback = transitions[failure[state] * numberOfClasses + byteClass];
+                if ( next > 0 ) {
+                    failure[next] = fallback;
+                    transitions[state * numberOfClasses + byteClass] = next;
+                    queue.add( next );
+                } else {
+                    transitions[state * numberOfClasses + byteClass] = fallback;
+                }
+            }
+        }
+
+        // Store the start of each next state's row rather than its number, so scanning needs no multiplication
+        for ( int x = 0; x < transitions.length; x++ ) {
+            transitions[x] *= numberOfClasses;
+        }
+    }
+
+    /**
+     * Find every language whose name appears in the given page.
+     *
+     * @param page
+     *            The UTF-8 bytes of the page
+     * @return The languages found
+     */
+    public EnumSet<Language> findLanguages( byte[] page ) {
+
+        long found = matches[0];
+        int row = 0;
+        for ( int x = 0; x < page.length && found != allLanguages; x++ ) {
+            row = transitions[row + byteClasses[page[x] & 0xFF]];
+            if ( row != 0 ) {
+                found |= matches[row / numberOfClasses];
+            }
+        }
+
+        EnumSet<Language> foundLanguages = EnumSet.noneOf( Language.class );
+        for ( Language language : languages ) {
+            if ( ( found & 1L << language.ordinal() ) != 0 ) {
+                foundLanguages.add( language );
+            }
+        }
+        return foundLanguages;
+    }
+
+    /**
+     * Find every language whose name appears in the given page.
+     *
+     * @param page
+     *            The page
+     * @return The languages found
+     */
+    public EnumSet<Language> findLanguages( String page ) {
+        return this.findLanguages( page.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private int[] newState() {
+        int[] edges = new int[numberOfClasses];
+        Arrays.fill( edges, -1 );
+        return edges;
+    }
+}
@@ -2,11 +2,9 @@ package com.christopherfebles.magic.observer;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Observable;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,11 +16,13 @@ import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.christopherfebles.magic.config.UpdaterConfiguration;
 import com.christopherfebles.magic.dao.MagicCardDAO;
-import com.christopherfebles.magic.enums.Color;
+import com.christopherfebles.magic.downloader.ValidatorCache;
 import com.christopherfebles.magic.enums.Language;
 import com.christopherfebles.magic.model.MagicCard;
 import com.christopherfebles.magic.model.MagicCardRawData;
+import com.christopherfebles.magic.observer.StreamingGathererExtractor.Row;
 
 /**
  * Receives downloaded raw data from MagicGathererDataDownloader, converts it to a MagicCard object, and saves to the database.<br>
@@ -35,12 +35,17 @@ import com.christopherfebles.magic.model.MagicCardRawData;
 public class MagicGathererDataObserver implements CloneableObserver {
 
     private static final Logger LOG = LoggerFactory.getLogger( MagicGathererDataObserver.class );
-    private static final String GATHERER_ID_DEFAULT_PREFIX = "ctl00_ctl00_ctl00_MainContent_SubContent_SubContent_";
+    private static final String PARSER_STREAMING = "streaming";
+    private static final LanguageNameMatcher LANGUAGE_NAMES = new LanguageNameMatcher();
 
     public static final AtomicInteger NUMBER_OF_DATABASE_WRITES = new AtomicInteger();
 
     private MagicCardDAO cardDAO;
-    private String gathererPrefix;
+    private CardProcessingPipeline pipeline;
+    private boolean streamingParser;
+    private ContentHashCache contentHashCache;
+    private CardDigestCache cardDigestCache;
+    private ValidatorCache validatorCache;
 
     /**
      * Create a new Observer with a given DAO.<br>
@@ -52,18 +57,119 @@ public class MagicGathererDataObserver implements CloneableObserver {
      */
     public MagicGathererDataObserver( MagicCardDAO cardDAO ) {
         this.cardDAO = cardDAO;
+        this.streamingParser = PARSER_STREAMING.equalsIgnoreCase( UpdaterConfiguration.getString( "magic.parser.engine", "dom" ) );
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.contentHashes", true ) ) {
+            this.contentHashCache = ContentHashCache.getSharedInstance();
+        }
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.cardDigests", true ) ) {
+            this.cardDigestCache = CardDigestCache.getSharedInstance();
+        }
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.revalidate", true ) ) {
+            this.validatorCache = ValidatorCache.getSharedInstance();
+        }
+    }
+
+    /**
+     * Create a new Observer which hands cards to the given pipeline, rather than processing them on the downloader's thread.<br>
+     * <br>
+     * The pipeline parses and saves cards with this observer, so settings made on it afterwards, such as its caches, apply to the pipeline too. Clones
+     * share the same pipeline.
+     * 
+     * @param cardDAO
+     *            The DAO to use to save cards to the database.
+     * @param pipeline
+     *            The pipeline which parses and saves downloaded cards, not yet given to any other observer
+     */
+    public MagicGathererDataObserver( MagicCardDAO cardDAO, CardProcessingPipeline pipeline ) {
+        this( cardDAO );
+        this.pipeline = pipeline;
+        pipeline.setProcessor( this );
     }
 
     @Override
     public MagicGathererDataObserver clone() {
-        return new MagicGathererDataObserver( cardDAO );
+        MagicGathererDataObserver clone = new MagicGathererDataObserver( cardDAO );
+        // The pipeline keeps processing cards with this observer, which has the same settings
+        clone.pipeline = pipeline;
+        clone.setStreamingParser( streamingParser );
+        clone.setContentHashCache( contentHashCache );
+        clone.setCardDigestCache( cardDigestCache );
+        clone.setValidatorCache( validatorCache );
+        return clone;
+    }
+
+    /**
+     * If true, card pages are read by a {@link StreamingGathererExtractor} in a single pass over their HTML. Otherwise each page is parsed into a jsoup
+     * Document first. Both produce the same cards.<br>
+     * <br>
+     * Defaults to true if magic.parser.engine is "streaming".
+     * 
+     * @param streamingParser
+     *            True to use the streaming extractor
+     */
+    public void setStreamingParser( boolean streamingParser ) {
+        this.streamingParser = streamingParser;
+    }
+
+    public boolean isStreamingParser() {
+        return streamingParser;
+    }
+
+    /**
+     * Cards whose downloaded content is unchanged since they were last saved, according to the given cache, are neither parsed nor saved.<br>
+     * <br>
+     * Defaults to the shared {@link ContentHashCache} if magic.cache.contentHashes is true.
+     * 
+     * @param contentHashCache
+     *            The cache to check cards against, or null to process every card
+     */
+    public void setContentHashCache( ContentHashCache contentHashCache ) {
+        this.contentHashCache = contentHashCache;
+    }
+
+    public ContentHashCache getContentHashCache() {
+        return contentHashCache;
+    }
+
+    /**
+     * Parsed cards whose fields are all unchanged since they were last written, according to the given cache, are not written again.<br>
+     * <br>
+     * Defaults to the shared {@link CardDigestCache} if magic.cache.cardDigests is true.
+     * 
+     * @param cardDigestCache
+     *            The cache to compare parsed cards with, or null to write every card
+     */
+    public void setCardDigestCache( CardDigestCache cardDigestCache ) {
+        this.cardDigestCache = cardDigestCache;
+    }
+
+    public CardDigestCache getCardDigestCache() {
+        return cardDigestCache;
+    }
+
+    /**
+     * The HTTP validators of a card's pages are only stored in the given cache once the card has been saved, so a card which fails is downloaded in full
+     * again on the next run.<br>
+     * <br>
+     * Defaults to the shared {@link ValidatorCache} if magic.cache.revalidate is true.
+     * 
+     * @param validatorCache
+     *            The cache the downloader holds validators in, or null if it does not revalidate
+     */
+    public void setValidatorCache( ValidatorCache validatorCache ) {
+        this.validatorCache = validatorCache;
+    }
+
+    public ValidatorCache getValidatorCache() {
+        return validatorCache;
     }
 
     @Override
     /**
      * Receive raw data from a currently running downloader and process it.<br>
      * <br>
-     * This method is single-threaded, as opposed to earlier versions which kicked off a separate Thread.
+     * Without a pipeline, data is processed immediately on the downloader's thread. With one, data is queued for the pipeline's threads, and the
+     * downloader's final notification waits until the pipeline has saved every queued card.
      */
     public void update( Observable downloader, Object rawDataObj ) {
         // A null rawDataObj indicates the downloader is 100% complete
@@ -71,9 +177,30 @@ public class MagicGathererDataObserver implements CloneableObserver {
             MagicCardRawData rawData = ( MagicCardRawData ) rawDataObj;
             LOG.trace( "Observer notified of new raw data object with id {} for processing.", rawData.getMultiverseId() );
 
-            // Single-threaded code
-            // Data processed immediately
-            this.processData( rawData );
+            if ( contentHashCache != null && contentHashCache.isUnchanged( rawData ) ) {
+                LOG.debug( "Multiverse ID {} is unchanged since it was last saved. Skipping.", rawData.getMultiverseId() );
+                if ( validatorCache != null ) {
+                    validatorCache.commit( rawData.getMultiverseId() );
+                }
+            } else if ( pipeline == null ) {
+                // Single-threaded code
+                // Data processed immediately
+                this.processData( rawData );
+            } else {
+                try {
+                    pipeline.submit( rawData );
+                } catch ( InterruptedException e ) {
+                    LOG.error( "Interrupted while queueing Multiverse ID {}. It will not be saved.", rawData.getMultiverseId(), e );
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } else if ( pipeline != null ) {
+            try {
+                pipeline.awaitIdle();
+            } catch ( InterruptedException e ) {
+                LOG.error( "Interrupted while waiting for downloaded cards to be saved.", e );
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -84,6 +211,7 @@ public class MagicGathererDataObserver implements CloneableObserver {
      * <li>Manually sets image and language data on the MagicCard object.</li>
      * <li>Updates the MagicCard in the database.</li>
      * </ul>
+     * {@link CardProcessingPipeline} runs the same two steps, {@link #parseCard(MagicCardRawData)} and {@link #saveCard(MagicCard)}, on separate threads.
      * 
      * @see #parseGathererData(String, int)
      * 
@@ -92,57 +220,128 @@ public class MagicGathererDataObserver implements CloneableObserver {
      */
     private void processData( MagicCardRawData rawData ) {
 
-        String dataStr = new String( rawData.getDataByteArray(), StandardCharsets.UTF_8 );
-        MagicCard newCard = this.parseGathererData( dataStr, rawData.getMultiverseId() );
+        MagicCard newCard = this.parseCard( rawData );
+        if ( newCard != null ) {
+            this.saveCard( newCard );
+        }
+    }
+
+    /**
+     * Convert the given raw data to a MagicCard, with its image and language set.
+     * 
+     * @param rawData
+     *            The raw data created by MagicGathererDataDownloader
+     * @return The parsed card, or null if no card is assigned to its multiverse ID
+     */
+    MagicCard parseCard( MagicCardRawData rawData ) {
+
+        MagicCard newCard = this.parseGathererData( rawData.getDataByteArray(), rawData.getMultiverseId() );
 
         if ( newCard != null ) {
             LOG.debug( "Setting cardImageArray for MagicCard {}, with ID {}.", newCard.getName(), newCard.getMultiverseId() );
             newCard.setCardImageArray( rawData.getImageByteArray() );
 
             // Determine language of this card
-            String langStr = new String( rawData.getLanguageByteArray(), StandardCharsets.UTF_8 );
-            Language cardLang = this.parseLanguagePage( langStr, newCard );
+            Language cardLang = this.parseLanguagePage( rawData.getLanguageByteArray(), newCard );
             LOG.debug( "Setting language for MagicCard {}, with ID {} to {}", newCard.getName(), newCard.getMultiverseId(), cardLang );
             newCard.setLanguage( cardLang );
-
-            // Update card stored in database
-            LOG.debug( "Saving MagicCard {}, with ID {} to database.", newCard.getName(), newCard.getMultiverseId() );
-            boolean success = cardDAO.addCardToDatabase( newCard );
-            if ( !success ) {
-                LOG.error( "Error saving MagicCard {} with ID {} to database.", newCard.getName(), newCard.getMultiverseId() );
-            }
-            LOG.trace( "Save of MagicCard {}, with ID {} to database successful. This object has updated the database {} times.", newCard.getName(),
-                    newCard.getMultiverseId(), NUMBER_OF_DATABASE_WRITES.incrementAndGet() );
         } else {
             // No card assigned to this id
             LOG.debug( "No card assigned to Multiverse ID: {}", rawData.getMultiverseId() );
+            if ( contentHashCache != null ) {
+                contentHashCache.commit( rawData.getMultiverseId() );
+            }
+            if ( validatorCache != null ) {
+                // Empty IDs keep no validators, so their data page is always checked again in full
+                validatorCache.forget( rawData.getMultiverseId() );
+            }
+        }
+        return newCard;
+    }
+
+    /**
+     * Update the given card in the database, unless its fields are the same as when it was last written.
+     * 
+     * @param newCard
+     *            A card returned by {@link #parseCard(MagicCardRawData)}
+     */
+    void saveCard( MagicCard newCard ) {
+
+        if ( this.needsWrite( newCard ) ) {
+            LOG.debug( "Saving MagicCard {}, with ID {} to database.", newCard.getName(), newCard.getMultiverseId() );
+            this.cardWritten( newCard, cardDAO.addCardToDatabase( newCard ) );
+        }
+    }
+
+    /**
+     * Check whether a parsed card has changed since it was last written. If not, it is recorded as saved.
+     * 
+     * @param newCard
+     *            A card returned by {@link #parseCard(MagicCardRawData)}
+     * @return True if the card should be written to the database
+     */
+    boolean needsWrite( MagicCard newCard ) {
+
+        if ( cardDigestCache != null && cardDigestCache.compare( newCard ) == CardDigestCache.Change.NONE ) {
+            LOG.debug( "MagicCard {}, with ID {} is unchanged in the database. Skipping write.", newCard.getName(), newCard.getMultiverseId() );
+            this.commitCaches( newCard.getMultiverseId() );
+            return false;
         }
+        return true;
     }
 
     /**
-     * Processes the Languages page of a card from Gatherer.
+     * Record the result of writing a card to the database.
+     * 
+     * @param newCard
+     *            A card for which {@link #needsWrite(MagicCard)} returned true
+     * @param success
+     *            True if the card was saved
+     */
+    void cardWritten( MagicCard newCard, boolean success ) {
+
+        if ( !success ) {
+            LOG.error( "Error saving MagicCard {} with ID {} to database.", newCard.getName(), newCard.getMultiverseId() );
+        } else {
+            if ( cardDigestCache != null ) {
+                cardDigestCache.update( newCard );
+            }
+            this.commitCaches( newCard.getMultiverseId() );
+        }
+        LOG.trace( "Save of MagicCard {}, with ID {} to database successful. This object has updated the database {} times.", newCard.getName(),
+                newCard.getMultiverseId(), NUMBER_OF_DATABASE_WRITES.incrementAndGet() );
+    }
+
+    /**
+     * Store the content hash and HTTP validators held for a card, once it is in the database.
+     */
+    private void commitCaches( int multiverseId ) {
+        if ( contentHashCache != null ) {
+            contentHashCache.commit( multiverseId );
+        }
+        if ( validatorCache != null ) {
+            validatorCache.commit( multiverseId );
+        }
+    }
+
+    /**
+     * Processes the Languages page of a card from Gatherer, without decoding it to a String.
      * 
      * @param languagePage
-     *            The raw HTML of the language page from Gatherer
+     *            The UTF-8 bytes of the language page from Gatherer
      * @param card
      *            The card for which we're determining a language
      * @return The language of the card, or {@link Language#UNKNOWN_NON_ENGLISH} if it is indeterminate.
      */
-    private Language parseLanguagePage( String languagePage, MagicCard card ) {
+    private Language parseLanguagePage( byte[] languagePage, MagicCard card ) {
 
         Language retVal = Language.ENGLISH;
-        List<Language> languageList = new ArrayList<>( Arrays.asList( Language.values() ) );
+        // Whichever language is NOT present is the language of this card
+        EnumSet<Language> languageList = EnumSet.complementOf( LANGUAGE_NAMES.findLanguages( languagePage ) );
         languageList.remove( Language.UNKNOWN_NON_ENGLISH );
 
-        for ( Language language : Language.values() ) {
-            // Whichever language is NOT present is the language of this card
-            if ( languagePage.contains( language.toString() ) ) {
-                languageList.remove( language );
-            }
-        }
-
         if ( languageList.size() == 1 ) {
-            retVal = languageList.get( 0 );
+            retVal = languageList.iterator().next();
         } else {
             LOG.error( "Ambiguous languages ({}) for card {} with id {}.", languageList, card.getName(), card.getMultiverseId() );
             if ( languageList.contains( Language.ENGLISH ) ) {
@@ -156,105 +355,27 @@ public class MagicGathererDataObserver implements CloneableObserver {
         return retVal;
     }
 
-    /**
-     * Convert the given color string into a single character color string.<br>
-     * <br>
-     * For example, "Black" becomes "B", and "Black or White" becomes "B/W"
-     * 
-     * @param colorStr
-     *            The color string to parse
-     * @return The parsed color, or colorStr if a processing error occurs.
-     */
-    private String parseCardColor( String colorStr ) {
-
-        String localColorStr = colorStr;
-        Map<String, Integer> numberMap = new HashMap<>();
-        numberMap.put( "ONE", 1 );
-        numberMap.put( "TWO", 2 );
-        numberMap.put( "THREE", 3 );
-        numberMap.put( "FOUR", 4 );
-        numberMap.put( "FIVE", 5 );
-        numberMap.put( "SIX", 6 );
-        numberMap.put( "SEVEN", 7 );
-        numberMap.put( "EIGHT", 8 );
-        numberMap.put( "NINE", 9 );
-        numberMap.put( "TEN", 10 );
-
-        String retVal = "";
-        localColorStr = localColorStr.toUpperCase();
-        localColorStr = localColorStr.trim().replace( " ", "_" );
-
-        String[] colorAr = null;
-        boolean isPhyrexian = false;
-
-        if ( localColorStr.contains( "PHYREXIAN_" ) ) {
-            colorAr = localColorStr.split( "PHYREXIAN_" );
-            isPhyrexian = true;
-        } else {
-            colorAr = localColorStr.split( "_OR_" );
-        }
-
-        for ( String oneColor : colorAr ) {
-            if ( StringUtils.isEmpty( oneColor ) ) {
-                continue;
-            }
-            if ( Color.contains( oneColor ) ) {
-                Color color = Color.valueOf( oneColor );
-                retVal += color.getValue();
-                if ( isPhyrexian ) {
-                    retVal += "P";
-                }
-            } else {
-                if ( numberMap.containsKey( oneColor ) ) {
-                    retVal += numberMap.get( oneColor );
-                } else {
-                    retVal += oneColor;
-                    // Check for integer here (it should be colorless)
-                    if ( !StringUtils.isNumeric( oneColor ) ) {
-                        LOG.error( "Unable to load Color {}", oneColor );
-                    }
-                }
-            }
-
-            retVal += "/";
-        }
-        retVal = retVal.substring( 0, retVal.length() - 1 );
-
-        return retVal;
-    }
-
     /**
      * Get the name of the Magic card from the given Gatherer document
      * 
-     * @param gathererDocument
-     *            The HTML Gatherer page being parsed
+     * @param gathererRows
+     *            The rows of the HTML Gatherer page being parsed
      * @param multiverseId
      *            The ID of the Magic card being parsed
      * @return The name of the Magic card being parsed, or null if an error occurs
      */
-    private String getName( Document gathererDocument, int multiverseId ) {
+    private String getName( GathererElementIndex gathererRows, int multiverseId ) {
 
-        String prefix = GATHERER_ID_DEFAULT_PREFIX;
-
-        Element nameRow = gathererDocument.select( "[id=" + prefix + "nameRow]" ).first();
-        if ( nameRow == null ) {
-            for ( int x = 0; x < 10 && nameRow == null; x++ ) {
-                prefix = GATHERER_ID_DEFAULT_PREFIX + "ctl0" + x + "_";
-                nameRow = gathererDocument.select( "[id=" + prefix + "nameRow]" ).first();
-            }
-            if ( nameRow == null ) {
-                // The given multiverseId doesn't have a card assigned.
-                LOG.debug( "Unable to find nameRow for Multiverse ID: {}", multiverseId );
-                return null;
-            } else {
-                // This is a weird kind of card with two values per ID
-                LOG.error( "Multiverse ID {} has more than one card assigned to it. Loading the first value.", multiverseId );
-            }
+        if ( !gathererRows.hasCard() ) {
+            // The given multiverseId doesn't have a card assigned.
+            LOG.debug( "Unable to find nameRow for Multiverse ID: {}", multiverseId );
+            return null;
         }
-        Element cardNameDiv = nameRow.select( "div.value" ).first();
-
-        // This method has a side-effect of determining the correct prefix to use
-        gathererPrefix = prefix;
+        if ( gathererRows.hasMultipleCards() ) {
+            // This is a weird kind of card with two values per ID
+            LOG.error( "Multiverse ID {} has more than one card assigned to it. Loading the first value.", multiverseId );
+        }
+        Element cardNameDiv = gathererRows.getRow( "nameRow" ).select( "div.value" ).first();
 
         return cardNameDiv.text();
     }
@@ -262,31 +383,28 @@ public class MagicGathererDataObserver implements CloneableObserver {
     /**
      * Get the cost of the Magic card from the given Gatherer document
      * 
-     * @param gathererDocument
-     *            The HTML Gatherer page being parsed
+     * @param gathererRows
+     *            The rows of the HTML Gatherer page being parsed
      * @param multiverseId
      *            The ID of the Magic card being parsed
      * @return The string value of the Mana cost of this card, or null if none exists (such as for lands)
      */
-    private String getManaCost( Document gathererDocument, int multiverseId ) {
+    private String getManaCost( GathererElementIndex gathererRows, int multiverseId ) {
 
         String manaCost = null;
 
-        Element manaRow = gathererDocument.select( "[id=" + gathererPrefix + "manaRow]" ).first();
+        Element manaRow = gathererRows.getRow( "manaRow" );
         // Mana cost is optional (for example, for lands)
         if ( manaRow != null ) {
             Element manaDiv = manaRow.select( "div.value" ).first();
             Elements manaImgs = manaDiv.select( "img" );
-            manaCost = "";
+            List<String> manaSymbols = new ArrayList<>( manaImgs.size() );
             Iterator<Element> iterator = manaImgs.iterator();
             while ( iterator.hasNext() ) {
                 Element manaImg = iterator.next();
-                String color = manaImg.attr( "alt" );
-                String colorStr = this.parseCardColor( color );
-                manaCost += colorStr + ";";
+                manaSymbols.add( manaImg.attr( "alt" ) );
             }
-            // Remove trailing semicolons
-            manaCost = manaCost.substring( 0, manaCost.length() - 1 );
+            manaCost = GathererSymbolTable.decodeManaCost( manaSymbols );
         }
         return manaCost;
     }
@@ -294,17 +412,17 @@ public class MagicGathererDataObserver implements CloneableObserver {
     /**
      * Get the text of the Magic card from the given Gatherer document
      * 
-     * @param gathererDocument
-     *            The HTML Gatherer page being parsed
+     * @param gathererRows
+     *            The rows of the HTML Gatherer page being parsed
      * @param multiverseId
      *            The ID of the Magic card being parsed
      * @return The text of this card, or null if none exists (such as for lands)
      */
-    private String getCardText( Document gathererDocument, int multiverseId ) {
+    private String getCardText( GathererElementIndex gathererRows, int multiverseId ) {
 
         String cardText = null;
 
-        Element textRow = gathererDocument.select( "[id=" + gathererPrefix + "textRow]" ).first();
+        Element textRow = gathererRows.getRow( "textRow" );
         // Text is optional
         if ( textRow != null ) {
             Element cardTextDiv = textRow.select( "div.value" ).first();
@@ -313,23 +431,7 @@ public class MagicGathererDataObserver implements CloneableObserver {
                 Iterator<Element> imgIterator = cardTextImgs.iterator();
                 while ( imgIterator.hasNext() ) {
                     Element img = imgIterator.next();
-                    String alt = img.attr( "alt" );
-
-                    if ( alt.equalsIgnoreCase( "tap" ) ) {
-                        img.text( "{T}" );
-                    } else {
-                        if ( StringUtils.isNumeric( alt.trim() ) ) {
-                            // Colorless (numeric)
-                            img.text( "{" + alt + "}" );
-                        } else {
-                            // alt is a String
-                            String altColor = this.parseCardColor( alt );
-                            if ( altColor.equalsIgnoreCase( alt ) ) {
-                                LOG.error( "Unexpected image in card text with alt: {} for card with id {}", alt, multiverseId );
-                            }
-                            img.text( "{" + altColor + "}" );
-                        }
-                    }
+                    img.text( GathererSymbolTable.decodeTextSymbol( img.attr( "alt" ), multiverseId ) );
                 }
             }
             cardText = cardTextDiv.text();
@@ -342,28 +444,28 @@ public class MagicGathererDataObserver implements CloneableObserver {
     /**
      * Get the flavor text of the Magic card from the given Gatherer document
      * 
-     * @param gathererDocument
-     *            The HTML Gatherer page being parsed
+     * @param gathererRows
+     *            The rows of the HTML Gatherer page being parsed
      * @param multiverseId
      *            The ID of the Magic card being parsed
      * @return The flavor text of this card, or null of none exists
      */
-    private String getFlavorText( Document gathererDocument, int multiverseId ) {
+    private String getFlavorText( GathererElementIndex gathererRows, int multiverseId ) {
 
         String flavorText = null;
 
-        Element flavorRow = gathererDocument.select( "[id=" + gathererPrefix + "FlavorText]" ).first();
+        Element flavorRow = gathererRows.getRow( "FlavorText" );
         // Flavor Text is optional
         if ( flavorRow != null ) {
             Elements flavorTextDiv = flavorRow.select( "div.cardtextbox" );
             // Loop through child divs and insert line breaks
             Iterator<Element> childDivs = flavorTextDiv.iterator();
-            flavorText = "";
+            StringBuilder flavorTextBuilder = new StringBuilder();
             while ( childDivs.hasNext() ) {
                 Element childDiv = childDivs.next();
-                flavorText += childDiv.text() + "\n";
+                flavorTextBuilder.append( childDiv.text() ).append( '\n' );
             }
-            flavorText = flavorText.trim();
+            flavorText = flavorTextBuilder.toString().trim();
         }
 
         return flavorText;
@@ -372,45 +474,78 @@ public class MagicGathererDataObserver implements CloneableObserver {
     /**
      * Set the power/toughness of the Magic card from the given Gatherer document, if it exists
      * 
-     * @param gathererDocument
-     *            The HTML Gatherer page being parsed
+     * @param gathererRows
+     *            The rows of the HTML Gatherer page being parsed
      * @param card
      *            The MagicCard to assign power/toughness to
      */
-    private void setPowerAndToughness( Document gathererDocument, MagicCard card ) {
+    private void setPowerAndToughness( GathererElementIndex gathererRows, MagicCard card ) {
 
-        Element ptRow = gathererDocument.select( "[id=" + gathererPrefix + "ptRow]" ).first();
+        Element ptRow = gathererRows.getRow( "ptRow" );
         // Power/Toughness is optional
         if ( ptRow != null ) {
             Element ptValueDiv = ptRow.select( "div.value" ).first();
-            String ptValueStr = ptValueDiv.text();
-            ptValueStr = ptValueStr.replace( "{1/2}", "½" );
-            ptValueStr = ptValueStr.replace( "{^2}", "²" );
-
-            if ( ptValueStr.contains( "/" ) ) {
-                String[] ptValueAr = ptValueStr.split( "/" );
-                card.setPower( ptValueAr[0].trim() );
-                card.setToughness( ptValueAr[1].trim() );
-            } else {
-                // Handle Vanguard
-                String[] ptValueAr = ptValueStr.split( "," );
-                // Replace non-breaking space with a normal space (regex)
-                String power = ptValueAr[0].replaceAll( "\\u00A0", " " ).trim();
-                // Get last character of Power String
-                card.setPower( String.valueOf( power.toCharArray()[power.length() - 1] ) );
-
-                if ( ptValueAr.length > 1 ) {
-                    // Replace non-breaking space with a normal space (regex)
-                    String toughness = ptValueAr[1].replaceAll( "\\u00A0", " " ).trim();
-                    // Get second to last character of Toughness String
-                    card.setToughness( String.valueOf( toughness.toCharArray()[toughness.length() - 2] ) );
-                }
+            this.setPowerAndToughness( ptValueDiv.text(), card );
+        }
+    }
+
+    /**
+     * Set the power/toughness of the Magic card from the text of its P/T row
+     * 
+     * @param ptText
+     *            The text of the P/T row's value
+     * @param card
+     *            The MagicCard to assign power/toughness to
+     */
+    private void setPowerAndToughness( String ptText, MagicCard card ) {
+
+        // StringUtils.replace does not compile a Pattern, and returns ptText itself when there is nothing to replace
+        String ptValueStr = ptText;
+        ptValueStr = StringUtils.replace( ptValueStr, "{1/2}", "½" );
+        ptValueStr = StringUtils.replace( ptValueStr, "{^2}", "²" );
+
+        if ( ptValueStr.contains( "/" ) ) {
+            String[] ptValueAr = ptValueStr.split( "/" );
+            card.setPower( ptValueAr[0].trim() );
+            card.setToughness( ptValueAr[1].trim() );
+        } else {
+            // Handle Vanguard
+            String[] ptValueAr = ptValueStr.split( "," );
+            // Replace non-breaking space with a normal space
+            String power = ptValueAr[0].replace( '\u00A0', ' ' ).trim();
+            // Get last character of Power String
+            card.setPower( String.valueOf( power.charAt( power.length() - 1 ) ) );
+
+            if ( ptValueAr.length > 1 ) {
+                // Replace non-breaking space with a normal space
+                String toughness = ptValueAr[1].replace( '\u00A0', ' ' ).trim();
+                // Get second to last character of Toughness String
+                card.setToughness( String.valueOf( toughness.charAt( toughness.length() - 2 ) ) );
             }
         }
     }
 
     /**
-     * Load card data for the given multiverseId into a MagicCard object
+     * Load card data for the given multiverseId into a MagicCard object from the page as it was downloaded.<br>
+     * <br>
+     * The streaming parser reads the bytes directly. Only the DOM parser needs the page decoded to a String first.
+     * 
+     * @param gathererHtmlPage
+     *            The UTF-8 bytes of the Gatherer page
+     * @param multiverseId
+     *            The ID used to load the source
+     * @return A fully populated MagicCard, or null if no card data exists
+     */
+    private MagicCard parseGathererData( byte[] gathererHtmlPage, int multiverseId ) {
+
+        if ( streamingParser ) {
+            return this.parseGathererDataStreaming( new StreamingGathererExtractor( multiverseId ).extract( gathererHtmlPage ), multiverseId );
+        }
+        return this.parseGathererData( new String( gathererHtmlPage, StandardCharsets.UTF_8 ), multiverseId );
+    }
+
+    /**
+     * Load card data for the given multiverseId into a MagicCard object with the DOM parser
      * 
      * @param gathererHtmlPage
      *            The HTML source of the Gatherer page
@@ -425,9 +560,11 @@ public class MagicGathererDataObserver implements CloneableObserver {
         newCard.setMultiverseId( multiverseId );
 
         Document gathererDocument = Jsoup.parse( gathererHtmlPage );
+        // Find every row in one pass, rather than searching the whole document for each
+        GathererElementIndex gathererRows = new GathererElementIndex( gathererDocument );
 
         // Handle name
-        String cardName = this.getName( gathererDocument, multiverseId );
+        String cardName = this.getName( gathererRows, multiverseId );
         if ( cardName == null ) {
             // There was an error parsing this card's data
             return null;
@@ -435,7 +572,7 @@ public class MagicGathererDataObserver implements CloneableObserver {
         newCard.setName( cardName );
 
         // Mana Row
-        String manaCost = this.getManaCost( gathererDocument, multiverseId );
+        String manaCost = this.getManaCost( gathererRows, multiverseId );
         if ( manaCost != null ) {
             newCard.setManaCostWithString( manaCost );
         }
@@ -443,39 +580,39 @@ public class MagicGathererDataObserver implements CloneableObserver {
         // Skip Converted mana cost, since it's calculated
 
         // Card Types
-        Element typeRow = gathererDocument.select( "[id=" + gathererPrefix + "typeRow]" ).first();
+        Element typeRow = gathererRows.getRow( "typeRow" );
         Element cardTypeDiv = typeRow.select( "div.value" ).first();
         newCard.setTypes( cardTypeDiv.text() );
 
         // Card text
-        String cardText = this.getCardText( gathererDocument, multiverseId );
+        String cardText = this.getCardText( gathererRows, multiverseId );
         if ( cardText != null ) {
             newCard.setText( cardText );
         }
 
         // Flavor text
-        String flavorText = this.getFlavorText( gathererDocument, multiverseId );
+        String flavorText = this.getFlavorText( gathererRows, multiverseId );
         if ( flavorText != null ) {
             newCard.setFlavorText( flavorText );
         }
 
         // Power/Toughness
-        this.setPowerAndToughness( gathererDocument, newCard );
+        this.setPowerAndToughness( gathererRows, newCard );
 
         // Expansion
-        Element expansionRow = gathererDocument.select( "[id=" + gathererPrefix + "currentSetSymbol]" ).first();
+        Element expansionRow = gathererRows.getRow( "currentSetSymbol" );
         Element expansionHref = expansionRow.select( "a" ).last();
         newCard.setExpansion( expansionHref.text() );
 
         // Rarity
-        Element rarityRow = gathererDocument.select( "[id=" + gathererPrefix + "rarityRow]" ).first();
+        Element rarityRow = gathererRows.getRow( "rarityRow" );
         Element raritySpan = rarityRow.select( "div.value" ).first().select( "span" ).first();
         if ( raritySpan != null ) {
             newCard.setRarity( raritySpan.text() );
         }
 
         // Card Number
-        Element numberRow = gathererDocument.select( "[id=" + gathererPrefix + "numberRow]" ).first();
+        Element numberRow = gathererRows.getRow( "numberRow" );
         // Card Number is optional
         if ( numberRow != null ) {
             Element numberDiv = numberRow.select( "div.value" ).first();
@@ -483,7 +620,7 @@ public class MagicGathererDataObserver implements CloneableObserver {
         }
 
         // Artist
-        Element artistRow = gathererDocument.select( "[id=" + gathererPrefix + "artistRow]" ).first();
+        Element artistRow = gathererRows.getRow( "artistRow" );
         Element artistHref = artistRow.select( "div.value" ).first().select( "a" ).first();
         if ( artistHref != null ) {
             newCard.setArtist( artistHref.text() );
@@ -493,7 +630,7 @@ public class MagicGathererDataObserver implements CloneableObserver {
         }
 
         // Watermark
-        Element markRow = gathererDocument.select( "[id=" + gathererPrefix + "markRow]" ).first();
+        Element markRow = gathererRows.getRow( "markRow" );
         // Watermark is optional
         if ( markRow != null ) {
             Element markDiv = markRow.select( "div.value" ).first();
@@ -502,4 +639,78 @@ public class MagicGathererDataObserver implements CloneableObserver {
 
         return newCard;
     }
+
+    /**
+     * Load card data for the given multiverseId into a MagicCard object from the fields a {@link StreamingGathererExtractor} read from its page, rather
+     * than from a jsoup Document.<br>
+     * <br>
+     * The fields read, and the way their text is converted, are the same as {@link #parseGathererData(String, int)}.
+     * 
+     * @param fields
+     *            The fields extracted from the Gatherer page
+     * @param multiverseId
+     *            The ID used to load the source
+     * @return A fully populated MagicCard, or null if no card data exists
+     */
+    private MagicCard parseGathererDataStreaming( CardPageFields fields, int multiverseId ) {
+
+        LOG.trace( "Converting streamed card data into MagicCard object for MultiverseId {}.", multiverseId );
+
+        if ( !fields.hasRow( Row.NAME ) ) {
+            // The given multiverseId doesn't have a card assigned.
+            LOG.debug( "Unable to find nameRow for Multiverse ID: {}", multiverseId );
+            return null;
+        }
+        if ( fields.hasMultipleCards() ) {
+            // This is a weird kind of card with two values per ID
+            LOG.error( "Multiverse ID {} has more than one card assigned to it. Loading the first value.", multiverseId );
+        }
+        // The same pages the DOM parser fails on
+        for ( Row requiredRow : new Row[] { Row.TYPE, Row.EXPANSION, Row.RARITY, Row.ARTIST } ) {
+            if ( !fields.hasRow( requiredRow ) ) {
+                throw new IllegalStateException( "Multiverse ID " + multiverseId + " has no " + requiredRow.getIdSuffix() + "." );
+            }
+        }
+        if ( fields.getMissingElement() != null ) {
+            throw new IllegalStateException( "Multiverse ID " + multiverseId + " has an incomplete " + fields.getMissingElement().getIdSuffix() + "." );
+        }
+
+        MagicCard newCard = new MagicCard();
+        newCard.setMultiverseId( multiverseId );
+        newCard.setName( fields.getField( Row.NAME ) );
+
+        if ( fields.getManaSymbols() != null ) {
+            newCard.setManaCostWithString( GathererSymbolTable.decodeManaCost( fields.getManaSymbols() ) );
+        }
+
+        newCard.setTypes( fields.getField( Row.TYPE ) );
+
+        if ( fields.getField( Row.TEXT ) != null ) {
+            LOG.trace( "Setting card text for card with ID {} to: {}", multiverseId, fields.getField( Row.TEXT ) );
+            newCard.setText( fields.getField( Row.TEXT ) );
+        }
+        if ( fields.getField( Row.FLAVOR ) != null ) {
+            newCard.setFlavorText( fields.getField( Row.FLAVOR ) );
+        }
+        if ( fields.getField( Row.POWER_TOUGHNESS ) != null ) {
+            this.setPowerAndToughness( fields.getField( Row.POWER_TOUGHNESS ), newCard );
+        }
+
+        newCard.setExpansion( fields.getField( Row.EXPANSION ) );
+
+        if ( fields.getField( Row.RARITY ) != null ) {
+            newCard.setRarity( fields.getField( Row.RARITY ) );
+        }
+        if ( fields.getField( Row.NUMBER ) != null ) {
+            newCard.setNumber( fields.getField( Row.NUMBER ) );
+        }
+
+        newCard.setArtist( fields.getField( Row.ARTIST ) );
+
+        if ( fields.getField( Row.WATERMARK ) != null ) {
+            newCard.setWatermark( fields.getField( Row.WATERMARK ) );
+        }
+
+        return newCard;
+    }
 }
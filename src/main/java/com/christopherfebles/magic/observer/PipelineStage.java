@@ -0,0 +1,137 @@
+package com.christopherfebles.magic.observer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.downloader.MagicCardThreadLoggingExceptionHandler;
+
+/**
+ * One stage of a {@link CardProcessingPipeline}: a fixed number of threads draining a bounded queue of tasks.<br>
+ * <br>
+ * {@link #submit(Runnable)} blocks while the queue is full, so a slow stage holds back the stage feeding it instead of buffering without limit. Threads are
+ * daemons, and exit after sitting idle for a while.
+ * 
+ * @author Christopher Febles
+ *
+ */
+class PipelineStage {
+
+    private static final Logger LOG = LoggerFactory.getLogger( PipelineStage.class );
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final String name;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    // One permit per task which may be queued or running at once. This bounds the executor's queue, which is not bounded itself, because a permit is
+    // released slightly before its thread is ready to take the next task.
+    private final Semaphore capacity;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong blockedSubmissions = new AtomicLong();
+    private final AtomicLong blockedNanoseconds = new AtomicLong();
+
+    /**
+     * @param name
+     *            The stage's name, used for its thread names and statistics
+     * @param threads
+     *            The number of tasks run at once
+     * @param queueCapacity
+     *            The number of tasks which may wait for a thread before submissions block
+     */
+    PipelineStage( final String name, int threads, int queueCapacity ) {
+        this.name = name;
+        this.threads = Math.max( 1, threads );
+        int queueSize = Math.max( 1, queueCapacity );
+        this.capacity = new Semaphore( this.threads + queueSize );
+        this.executor = new ThreadPoolExecutor( this.threads, this.threads, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread( Runnable r ) {
+                        Thread newThread = new Thread( r, "CP_" + name + "_" + THREAD_COUNTER.incrementAndGet() );
+                        newThread.setUncaughtExceptionHandler( new MagicCardThreadLoggingExceptionHandler( LOG ) );
+                        newThread.setDaemon( true );
+                        return newThread;
+                    }
+                } );
+        this.executor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Queue a task, waiting for room in the queue if it is full.
+     * 
+     * @param task
+     *            The task to run on one of this stage's threads
+     * @throws InterruptedException
+     *             If interrupted while waiting for room
+     */
+    void submit( final Runnable task ) throws InterruptedException {
+
+        if ( !capacity.tryAcquire() ) {
+            long start = System.nanoTime();
+            capacity.acquire();
+            blockedSubmissions.incrementAndGet();
+            blockedNanoseconds.addAndGet( System.nanoTime() - start );
+        }
+
+        executor.execute( new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    completedTasks.incrementAndGet();
+                    capacity.release();
+                }
+            }
+        } );
+
+        int depth = executor.getQueue().size();
+        int max = maxQueueDepth.get();
+        while ( depth > max && !maxQueueDepth.compareAndSet( max, depth ) ) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting for a thread
+     */
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The largest number of tasks seen waiting for a thread at once
+     */
+    int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of tasks finished, successfully or not
+     */
+    long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    /**
+     * Summarize stage activity for logging.
+     * 
+     * @return A human-readable description of this stage
+     */
+    String getStatistics() {
+        return String.format( "%s: %d threads, %d done, queue depth %d (max %d), %d submissions waited %dms for room", name, threads, completedTasks.get(),
+                this.getQueueDepth(), maxQueueDepth.get(), blockedSubmissions.get(), TimeUnit.NANOSECONDS.toMillis( blockedNanoseconds.get() ) );
+    }
+}
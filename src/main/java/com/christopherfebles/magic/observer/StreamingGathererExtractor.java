@@ -0,0 +1,420 @@
+package com.christopherfebles.magic.observer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Tag;
+
+/**
+ * Collects the fields of a Gatherer card page in one forward pass over its HTML, without building a jsoup Document.<br>
+ * <br>
+ * Only the rows MagicGathererDataObserver reads are followed. While inside one, the text of the elements it reads is accumulated the same way jsoup's
+ * Element.text() would: whitespace collapsed, and a space inserted before block elements and line breaks. The rows of every card prefix on the page are
+ * collected, and the prefix is chosen once the page is finished, as {@link GathererElementIndex} does.
+ * 
+ * @author Christopher Febles
+ *
+ */
+class StreamingGathererExtractor extends HtmlEventScanner {
+
+    // The unprefixed card, then ctl00_ through ctl09_
+    private static final int PREFIXES = 11;
+    private static final String MULTIPLE_CARD_PREFIX = "ctl0";
+    private static final int MULTIPLE_CARD_PREFIX_LENGTH = MULTIPLE_CARD_PREFIX.length() + 2;
+
+    private final int multiverseId;
+    private final CardPageFields[] cards = new CardPageFields[PREFIXES];
+    private final List<RowCapture> activeRows = new ArrayList<>();
+
+    /**
+     * @param multiverseId
+     *            The ID of the card being parsed, for logging
+     */
+    StreamingGathererExtractor( int multiverseId ) {
+        this.multiverseId = multiverseId;
+    }
+
+    /**
+     * Scan a Gatherer card page.
+     * 
+     * @param gathererHtmlPage
+     *            The page's HTML
+     * @return The fields of the first card on the page. Its name is null if the page has no card.
+     */
+    CardPageFields extract( String gathererHtmlPage ) {
+        return this.extract( gathererHtmlPage.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Scan a Gatherer card page, as downloaded.
+     * 
+     * @param gathererHtmlPage
+     *            The UTF-8 bytes of the page's HTML
+     * @return The fields of the first card on the page. Its name is null if the page has no card.
+     */
+    CardPageFields extract( byte[] gathererHtmlPage ) {
+
+        this.scan( gathererHtmlPage );
+
+        // Rows left open at the end of the page are closed by it
+        for ( RowCapture row : activeRows ) {
+            row.finish();
+        }
+        activeRows.clear();
+
+        for ( int x = 0; x < PREFIXES; x++ ) {
+            if ( cards[x] != null && cards[x].hasRow( Row.NAME ) ) {
+                cards[x].setMultipleCards( x > 0 );
+                return cards[x];
+            }
+        }
+        return new CardPageFields();
+    }
+
+    @Override
+    protected boolean wantsText() {
+        return !activeRows.isEmpty();
+    }
+
+    @Override
+    protected void startTag( String tagName, boolean isVoid ) {
+
+        if ( !activeRows.isEmpty() ) {
+            boolean isBlock = Tag.valueOf( tagName ).isBlock();
+            String classNames = this.attribute( "class" );
+            String alt = "img".equals( tagName ) ? this.attribute( "alt" ) : null;
+            Iterator<RowCapture> iterator = activeRows.iterator();
+            while ( iterator.hasNext() ) {
+                RowCapture row = iterator.next();
+                row.startTag( tagName, isVoid, isBlock, classNames, alt );
+            }
+        }
+
+        String id = this.attribute( "id" );
+        if ( id != null && id.startsWith( GathererElementIndex.GATHERER_ID_DEFAULT_PREFIX ) ) {
+            this.startRow( tagName, id.substring( GathererElementIndex.GATHERER_ID_DEFAULT_PREFIX.length() ), isVoid );
+        }
+    }
+
+    @Override
+    protected void endTag( String tagName ) {
+        Iterator<RowCapture> iterator = activeRows.iterator();
+        while ( iterator.hasNext() ) {
+            RowCapture row = iterator.next();
+            if ( row.endTag( tagName ) ) {
+                row.finish();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    protected void text( String text ) {
+        for ( RowCapture row : activeRows ) {
+            row.text( text );
+        }
+    }
+
+    /**
+     * Start following an element whose ID has the Gatherer prefix, if it is a row the observer reads.
+     */
+    private void startRow( String tagName, String idSuffix, boolean isVoid ) {
+
+        int card = 0;
+        String rowName = idSuffix;
+        if ( idSuffix.startsWith( MULTIPLE_CARD_PREFIX ) && idSuffix.length() > MULTIPLE_CARD_PREFIX_LENGTH
+                && Character.isDigit( idSuffix.charAt( MULTIPLE_CARD_PREFIX.length() ) )
+                && idSuffix.charAt( MULTIPLE_CARD_PREFIX_LENGTH - 1 ) == '_' ) {
+            card = idSuffix.charAt( MULTIPLE_CARD_PREFIX.length() ) - '0' + 1;
+            rowName = idSuffix.substring( MULTIPLE_CARD_PREFIX_LENGTH );
+        }
+
+        Row row = Row.forId( rowName );
+        if ( row == null ) {
+            return;
+        }
+        if ( cards[card] == null ) {
+            cards[card] = new CardPageFields();
+        }
+        CardPageFields fields = cards[card];
+        if ( fields.hasRow( row ) ) {
+            // Only the first element with an ID counts, as with select( "[id=...]" ).first()
+            return;
+        }
+        fields.setRowFound( row );
+
+        RowCapture capture = new RowCapture( row, fields, tagName, multiverseId );
+        if ( isVoid ) {
+            capture.finish();
+        } else {
+            activeRows.add( capture );
+        }
+    }
+
+    /**
+     * The rows read from a card page, by the suffix of their IDs.
+     */
+    enum Row {
+        NAME( "nameRow" ), MANA( "manaRow" ), TYPE( "typeRow" ), TEXT( "textRow" ), FLAVOR( "FlavorText" ), POWER_TOUGHNESS( "ptRow" ), EXPANSION(
+                "currentSetSymbol" ), RARITY( "rarityRow" ), NUMBER( "numberRow" ), ARTIST( "artistRow" ), WATERMARK( "markRow" );
+
+        private final String idSuffix;
+
+        private Row( String idSuffix ) {
+            this.idSuffix = idSuffix;
+        }
+
+        /**
+         * @return The row's ID without its prefix
+         */
+        String getIdSuffix() {
+            return idSuffix;
+        }
+
+        static Row forId( String idSuffix ) {
+            for ( Row row : values() ) {
+                if ( row.idSuffix.equals( idSuffix ) ) {
+                    return row;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Accumulates the text of one element and its descendants, as jsoup's Element.text() does.
+     */
+    private static class ElementText {
+
+        private final StringBuilder text = new StringBuilder();
+        // The number of open elements, including the one whose text this is, when it was opened
+        private final int depth;
+        private boolean closed;
+
+        ElementText( int depth ) {
+            this.depth = depth;
+        }
+
+        void startTag( String tagName, boolean isBlock ) {
+            if ( text.length() > 0 && ( isBlock || "br".equals( tagName ) ) && !this.endsWithSpace() ) {
+                text.append( ' ' );
+            }
+        }
+
+        void text( String rawText ) {
+            String normalised = StringUtil.normaliseWhitespace( rawText );
+            int start = 0;
+            if ( this.endsWithSpace() ) {
+                while ( start < normalised.length() && isRegexWhitespace( normalised.charAt( start ) ) ) {
+                    start++;
+                }
+            }
+            text.append( normalised, start, normalised.length() );
+        }
+
+        boolean isOpen() {
+            return !closed;
+        }
+
+        /**
+         * Stop accumulating text once the element's end tag has been seen.
+         */
+        void close( int openElements ) {
+            if ( openElements < depth ) {
+                closed = true;
+            }
+        }
+
+        String result() {
+            return text.toString().trim();
+        }
+
+        private boolean endsWithSpace() {
+            return text.length() > 0 && text.charAt( text.length() - 1 ) == ' ';
+        }
+
+        private static boolean isRegexWhitespace( char c ) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+        }
+    }
+
+    /**
+     * Follows one row from its start tag to its end tag, collecting the field the observer reads from it.
+     */
+    private static class RowCapture {
+
+        private final Row row;
+        private final CardPageFields fields;
+        private final int multiverseId;
+        private final List<String> openElements = new ArrayList<>();
+
+        // The row's first div.value, and the element within it that some rows read instead
+        private ElementText value;
+        private ElementText child;
+        private List<String> manaSymbols;
+        // Flavor text boxes, in document order
+        private List<ElementText> textBoxes;
+        // The last link, for the expansion
+        private ElementText lastLink;
+
+        RowCapture( Row row, CardPageFields fields, String tagName, int multiverseId ) {
+            this.row = row;
+            this.fields = fields;
+            this.multiverseId = multiverseId;
+            this.openElements.add( tagName );
+            if ( row == Row.MANA ) {
+                manaSymbols = new ArrayList<>();
+            } else if ( row == Row.FLAVOR ) {
+                textBoxes = new ArrayList<>();
+            }
+        }
+
+        void startTag( String tagName, boolean isVoid, boolean isBlock, String classNames, String alt ) {
+
+            int depth = openElements.size() + 1;
+            this.appendElement( tagName, isBlock );
+
+            switch ( row ) {
+            case FLAVOR:
+                if ( "div".equals( tagName ) && hasClass( classNames, "cardtextbox" ) ) {
+                    textBoxes.add( new ElementText( depth ) );
+                }
+                break;
+            case EXPANSION:
+                if ( "a".equals( tagName ) ) {
+                    lastLink = new ElementText( depth );
+                }
+                break;
+            default:
+                if ( value == null ) {
+                    if ( "div".equals( tagName ) && hasClass( classNames, "value" ) ) {
+                        value = new ElementText( depth );
+                    }
+                } else if ( this.inValue() ) {
+                    if ( row == Row.MANA && "img".equals( tagName ) ) {
+                        manaSymbols.add( alt == null ? "" : alt );
+                    } else if ( row == Row.TEXT && "img".equals( tagName ) ) {
+                        // The observer replaces each symbol with its text
+                        value.text( GathererSymbolTable.decodeTextSymbol( alt == null ? "" : alt, multiverseId ) );
+                    } else if ( child == null && ( row == Row.RARITY && "span".equals( tagName ) || row == Row.ARTIST && "a".equals( tagName ) ) ) {
+                        child = new ElementText( depth );
+                    }
+                }
+            }
+
+            if ( !isVoid ) {
+                openElements.add( tagName );
+            }
+        }
+
+        /**
+         * @return True if this was the end of the row itself
+         */
+        boolean endTag( String tagName ) {
+
+            int index = openElements.lastIndexOf( tagName );
+            if ( index < 0 ) {
+                // Not open within this row, so jsoup would ignore it
+                return false;
+            }
+            while ( openElements.size() > index ) {
+                openElements.remove( openElements.size() - 1 );
+            }
+            int openCount = openElements.size();
+            for ( ElementText open : this.openTexts() ) {
+                open.close( openCount );
+            }
+            return openElements.isEmpty();
+        }
+
+        void text( String text ) {
+            for ( ElementText open : this.openTexts() ) {
+                open.text( text );
+            }
+        }
+
+        /**
+         * Store this row's field.
+         */
+        void finish() {
+
+            if ( row == Row.FLAVOR ) {
+                StringBuilder flavorText = new StringBuilder();
+                for ( ElementText textBox : textBoxes ) {
+                    flavorText.append( textBox.result() ).append( '\n' );
+                }
+                fields.setField( row, flavorText.toString().trim() );
+                return;
+            }
+
+            ElementText source = row == Row.EXPANSION ? lastLink : value;
+            if ( source == null ) {
+                // The DOM parser fails on the same pages
+                fields.setMissingElement( row );
+                return;
+            }
+            if ( row == Row.MANA ) {
+                fields.setManaSymbols( manaSymbols );
+            } else if ( row == Row.RARITY ) {
+                fields.setField( row, child == null ? null : child.result() );
+            } else if ( row == Row.ARTIST && child != null ) {
+                fields.setField( row, child.result() );
+            } else {
+                fields.setField( row, source.result() );
+            }
+        }
+
+        /**
+         * Add an element to the text of every element it is inside.
+         */
+        private void appendElement( String tagName, boolean isBlock ) {
+            for ( ElementText open : this.openTexts() ) {
+                open.startTag( tagName, isBlock );
+            }
+        }
+
+        private boolean inValue() {
+            return value != null && value.isOpen();
+        }
+
+        /**
+         * @return Every element text still being accumulated
+         */
+        private List<ElementText> openTexts() {
+
+            List<ElementText> open = new ArrayList<>( 2 );
+            if ( this.inValue() ) {
+                open.add( value );
+                if ( child != null && child.isOpen() ) {
+                    open.add( child );
+                }
+            }
+            if ( lastLink != null && lastLink.isOpen() ) {
+                open.add( lastLink );
+            }
+            if ( textBoxes != null ) {
+                for ( ElementText textBox : textBoxes ) {
+                    if ( textBox.isOpen() ) {
+                        open.add( textBox );
+                    }
+                }
+            }
+            return open;
+        }
+
+        private static boolean hasClass( String classNames, String className ) {
+            if ( classNames == null ) {
+                return false;
+            }
+            for ( String name : classNames.trim().split( "\\s+" ) ) {
+                if ( name.equalsIgnoreCase( className ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.christopherfebles.magic.service;
 import java.util.List;
 
 import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.source.MultiverseIdSource;
 
 /**
  * Update the Magic Database with the latest values from Gatherer
@@ -36,6 +37,16 @@ public interface MagicCardDatabaseService {
      */
     void populateMagicDatabase();
 
+    /**
+     * Insert new cards above the highest multiverse ID currently in the database.<br>
+     * <br>
+     * Probes Gatherer upward from the highest existing ID until magic.frontier.maxConsecutiveMisses IDs in a row have no card, then loads every missing ID
+     * up to the last card found.
+     * 
+     * @see com.christopherfebles.magic.downloader.FrontierSearch
+     */
+    void discoverNewCards();
+
     /**
      * Update the existing cards in the database with the newest values from Gatherer.<br>
      * <br>
@@ -46,4 +57,12 @@ public interface MagicCardDatabaseService {
      */
     void updateMagicDatabase( List<Integer> idsToUpdate );
 
+    /**
+     * Update the cards with the multiverse Ids read lazily from the given source. Downloads begin as soon as the first Ids are read.
+     * 
+     * @param idSource
+     *            The multiverse Ids to update in the database. The source is closed once it has been read.
+     */
+    void updateMagicDatabase( MultiverseIdSource idSource );
+
 }
\ No newline at end of file
@@ -1,17 +1,35 @@
 package com.christopherfebles.magic.service.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.sql.DataSource;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import com.christopherfebles.magic.config.UpdaterConfiguration;
 import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.downloader.EmptyIdCache;
+import com.christopherfebles.magic.downloader.FrontierSearch;
+import com.christopherfebles.magic.downloader.GathererDownloader;
+import com.christopherfebles.magic.downloader.MagicGathererAsyncDataDownloader;
 import com.christopherfebles.magic.downloader.MagicGathererDataDownloader;
+import com.christopherfebles.magic.model.MultiverseIdSet;
+import com.christopherfebles.magic.observer.CardDigestCache;
+import com.christopherfebles.magic.observer.CardProcessingPipeline;
+import com.christopherfebles.magic.observer.ContentHashCache;
 import com.christopherfebles.magic.observer.MagicGathererDataObserver;
 import com.christopherfebles.magic.service.MagicCardDatabaseService;
+import com.christopherfebles.magic.source.CollectionIdSource;
+import com.christopherfebles.magic.source.IdSetSource;
+import com.christopherfebles.magic.source.JdbcKeysetIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
 
 /**
  * Update the Magic Database with the latest values from Gatherer
@@ -24,10 +42,22 @@ public class MagicCardDatabaseServiceImpl implements MagicCardDatabaseService {
 
     private static final Logger LOG = LoggerFactory.getLogger( MagicCardDatabaseServiceImpl.class );
     private static final int MAXIMUM_MULTIVERSE_ID = 500_000;
+    private static final String ENGINE_BLOCKING = "blocking";
+    private static final String ENGINE_ASYNC = "async";
+    private static final String ID_SOURCE_DAO = "dao";
+    private static final String ID_SOURCE_JDBC = "jdbc";
 
     @Autowired
     private MagicCardDAO cardDAO;
 
+    // Needed to stream ids with magic.ids.source=jdbc. Without one, ids are loaded through the DAO.
+    @Autowired( required = false )
+    private DataSource dataSource;
+
+    // Saves the pipeline's batches of cards in one transaction each. Without one, a manager for the DataSource is used.
+    @Autowired( required = false )
+    private PlatformTransactionManager transactionManager;
+
     /*
      * (non-Javadoc)
      * 
@@ -47,7 +77,13 @@ public class MagicCardDatabaseServiceImpl implements MagicCardDatabaseService {
      */
     @Override
     public void updateMagicDatabase() {
-        this.updateMagicDatabase( cardDAO.getAllMultiverseIds() );
+
+        if ( this.isStreamingIds() ) {
+            LOG.debug( "Streaming multiverse ids from the database." );
+            this.updateMagicDatabase( new JdbcKeysetIdSource( dataSource ) );
+            return;
+        }
+        this.updateMagicDatabase( new IdSetSource( this.getExistingIds() ) );
     }
 
     /*
@@ -58,18 +94,109 @@ public class MagicCardDatabaseServiceImpl implements MagicCardDatabaseService {
     @Override
     public void populateMagicDatabase() {
 
-        List<Integer> idList = new ArrayList<>();
-        List<Integer> existingIdList = cardDAO.getAllMultiverseIds();
-
         LOG.debug( "Checking which multiverse ids already exist in the database." );
-        for ( int x = 1; x < MAXIMUM_MULTIVERSE_ID; x++ ) {
-            if ( !existingIdList.contains( x ) ) {
-                idList.add( x );
+        MultiverseIdSet idSet = MultiverseIdSet.range( 1, MAXIMUM_MULTIVERSE_ID );
+        idSet.removeAll( this.getExistingIds() );
+
+        // Ids already confirmed empty are skipped, apart from those whose TTL has passed or which are sampled for another check
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.emptyIds", true ) ) {
+            EmptyIdCache emptyIds = EmptyIdCache.getSharedInstance();
+            for ( int id = idSet.nextId( 0 ); id >= 0; id = idSet.nextId( id + 1 ) ) {
+                if ( emptyIds.shouldSkip( id ) ) {
+                    idSet.remove( id );
+                }
             }
         }
-        LOG.debug( "Preparing to load {} multiverse ids from Gatherer.", idList.size() );
+        LOG.debug( "Preparing to load {} multiverse ids from Gatherer.", idSet.size() );
 
-        this.updateMagicDatabase( idList );
+        this.forgetContentHashes( idSet );
+        this.updateMagicDatabase( new IdSetSource( idSet ) );
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.christopherfebles.magic.service.impl.MagicCardDatabaseService#discoverNewCards()
+     */
+    @Override
+    public void discoverNewCards() {
+
+        int highestId = this.getExistingIds().max();
+
+        final MagicGathererDataDownloader prober = new MagicGathererDataDownloader();
+        FrontierSearch search = new FrontierSearch( new FrontierSearch.Probe() {
+
+            @Override
+            public boolean hasCard( int multiverseId ) throws IOException {
+                return prober.probe( multiverseId );
+            }
+        } );
+        LOG.debug( "Searching for new cards above multiverse id {}.", highestId );
+        int frontier = search.findFrontier( highestId );
+        if ( !search.isComplete() ) {
+            LOG.warn( "{} probes failed, so only new cards up to multiverse id {} will be loaded. Run again to search further.",
+                    search.getNumberOfFailedProbes(), frontier );
+        }
+
+        MultiverseIdSet idSet = MultiverseIdSet.range( highestId + 1, frontier + 1 );
+        LOG.debug( "Preparing to load {} multiverse ids from Gatherer, found with {} probes.", idSet.size(), search.getNumberOfProbes() );
+
+        this.forgetContentHashes( idSet );
+        this.updateMagicDatabase( new IdSetSource( idSet ) );
+    }
+
+    /**
+     * Read the multiverse ID of every card in the database into a bitmap, from the source selected by magic.ids.source.<br>
+     * <br>
+     * Populate and discover decide what to download from these IDs, so a failed read aborts the run rather than returning the IDs read so far, which would
+     * make every card after them look missing.
+     * 
+     * @throws IllegalStateException
+     *             If the IDs cannot be read from the database
+     */
+    private MultiverseIdSet getExistingIds() {
+
+        if ( !this.isStreamingIds() ) {
+            return MultiverseIdSet.of( cardDAO.getAllMultiverseIds() );
+        }
+        MultiverseIdSet idSet = new MultiverseIdSet();
+        try ( MultiverseIdSource idSource = new JdbcKeysetIdSource( dataSource ) ) {
+            for ( int id = idSource.nextId(); id != MultiverseIdSource.NO_MORE_IDS; id = idSource.nextId() ) {
+                idSet.add( id );
+            }
+        }
+        return idSet;
+    }
+
+    /**
+     * Decide whether existing IDs are read from the database in pages by {@link JdbcKeysetIdSource} (magic.ids.source=jdbc), or loaded at once
+     * through MagicCardDAO.getAllMultiverseIds() (magic.ids.source=dao, the default, or when no DataSource is available).
+     */
+    private boolean isStreamingIds() {
+
+        String idSource = UpdaterConfiguration.getString( "magic.ids.source", ID_SOURCE_DAO );
+        if ( ID_SOURCE_JDBC.equalsIgnoreCase( idSource ) ) {
+            if ( dataSource != null ) {
+                return true;
+            }
+            LOG.debug( "No DataSource is available to stream multiverse ids. Using {}.", ID_SOURCE_DAO );
+        } else if ( !ID_SOURCE_DAO.equalsIgnoreCase( idSource ) ) {
+            LOG.error( "Unknown id source {}. Using {}.", idSource, ID_SOURCE_DAO );
+        }
+        return false;
+    }
+
+    /**
+     * None of the given IDs are in the database, so none may be skipped as unchanged, whatever the {@link ContentHashCache} and {@link CardDigestCache}
+     * remember of them.
+     */
+    private void forgetContentHashes( MultiverseIdSet idSet ) {
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.contentHashes", true ) ) {
+            ContentHashCache.getSharedInstance().forget( idSet );
+        }
+        if ( UpdaterConfiguration.getBoolean( "magic.cache.cardDigests", true ) ) {
+            CardDigestCache.getSharedInstance().forget( idSet );
+        }
     }
 
     /*
@@ -79,13 +206,59 @@ public class MagicCardDatabaseServiceImpl implements MagicCardDatabaseService {
      */
     @Override
     public void updateMagicDatabase( List<Integer> idsToUpdate ) {
+        this.updateMagicDatabase( new CollectionIdSource( idsToUpdate ) );
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.christopherfebles.magic.service.impl.MagicCardDatabaseService#updateMagicDatabase(com.christopherfebles.magic.source.MultiverseIdSource)
+     */
+    @Override
+    public void updateMagicDatabase( MultiverseIdSource idSource ) {
 
         LOG.debug( "Creating new Observer and Downloader to update database." );
-        MagicGathererDataObserver observer = new MagicGathererDataObserver( cardDAO );
-        MagicGathererDataDownloader downloader = new MagicGathererDataDownloader();
+        MagicGathererDataObserver observer;
+        if ( UpdaterConfiguration.getBoolean( "magic.pipeline.enabled", true ) ) {
+            // Parse and save on the pipeline's threads, so download threads only download
+            CardProcessingPipeline pipeline = new CardProcessingPipeline( cardDAO );
+            pipeline.setTransactionManager( this.getTransactionManager() );
+            observer = new MagicGathererDataObserver( cardDAO, pipeline );
+        } else {
+            observer = new MagicGathererDataObserver( cardDAO );
+        }
+        GathererDownloader downloader = this.createDownloader();
 
         downloader.addObserver( observer );
         LOG.trace( "Registered new MagicGathererDataObserver with downloader." );
-        downloader.start( idsToUpdate );
+        downloader.start( idSource );
+    }
+
+    /**
+     * @return The transaction manager to save batches of cards with, or null if there is neither a manager nor a DataSource to create one for
+     */
+    private PlatformTransactionManager getTransactionManager() {
+        if ( transactionManager == null && dataSource != null ) {
+            transactionManager = new DataSourceTransactionManager( dataSource );
+        }
+        return transactionManager;
+    }
+
+    /**
+     * Create the download engine selected by magic.downloader.engine: "blocking" (the default) or "async".
+     * 
+     * @return A new, unstarted downloader
+     */
+    private GathererDownloader createDownloader() {
+
+        String engine = UpdaterConfiguration.getString( "magic.downloader.engine", ENGINE_BLOCKING );
+        if ( ENGINE_ASYNC.equalsIgnoreCase( engine ) ) {
+            LOG.debug( "Using asynchronous download engine." );
+            return new MagicGathererAsyncDataDownloader();
+        }
+        if ( !ENGINE_BLOCKING.equalsIgnoreCase( engine ) ) {
+            LOG.error( "Unknown download engine {}. Using {}.", engine, ENGINE_BLOCKING );
+        }
+        return new MagicGathererDataDownloader();
     }
 }
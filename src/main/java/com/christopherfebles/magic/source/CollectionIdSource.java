@@ -0,0 +1,46 @@
+package com.christopherfebles.magic.source;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Returns the IDs of an existing collection, in iteration order. Null and negative values are skipped.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class CollectionIdSource implements MultiverseIdSource {
+
+    private final Iterator<Integer> iterator;
+    private final int size;
+
+    /**
+     * @param idCollection
+     *            The IDs to return. The collection must not be modified while this source is in use.
+     */
+    public CollectionIdSource( Collection<Integer> idCollection ) {
+        this.iterator = idCollection.iterator();
+        this.size = idCollection.size();
+    }
+
+    @Override
+    public int nextId() {
+        while ( iterator.hasNext() ) {
+            Integer id = iterator.next();
+            if ( id != null && id >= 0 ) {
+                return id;
+            }
+        }
+        return NO_MORE_IDS;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
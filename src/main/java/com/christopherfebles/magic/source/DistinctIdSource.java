@@ -0,0 +1,48 @@
+package com.christopherfebles.magic.source;
+
+import java.util.BitSet;
+
+/**
+ * Removes repeated IDs from another source, so each ID is only downloaded once.<br>
+ * <br>
+ * IDs already returned are remembered in a bitmap, whose size depends on the highest ID seen rather than on the number of IDs read.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class DistinctIdSource implements MultiverseIdSource {
+
+    private final MultiverseIdSource idSource;
+    private final BitSet seenIds = new BitSet();
+
+    /**
+     * @param idSource
+     *            The source to read from
+     */
+    public DistinctIdSource( MultiverseIdSource idSource ) {
+        this.idSource = idSource;
+    }
+
+    @Override
+    public int nextId() {
+        int id = idSource.nextId();
+        while ( id != NO_MORE_IDS && seenIds.get( id ) ) {
+            id = idSource.nextId();
+        }
+        if ( id != NO_MORE_IDS ) {
+            seenIds.set( id );
+        }
+        return id;
+    }
+
+    @Override
+    public long estimatedSize() {
+        // Duplicates are not known until they are read
+        return UNKNOWN_SIZE;
+    }
+
+    @Override
+    public void close() {
+        idSource.close();
+    }
+}
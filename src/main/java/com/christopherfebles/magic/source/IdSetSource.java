@@ -0,0 +1,46 @@
+package com.christopherfebles.magic.source;
+
+import com.christopherfebles.magic.model.MultiverseIdSet;
+
+/**
+ * Returns the IDs of a {@link MultiverseIdSet} in ascending order, without boxing them.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class IdSetSource implements MultiverseIdSource {
+
+    private final MultiverseIdSet idSet;
+    private final int size;
+    private int nextId;
+
+    /**
+     * @param idSet
+     *            The IDs to return. The set must not be modified while this source is in use.
+     */
+    public IdSetSource( MultiverseIdSet idSet ) {
+        this.idSet = idSet;
+        this.size = idSet.size();
+        this.nextId = idSet.nextId( 0 );
+    }
+
+    @Override
+    public int nextId() {
+        if ( nextId < 0 ) {
+            return NO_MORE_IDS;
+        }
+        int current = nextId;
+        nextId = idSet.nextId( current + 1 );
+        return current;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
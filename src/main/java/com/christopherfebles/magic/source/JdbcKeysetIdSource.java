@@ -0,0 +1,142 @@
+package com.christopherfebles.magic.source;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.christopherfebles.magic.config.UpdaterConfiguration;
+
+/**
+ * Reads multiverse IDs from the database one page at a time, in ascending order, with keyset pagination.<br>
+ * <br>
+ * Each page is read with its own short query, "WHERE id &gt; last id read ORDER BY id", so no connection or cursor is held open between pages and memory
+ * use is bounded by the page size, however large the table grows. The table and column are set by magic.ids.table and magic.ids.column, and the page size
+ * by magic.ids.pageSize.<br>
+ * <br>
+ * If a page cannot be read, {@link #nextId()} throws an IllegalStateException, then and on every later call, rather than ending early. A failed read
+ * must never pass for the end of the table, or callers would treat every ID after it as missing from the database.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class JdbcKeysetIdSource implements MultiverseIdSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JdbcKeysetIdSource.class );
+    private static final Pattern SQL_IDENTIFIER = Pattern.compile( "[A-Za-z_][A-Za-z0-9_]*" );
+
+    private final DataSource dataSource;
+    private final String query;
+    private final int[] page;
+    private int pageLength;
+    private int pageIndex;
+    private int lastId = -1;
+    private boolean exhausted;
+    private SQLException failure;
+
+    /**
+     * Create a new source configured by magic.ids.table, magic.ids.column and magic.ids.pageSize.
+     * 
+     * @param dataSource
+     *            The database holding the card table
+     */
+    public JdbcKeysetIdSource( DataSource dataSource ) {
+        this( dataSource, UpdaterConfiguration.getString( "magic.ids.table", "MagicCard" ), UpdaterConfiguration.getString( "magic.ids.column",
+                "multiverseId" ), UpdaterConfiguration.getInt( "magic.ids.pageSize", 10_000 ) );
+    }
+
+    /**
+     * Create a new source.
+     * 
+     * @param dataSource
+     *            The database holding the card table
+     * @param table
+     *            The table to read IDs from
+     * @param column
+     *            The integer column holding each card's multiverse ID
+     * @param pageSize
+     *            The maximum number of IDs read by each query
+     */
+    public JdbcKeysetIdSource( DataSource dataSource, String table, String column, int pageSize ) {
+        if ( !SQL_IDENTIFIER.matcher( table ).matches() || !SQL_IDENTIFIER.matcher( column ).matches() ) {
+            throw new IllegalArgumentException( "Invalid table or column name: " + table + "." + column );
+        }
+        this.dataSource = dataSource;
+        this.query = "SELECT " + column + " FROM " + table + " WHERE " + column + " > ? ORDER BY " + column;
+        this.page = new int[Math.max( 1, pageSize )];
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             If the IDs cannot be read from the database
+     */
+    @Override
+    public int nextId() {
+        if ( failure != null ) {
+            throw new IllegalStateException( "Unable to read multiverse ids after " + lastId + ".", failure );
+        }
+        if ( pageIndex >= pageLength ) {
+            if ( exhausted ) {
+                return NO_MORE_IDS;
+            }
+            this.readPage();
+            if ( pageLength == 0 ) {
+                exhausted = true;
+                return NO_MORE_IDS;
+            }
+        }
+        return page[pageIndex++];
+    }
+
+    @Override
+    public long estimatedSize() {
+        return UNKNOWN_SIZE;
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+        pageIndex = pageLength;
+    }
+
+    /**
+     * Read the next page of IDs, after the last ID read so far.
+     * 
+     * @throws IllegalStateException
+     *             If the page cannot be read
+     */
+    private void readPage() {
+
+        pageIndex = 0;
+        pageLength = 0;
+        try ( Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement( query ) ) {
+            statement.setInt( 1, lastId );
+            statement.setMaxRows( page.length );
+            statement.setFetchSize( page.length );
+            try ( ResultSet resultSet = statement.executeQuery() ) {
+                while ( resultSet.next() && pageLength < page.length ) {
+                    page[pageLength++] = resultSet.getInt( 1 );
+                }
+            }
+        } catch ( SQLException e ) {
+            failure = e;
+            pageLength = 0;
+            throw new IllegalStateException( "Unable to read multiverse ids after " + lastId + ".", e );
+        }
+
+        if ( pageLength < page.length ) {
+            // A short page is the last one
+            exhausted = true;
+        }
+        if ( pageLength > 0 ) {
+            lastId = page[pageLength - 1];
+        }
+        LOG.trace( "Read {} multiverse ids, up to {}.", pageLength, lastId );
+    }
+}
@@ -0,0 +1,41 @@
+package com.christopherfebles.magic.source;
+
+import java.io.Closeable;
+
+/**
+ * A lazily read stream of multiverse IDs.<br>
+ * <br>
+ * Downloads consume IDs from a source as capacity frees up, so they can start before the whole source has been read, and memory use does not depend on
+ * the number of IDs. A source is read once, by one thread at a time.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public interface MultiverseIdSource extends Closeable {
+
+    /**
+     * Returned by {@link #nextId()} once a source is exhausted.
+     */
+    int NO_MORE_IDS = -1;
+
+    /**
+     * Returned by {@link #estimatedSize()} if a source cannot tell how many IDs it holds without reading them.
+     */
+    long UNKNOWN_SIZE = -1;
+
+    /**
+     * @return The next ID from this source, or {@link #NO_MORE_IDS} if there are none left
+     */
+    int nextId();
+
+    /**
+     * @return The number of IDs this source will return in total, or {@link #UNKNOWN_SIZE}
+     */
+    long estimatedSize();
+
+    /**
+     * Release any resources held by this source, such as a database connection. Errors are logged rather than thrown.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,44 @@
+package com.christopherfebles.magic.source;
+
+/**
+ * Returns every ID in a range, in ascending order, without storing any of them.
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class RangeIdSource implements MultiverseIdSource {
+
+    private final int toId;
+    private final long size;
+    private int nextId;
+
+    /**
+     * @param fromId
+     *            The first ID in the range, inclusive
+     * @param toId
+     *            The last ID in the range, exclusive
+     */
+    public RangeIdSource( int fromId, int toId ) {
+        this.nextId = Math.max( 0, fromId );
+        this.toId = toId;
+        this.size = Math.max( 0L, ( long ) toId - nextId );
+    }
+
+    @Override
+    public int nextId() {
+        if ( nextId >= toId ) {
+            return NO_MORE_IDS;
+        }
+        return nextId++;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
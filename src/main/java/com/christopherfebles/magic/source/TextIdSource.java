@@ -0,0 +1,126 @@
+package com.christopherfebles.magic.source;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads multiverse IDs lazily from text, such as a file, standard input, or a command line argument.<br>
+ * <br>
+ * IDs are separated by commas or whitespace. Each entry is either a single ID, or an inclusive range written "first-last", which is expanded one ID at a
+ * time rather than stored. Anything after a '#' on a line is ignored. Invalid entries are logged and skipped.<br>
+ * <br>
+ * For example: "1-100, 250, 4000-4999".
+ * 
+ * @author Christopher Febles
+ *
+ */
+public class TextIdSource implements MultiverseIdSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger( TextIdSource.class );
+
+    private final Reader reader;
+    private final StringBuilder token = new StringBuilder();
+    private boolean endOfText;
+
+    // The range currently being expanded, as [nextId, lastId]
+    private long nextId;
+    private long lastId = -1;
+
+    /**
+     * @param reader
+     *            The text to read. It is read one character at a time, so it should be buffered. It is closed along with this source.
+     */
+    public TextIdSource( Reader reader ) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int nextId() {
+        while ( nextId > lastId ) {
+            String entry = this.nextToken();
+            if ( entry == null ) {
+                return NO_MORE_IDS;
+            }
+            this.parseEntry( entry );
+        }
+        return ( int ) nextId++;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return UNKNOWN_SIZE;
+    }
+
+    @Override
+    public void close() {
+        endOfText = true;
+        try {
+            reader.close();
+        } catch ( IOException e ) {
+            LOG.error( "Error closing multiverse id input.", e );
+        }
+    }
+
+    /**
+     * Set the range to expand from a single entry, or leave it empty if the entry is invalid.
+     */
+    private void parseEntry( String entry ) {
+
+        int dash = entry.indexOf( '-', 1 );
+        try {
+            long first = Long.parseLong( dash < 0 ? entry : entry.substring( 0, dash ) );
+            long last = dash < 0 ? first : Long.parseLong( entry.substring( dash + 1 ) );
+            if ( first < 0 || last > Integer.MAX_VALUE || first > last ) {
+                LOG.error( "Invalid multiverse id range: {}. Skipping.", entry );
+                return;
+            }
+            nextId = first;
+            lastId = last;
+        } catch ( NumberFormatException e ) {
+            LOG.error( "Invalid multiverse id: {}. Skipping.", entry );
+        }
+    }
+
+    /**
+     * @return The next non-empty entry, or null at the end of the text
+     */
+    private String nextToken() {
+
+        token.setLength( 0 );
+        boolean inComment = false;
+        while ( !endOfText ) {
+            int c;
+            try {
+                c = reader.read();
+            } catch ( IOException e ) {
+                LOG.error( "Error reading multiverse ids. No further ids will be read.", e );
+                c = -1;
+            }
+            if ( c < 0 ) {
+                endOfText = true;
+            } else if ( c == '\n' || c == '\r' ) {
+                inComment = false;
+                if ( token.length() > 0 ) {
+                    break;
+                }
+            } else if ( inComment ) {
+                continue;
+            } else if ( c == '#' ) {
+                inComment = true;
+                if ( token.length() > 0 ) {
+                    break;
+                }
+            } else if ( c == ',' || Character.isWhitespace( c ) ) {
+                if ( token.length() > 0 ) {
+                    break;
+                }
+            } else {
+                token.append( ( char ) c );
+            }
+        }
+        return token.length() > 0 ? token.toString() : null;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Sources of multiverse IDs to download, read lazily one ID at a time.
+ */
+package com.christopherfebles.magic.source;
\ No newline at end of file
@@ -1,3 +1,3 @@
 #!/bin/bash
 
-java -d64 -Xms2048m -Xmx4g -jar MagicDBUpdater.jar $1 $2
\ No newline at end of file
+java -d64 -Xms2048m -Xmx4g $JAVA_OPTS -jar MagicDBUpdater.jar $1 $2
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.christopherfebles.magic.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.christopherfebles.magic.downloader.DownloadScheduler;
+import com.christopherfebles.magic.downloader.DownloadWorker;
+import com.christopherfebles.magic.downloader.DownloadWorkerPool;
+import com.christopherfebles.magic.downloader.MultiverseIdChunkQueue;
+import com.christopherfebles.magic.downloader.PerCardDownloadScheduler;
+import com.christopherfebles.magic.source.RangeIdSource;
+
+/**
+ * Compares the platform-thread worker pool with the per-card (virtual thread) scheduler.<br>
+ * <br>
+ * Each card simulates the blocking fetch-parse-save sequence of MagicGathererDataDownloader: three sleeps standing in for the three HTTP round trips, then
+ * a little CPU work standing in for parsing. Both schedulers are given the same concurrency limit, so the difference is the cost of the threads themselves.
+ * 
+ * @author Christopher Febles
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class DownloadSchedulerBenchmark {
+
+    private static final int CARDS_PER_RUN = 2_000;
+    private static final long PAGE_LATENCY_MILLISECONDS = 2;
+    private static final long PARSE_CPU_TOKENS = 10_000;
+
+    @Param( { "platform", "virtual" } )
+    public String executionMode;
+
+    @Param( { "16", "256" } )
+    public int concurrency;
+
+    @Benchmark
+    public void downloadAllCards() throws InterruptedException {
+
+        DownloadScheduler scheduler;
+        if ( "virtual".equals( executionMode ) ) {
+            scheduler = new PerCardDownloadScheduler( concurrency );
+        } else {
+            scheduler = new DownloadWorkerPool( concurrency, 25 );
+        }
+
+        scheduler.start( new RangeIdSource( 1, CARDS_PER_RUN + 1 ), new DownloadWorker.Factory() {
+
+            @Override
+            public DownloadWorker newWorker( MultiverseIdChunkQueue queue ) {
+                return new SimulatedWorker();
+            }
+        } );
+        if ( !scheduler.awaitCompletion( 10, TimeUnit.MINUTES ) ) {
+            throw new IllegalStateException( "Scheduler did not finish." );
+        }
+    }
+
+    /**
+     * Stands in for a MagicGathererDataDownloader clone and its observer.
+     */
+    private static class SimulatedWorker implements DownloadWorker {
+
+        @Override
+        public void download( int multiverseId ) {
+            try {
+                for ( int page = 0; page < 3; page++ ) {
+                    Thread.sleep( PAGE_LATENCY_MILLISECONDS );
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            Blackhole.consumeCPU( PARSE_CPU_TOKENS );
+        }
+
+        @Override
+        public void finished() {
+            // Nothing to report
+        }
+    }
+}
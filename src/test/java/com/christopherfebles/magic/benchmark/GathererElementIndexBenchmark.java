@@ -0,0 +1,100 @@
+package com.christopherfebles.magic.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.christopherfebles.magic.observer.GathererElementIndex;
+
+/**
+ * Compares finding the rows of Gatherer card pages with one attribute selector per row, as MagicGathererDataObserver used to, against a single
+ * {@link GathererElementIndex}.<br>
+ * <br>
+ * The pages are the card pages under src/test/resources/html, parsed once during setup, so only the row lookups are measured. Scores are the time to look
+ * up every row of every page once; divide by the number of pages for the per-page cost.
+ * 
+ * @author Christopher Febles
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class GathererElementIndexBenchmark {
+
+    // Card pages only. 3756 has no card assigned, so it exercises the search for a name row.
+    private static final int[] FIXTURE_IDS = { 1, 7, 61, 984, 3756, 4856, 4957, 6514, 73602, 97055, 107437, 172092, 211170, 230076, 233045, 262875,
+            366476, 367775, 368160, 369097, 382844, 383048, 383192, 383283, 384328 };
+
+    // Every row parseGathererData reads, in the order it reads them
+    private static final String[] ROW_NAMES = { "manaRow", "typeRow", "textRow", "FlavorText", "ptRow", "currentSetSymbol", "rarityRow", "numberRow",
+            "artistRow", "markRow" };
+
+    private final List<Document> documents = new ArrayList<>();
+
+    @Setup
+    public void loadFixtures() throws IOException {
+        for ( int id : FIXTURE_IDS ) {
+            try ( InputStream is = GathererElementIndexBenchmark.class.getClassLoader().getResourceAsStream( "html/" + id + ".html" ) ) {
+                documents.add( Jsoup.parse( IOUtils.toString( is, "UTF-8" ) ) );
+            }
+        }
+    }
+
+    /**
+     * One document-wide attribute scan per row, plus up to eleven more while searching for the name row's prefix.
+     */
+    @Benchmark
+    public void selectEachRow( Blackhole blackhole ) {
+        for ( Document document : documents ) {
+            String prefix = GathererElementIndex.GATHERER_ID_DEFAULT_PREFIX;
+            Element nameRow = document.select( "[id=" + prefix + "nameRow]" ).first();
+            for ( int x = 0; x < 10 && nameRow == null; x++ ) {
+                prefix = GathererElementIndex.GATHERER_ID_DEFAULT_PREFIX + "ctl0" + x + "_";
+                nameRow = document.select( "[id=" + prefix + "nameRow]" ).first();
+            }
+            blackhole.consume( nameRow );
+            if ( nameRow != null ) {
+                for ( String rowName : ROW_NAMES ) {
+                    blackhole.consume( document.select( "[id=" + prefix + rowName + "]" ).first() );
+                }
+            }
+        }
+    }
+
+    /**
+     * One traversal per document, then a map lookup per row.
+     */
+    @Benchmark
+    public void indexRows( Blackhole blackhole ) {
+        for ( Document document : documents ) {
+            GathererElementIndex rows = new GathererElementIndex( document );
+            blackhole.consume( rows.getRow( "nameRow" ) );
+            if ( rows.hasCard() ) {
+                for ( String rowName : ROW_NAMES ) {
+                    blackhole.consume( rows.getRow( rowName ) );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.christopherfebles.magic.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.enums.Language;
+import com.christopherfebles.magic.model.MagicCard;
+import com.christopherfebles.magic.model.MagicCardRawData;
+import com.christopherfebles.magic.observer.GathererElementIndex;
+import com.christopherfebles.magic.observer.GathererSymbolTable;
+import com.christopherfebles.magic.observer.MagicGathererDataObserver;
+
+/**
+ * Measures each stage of MagicGathererDataObserver's processing, separately for every page under src/test/resources/html:<br>
+ * <br>
+ * <ul>
+ * <li>parseGathererData: a downloaded card page to a MagicCard, with each parser engine</li>
+ * <li>parseLanguagePage: a downloaded language page to the card's Language</li>
+ * <li>decodeManaSymbols: the mana symbols of a card page's mana row, as parseCardColor used to</li>
+ * <li>processData: the whole path from MagicCardRawData to the DAO, which does nothing</li>
+ * </ul>
+ * Scores are throughput per page, so each fixture is reported on its own line. The benchmark profile runs the GC profiler as well, adding allocation per
+ * operation to each line:<br>
+ * <br>
+ * mvn -Pbenchmark -DskipTests verify -Dbenchmark.include=GathererParserBenchmark
+ *
+ * @author Christopher Febles
+ *
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class GathererParserBenchmark {
+
+    private static final MethodHandle PARSE_GATHERER_DATA = findObserverMethod( "parseGathererData", byte[].class, int.class );
+    private static final MethodHandle PARSE_LANGUAGE_PAGE = findObserverMethod( "parseLanguagePage", byte[].class, MagicCard.class );
+
+    /**
+     * A card page, as the downloader produces it.
+     */
+    @State( Scope.Benchmark )
+    public static class CardPage {
+
+        // Every card page. 3756 has no card assigned.
+        @Param( { "1", "7", "61", "984", "3756", "4856", "4957", "6514", "73602", "97055", "107437", "172092", "211170", "230076", "233045", "262875",
+                "366476", "367775", "368160", "369097", "382844", "383048", "383192", "383283", "384328" } )
+        public int multiverseId;
+
+        private byte[] page;
+        private MagicCardRawData rawData;
+        private final List<String> manaSymbols = new ArrayList<>();
+
+        @Setup
+        public void loadFixture() throws IOException {
+
+            page = readFixture( multiverseId + ".html" );
+            rawData = new MagicCardRawData( multiverseId, page, new byte[0], readFixture( "1_language.html" ) );
+
+            GathererElementIndex rows = new GathererElementIndex( Jsoup.parse( new String( page, "UTF-8" ) ) );
+            Element manaRow = rows.getRow( "manaRow" );
+            if ( manaRow != null ) {
+                for ( Element manaImg : manaRow.select( "div.value img" ) ) {
+                    manaSymbols.add( manaImg.attr( "alt" ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * A language page, as the downloader produces it.
+     */
+    @State( Scope.Benchmark )
+    public static class LanguagePage {
+
+        @Param( { "1_language", "367775_russian", "383192_english", "384328_french", "73602_japanese" } )
+        public String fixture;
+
+        private byte[] page;
+        private final MagicCard card = new MagicCard();
+        // Language detection is the same for both engines
+        private final MagicGathererDataObserver observer = new MagicGathererDataObserver( null );
+
+        @Setup
+        public void loadFixture() throws IOException {
+            page = readFixture( fixture + ".html" );
+        }
+    }
+
+    /**
+     * An observer with no pipeline or caches, which processes each card on the calling thread.
+     */
+    @State( Scope.Benchmark )
+    public static class Observer {
+
+        @Param( { "dom", "streaming" } )
+        public String engine;
+
+        private MagicGathererDataObserver observer;
+
+        @Setup
+        public void createObserver() {
+            observer = new MagicGathererDataObserver( noOpDAO() );
+            observer.setStreamingParser( "streaming".equals( engine ) );
+            // Otherwise every card after the first would be skipped as unchanged
+            observer.setContentHashCache( null );
+            observer.setCardDigestCache( null );
+        }
+    }
+
+    @Benchmark
+    public MagicCard parseGathererData( Observer observer, CardPage cardPage ) throws Throwable {
+        return ( MagicCard ) PARSE_GATHERER_DATA.invokeExact( observer.observer, cardPage.page, cardPage.multiverseId );
+    }
+
+    @Benchmark
+    public Language parseLanguagePage( LanguagePage languagePage ) throws Throwable {
+        return ( Language ) PARSE_LANGUAGE_PAGE.invokeExact( languagePage.observer, languagePage.page, languagePage.card );
+    }
+
+    @Benchmark
+    public void decodeManaSymbols( CardPage cardPage, Blackhole blackhole ) {
+        for ( String alt : cardPage.manaSymbols ) {
+            blackhole.consume( GathererSymbolTable.decodeColor( alt ) );
+        }
+    }
+
+    @Benchmark
+    public void processData( Observer observer, CardPage cardPage ) {
+        observer.observer.update( null, cardPage.rawData );
+    }
+
+    private static byte[] readFixture( String filename ) throws IOException {
+        try ( InputStream is = GathererParserBenchmark.class.getClassLoader().getResourceAsStream( "html/" + filename ) ) {
+            return IOUtils.toByteArray( is );
+        }
+    }
+
+    /**
+     * @return A handle on one of the observer's private methods, so it can be called without reflection's boxing
+     */
+    private static MethodHandle findObserverMethod( String name, Class<?>... parameterTypes ) {
+        try {
+            Method method = MagicGathererDataObserver.class.getDeclaredMethod( name, parameterTypes );
+            method.setAccessible( true );
+            return MethodHandles.lookup().unreflect( method );
+        } catch ( NoSuchMethodException | IllegalAccessException e ) {
+            throw new IllegalStateException( "Unable to find MagicGathererDataObserver." + name, e );
+        }
+    }
+
+    /**
+     * @return A DAO which saves nothing, and reports success
+     */
+    private static MagicCardDAO noOpDAO() {
+        return ( MagicCardDAO ) Proxy.newProxyInstance( MagicCardDAO.class.getClassLoader(), new Class<?>[] { MagicCardDAO.class },
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke( Object proxy, Method method, Object[] args ) {
+                        Class<?> returnType = method.getReturnType();
+                        if ( returnType == boolean.class ) {
+                            return Boolean.TRUE;
+                        }
+                        if ( returnType == int.class ) {
+                            return 0;
+                        }
+                        if ( returnType == long.class ) {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                } );
+    }
+}
@@ -0,0 +1,132 @@
+package com.christopherfebles.magic.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.christopherfebles.magic.enums.Color;
+import com.christopherfebles.magic.observer.GathererSymbolTable;
+
+/**
+ * Compares decoding mana symbols the way MagicGathererDataObserver used to, building a map of number words and concatenating Strings for every symbol,
+ * against {@link GathererSymbolTable}.<br>
+ * <br>
+ * The symbols are the mana costs and card text symbols of the card pages under src/test/resources/html. Scores are the time to decode all of them once.
+ * The benchmark profile runs the GC profiler as well, to compare allocation per operation:<br>
+ * <br>
+ * mvn -Pbenchmark -DskipTests verify -Dbenchmark.include=GathererSymbolTableBenchmark
+ *
+ * @author Christopher Febles
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class GathererSymbolTableBenchmark {
+
+    private static final List<List<String>> MANA_COSTS = Arrays.asList( Arrays.asList( "3", "Phyrexian Red", "Phyrexian Red" ), Arrays.asList( "3",
+            "Green", "Blue" ), Arrays.asList( "2" ), Arrays.asList( "Two or White", "Two or White", "Two or White" ), Arrays.asList( "5", "White",
+            "White" ), Arrays.asList( "0" ), Arrays.asList( "Variable Colorless", "Black", "Black" ), Arrays.asList( "2", "Black or Red" ), Arrays.asList(
+            "5", "Red" ) );
+
+    private static final List<String> TEXT_SYMBOLS = Arrays.asList( "Tap", "Phyrexian White", "Two or White", "White", "1", "2", "Red", "Variable Colorless" );
+
+    @Benchmark
+    public void legacyDecode( Blackhole blackhole ) {
+        for ( List<String> manaCost : MANA_COSTS ) {
+            String decoded = "";
+            for ( String alt : manaCost ) {
+                decoded += legacyParseCardColor( alt ) + ";";
+            }
+            blackhole.consume( decoded.substring( 0, decoded.length() - 1 ) );
+        }
+        for ( String alt : TEXT_SYMBOLS ) {
+            if ( alt.equalsIgnoreCase( "tap" ) ) {
+                blackhole.consume( "{T}" );
+            } else if ( StringUtils.isNumeric( alt.trim() ) ) {
+                blackhole.consume( "{" + alt + "}" );
+            } else {
+                blackhole.consume( "{" + legacyParseCardColor( alt ) + "}" );
+            }
+        }
+    }
+
+    @Benchmark
+    public void tableDecode( Blackhole blackhole ) {
+        for ( List<String> manaCost : MANA_COSTS ) {
+            blackhole.consume( GathererSymbolTable.decodeManaCost( manaCost ) );
+        }
+        for ( String alt : TEXT_SYMBOLS ) {
+            blackhole.consume( GathererSymbolTable.decodeTextSymbol( alt, 0 ) );
+        }
+    }
+
+    /**
+     * MagicGathererDataObserver.parseCardColor, before the symbol table
+     */
+    private static String legacyParseCardColor( String colorStr ) {
+
+        String localColorStr = colorStr;
+        Map<String, Integer> numberMap = new HashMap<>();
+        numberMap.put( "ONE", 1 );
+        numberMap.put( "TWO", 2 );
+        numberMap.put( "THREE", 3 );
+        numberMap.put( "FOUR", 4 );
+        numberMap.put( "FIVE", 5 );
+        numberMap.put( "SIX", 6 );
+        numberMap.put( "SEVEN", 7 );
+        numberMap.put( "EIGHT", 8 );
+        numberMap.put( "NINE", 9 );
+        numberMap.put( "TEN", 10 );
+
+        String retVal = "";
+        localColorStr = localColorStr.toUpperCase();
+        localColorStr = localColorStr.trim().replace( " ", "_" );
+
+        String[] colorAr = null;
+        boolean isPhyrexian = false;
+
+        if ( localColorStr.contains( "PHYREXIAN_" ) ) {
+            colorAr = localColorStr.split( "PHYREXIAN_" );
+            isPhyrexian = true;
+        } else {
+            colorAr = localColorStr.split( "_OR_" );
+        }
+
+        for ( String oneColor : colorAr ) {
+            if ( StringUtils.isEmpty( oneColor ) ) {
+                continue;
+            }
+            if ( Color.contains( oneColor ) ) {
+                Color color = Color.valueOf( oneColor );
+                retVal += color.getValue();
+                if ( isPhyrexian ) {
+                    retVal += "P";
+                }
+            } else if ( numberMap.containsKey( oneColor ) ) {
+                retVal += numberMap.get( oneColor );
+            } else {
+                retVal += oneColor;
+            }
+            retVal += "/";
+        }
+        return retVal.substring( 0, retVal.length() - 1 );
+    }
+}
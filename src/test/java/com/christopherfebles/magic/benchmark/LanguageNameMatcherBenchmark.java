@@ -0,0 +1,85 @@
+package com.christopherfebles.magic.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.christopherfebles.magic.enums.Language;
+import com.christopherfebles.magic.observer.LanguageNameMatcher;
+
+/**
+ * Compares finding the languages named on Gatherer language pages by decoding each page and searching it once per language, as MagicGathererDataObserver
+ * used to, against a single pass of a {@link LanguageNameMatcher} over the page's bytes.<br>
+ * <br>
+ * The pages are the Russian, Japanese and French language pages under src/test/resources/html, held as the raw bytes the downloader produces. Scores are
+ * the time to search all three once.
+ * 
+ * @author Christopher Febles
+ *
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class LanguageNameMatcherBenchmark {
+
+    private static final String[] FIXTURES = { "367775_russian.html", "73602_japanese.html", "384328_french.html" };
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private final LanguageNameMatcher matcher = new LanguageNameMatcher();
+
+    @Setup
+    public void loadFixtures() throws IOException {
+        for ( String fixture : FIXTURES ) {
+            try ( InputStream is = LanguageNameMatcherBenchmark.class.getClassLoader().getResourceAsStream( "html/" + fixture ) ) {
+                pages.add( IOUtils.toByteArray( is ) );
+            }
+        }
+    }
+
+    /**
+     * Decode each page, then one String.contains per language.
+     */
+    @Benchmark
+    public void containsEachName( Blackhole blackhole ) {
+        for ( byte[] page : pages ) {
+            String languagePage = new String( page, StandardCharsets.UTF_8 );
+            EnumSet<Language> found = EnumSet.noneOf( Language.class );
+            for ( Language language : Language.values() ) {
+                if ( languagePage.contains( language.toString() ) ) {
+                    found.add( language );
+                }
+            }
+            blackhole.consume( found );
+        }
+    }
+
+    /**
+     * One pass over each page's bytes.
+     */
+    @Benchmark
+    public void matchBytes( Blackhole blackhole ) {
+        for ( byte[] page : pages ) {
+            blackhole.consume( matcher.findLanguages( page ) );
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.downloader.AdaptiveRateController;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class AdaptiveRateControllerTest {
+
+    private static final long NORMAL_LATENCY = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+    private AdaptiveRateController controller;
+
+    @Before
+    public void setUp() {
+        controller = new AdaptiveRateController( "gatherer.example.com" );
+    }
+
+    @Test
+    public void testServerErrorDecreasesLimits() throws Exception {
+
+        int initialLimit = controller.getConcurrencyLimit();
+        double initialRate = controller.getRequestsPerSecond();
+
+        controller.acquire();
+        controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.OVERLOAD );
+
+        assertTrue( controller.getConcurrencyLimit() < initialLimit );
+        assertTrue( controller.getRequestsPerSecond() < initialRate );
+        assertEquals( 0, controller.getInFlight() );
+    }
+
+    @Test
+    public void testRepeatedErrorsWithinCooldownOnlyDecreaseOnce() throws Exception {
+
+        controller.acquire();
+        controller.acquire();
+        controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.OVERLOAD );
+        int limitAfterFirstError = controller.getConcurrencyLimit();
+        controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.OVERLOAD );
+
+        assertEquals( limitAfterFirstError, controller.getConcurrencyLimit() );
+    }
+
+    @Test
+    public void testSuccessIncreasesLimit() throws Exception {
+
+        int initialLimit = controller.getConcurrencyLimit();
+        for ( int x = 0; x < 2 * initialLimit; x++ ) {
+            controller.acquire();
+            controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.SUCCESS );
+        }
+
+        assertTrue( controller.getConcurrencyLimit() > initialLimit );
+    }
+
+    @Test
+    public void testSlowResponseDecreasesLimit() throws Exception {
+
+        for ( int x = 0; x < 20; x++ ) {
+            controller.acquire();
+            controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.SUCCESS );
+        }
+        int limitAfterFastResponse = controller.getConcurrencyLimit();
+
+        controller.acquire();
+        controller.release( NORMAL_LATENCY * 100, AdaptiveRateController.Outcome.SUCCESS );
+
+        assertTrue( controller.getConcurrencyLimit() < limitAfterFastResponse );
+    }
+
+    @Test
+    public void testNormalSlowResponsesLeaveLimitAlone() throws Exception {
+
+        // Quick 304s mixed with full pages ten times slower, all of which are normal for the host
+        int initialLimit = controller.getConcurrencyLimit();
+        for ( int x = 0; x < 100; x++ ) {
+            controller.acquire();
+            long latency = x % 4 == 3 ? NORMAL_LATENCY * 10 : NORMAL_LATENCY;
+            controller.release( latency, AdaptiveRateController.Outcome.SUCCESS );
+            assertTrue( "Limit shrank after request " + x, controller.getConcurrencyLimit() >= initialLimit );
+        }
+
+        assertTrue( controller.getConcurrencyLimit() > initialLimit );
+    }
+
+    @Test
+    public void testIgnoredOutcomeLeavesLimitsAlone() throws Exception {
+
+        int initialLimit = controller.getConcurrencyLimit();
+        controller.acquire();
+        controller.release( NORMAL_LATENCY, AdaptiveRateController.Outcome.IGNORED );
+
+        assertEquals( initialLimit, controller.getConcurrencyLimit() );
+    }
+}
@@ -0,0 +1,61 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import com.christopherfebles.magic.model.MagicCard;
+import com.christopherfebles.magic.observer.CardDigestCache;
+import com.christopherfebles.magic.observer.CardDigestCache.Change;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class CardDigestCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompare() throws Exception {
+
+        File file = new File( folder.getRoot(), "digests.bin" );
+        CardDigestCache cache = new CardDigestCache( file );
+        MagicCard card = this.createCard( "Ankh of Mishra", new byte[] { 1, 2, 3 } );
+
+        assertEquals( Change.NEW, cache.compare( card ) );
+        cache.update( card );
+        assertEquals( Change.NONE, cache.compare( this.createCard( "Ankh of Mishra", new byte[] { 1, 2, 3 } ) ) );
+        assertEquals( Change.TEXT, cache.compare( this.createCard( "Ankh of Mishra ", new byte[] { 1, 2, 3 } ) ) );
+        assertEquals( Change.IMAGE, cache.compare( this.createCard( "Ankh of Mishra", new byte[] { 1, 2 } ) ) );
+
+        // Digests survive a save and load
+        cache.save();
+        CardDigestCache loaded = new CardDigestCache( file );
+        loaded.load();
+        assertEquals( Change.NONE, loaded.compare( card ) );
+    }
+
+    @Test
+    public void testFieldBoundaries() {
+
+        MagicCard first = this.createCard( "Ankh", null );
+        first.setText( "of Mishra" );
+        MagicCard second = this.createCard( "Ankh of", null );
+        second.setText( "Mishra" );
+
+        assertNotEquals( CardDigestCache.textDigest( first ), CardDigestCache.textDigest( second ) );
+    }
+
+    private MagicCard createCard( String name, byte[] image ) {
+        MagicCard card = new MagicCard();
+        card.setMultiverseId( 1 );
+        card.setName( name );
+        card.setCardImageArray( image );
+        return card;
+    }
+}
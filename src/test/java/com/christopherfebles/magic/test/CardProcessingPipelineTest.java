@@ -0,0 +1,183 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import com.christopherfebles.magic.dao.MagicCardDAO;
+import com.christopherfebles.magic.downloader.ValidatorCache;
+import com.christopherfebles.magic.model.MagicCard;
+import com.christopherfebles.magic.model.MagicCardRawData;
+import com.christopherfebles.magic.observer.CardDigestCache;
+import com.christopherfebles.magic.observer.CardProcessingPipeline;
+import com.christopherfebles.magic.observer.ContentHashCache;
+import com.christopherfebles.magic.observer.MagicGathererDataObserver;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class CardProcessingPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompletionWaitsForPipeline() throws Exception {
+
+        byte[] cardPage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1.html" ) );
+        byte[] emptyPage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/3756.html" ) );
+        byte[] languagePage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1_language.html" ) );
+
+        MagicCardDAO cardDAO = mock( MagicCardDAO.class );
+        when( cardDAO.addCardToDatabase( Matchers.any( MagicCard.class ) ) ).thenReturn( true );
+
+        // Queues smaller than the number of cards, so submissions have to wait for room
+        CardProcessingPipeline pipeline = new CardProcessingPipeline( cardDAO, 2, 2, 1, 2 );
+        MagicGathererDataObserver observer = this.createObserver( cardDAO, pipeline );
+
+        for ( int id = 1; id <= 20; id++ ) {
+            byte[] dataPage = id % 4 == 0 ? emptyPage : cardPage;
+            observer.update( null, new MagicCardRawData( id, dataPage, new byte[0], languagePage ) );
+        }
+        // The downloader's completion notification returns once every card is saved
+        observer.update( null, null );
+
+        assertEquals( 0, pipeline.getCardsInFlight() );
+        verify( cardDAO, times( 15 ) ).addCardToDatabase( Matchers.any( MagicCard.class ) );
+        // The pipeline records saved cards in the observer's own caches
+        assertEquals( 15, observer.getCardDigestCache().size() );
+    }
+
+    @Test
+    public void testWritesReportEachCard() throws Exception {
+
+        byte[] cardPage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1.html" ) );
+        byte[] languagePage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1_language.html" ) );
+
+        // The first card written fails to save
+        MagicCardDAO cardDAO = mock( MagicCardDAO.class );
+        when( cardDAO.addCardToDatabase( Matchers.any( MagicCard.class ) ) ).thenReturn( false, true );
+
+        CardProcessingPipeline pipeline = new CardProcessingPipeline( cardDAO, 2, 2, 2, 2 );
+        MagicGathererDataObserver observer = this.createObserver( cardDAO, pipeline );
+
+        int writesBefore = MagicGathererDataObserver.NUMBER_OF_DATABASE_WRITES.get();
+        for ( int id = 101; id <= 110; id++ ) {
+            observer.update( null, new MagicCardRawData( id, cardPage, new byte[] { ( byte ) id }, languagePage ) );
+        }
+        observer.update( null, null );
+
+        assertEquals( 0, pipeline.getCardsInFlight() );
+        verify( cardDAO, times( 10 ) ).addCardToDatabase( Matchers.any( MagicCard.class ) );
+        assertEquals( 10, MagicGathererDataObserver.NUMBER_OF_DATABASE_WRITES.get() - writesBefore );
+        assertTrue( pipeline.getStatistics(), pipeline.getStatistics().contains( "9 cards saved, 1 failed" ) );
+    }
+
+    @Test
+    public void testWritersPartitionByMultiverseId() throws Exception {
+
+        byte[] cardPage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1.html" ) );
+        byte[] languagePage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1_language.html" ) );
+
+        // The writer thread of every card saved
+        final Map<Integer, String> writerThreads = new ConcurrentHashMap<>();
+        MagicCardDAO cardDAO = mock( MagicCardDAO.class );
+        when( cardDAO.addCardToDatabase( Matchers.any( MagicCard.class ) ) ).thenAnswer( new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer( InvocationOnMock invocation ) {
+                MagicCard card = ( MagicCard ) invocation.getArguments()[0];
+                writerThreads.put( card.getMultiverseId(), Thread.currentThread().getName() );
+                return true;
+            }
+        } );
+
+        CardProcessingPipeline pipeline = new CardProcessingPipeline( cardDAO, 2, 4, 3, 3 );
+        MagicGathererDataObserver observer = this.createObserver( cardDAO, pipeline );
+
+        for ( int id = 201; id <= 230; id++ ) {
+            observer.update( null, new MagicCardRawData( id, cardPage, new byte[] { ( byte ) id }, languagePage ) );
+        }
+        observer.update( null, null );
+
+        assertEquals( 30, writerThreads.size() );
+        // Each writer only writes the ids of its own partition
+        Map<String, Integer> partitions = new HashMap<>();
+        for ( Map.Entry<Integer, String> entry : writerThreads.entrySet() ) {
+            Integer partition = partitions.put( entry.getValue(), entry.getKey() % 3 );
+            assertTrue( partition == null || partition == entry.getKey() % 3 );
+        }
+        assertEquals( 0, pipeline.getWriteQueueDepth() );
+        assertTrue( pipeline.getMaxWriteQueueDepth() <= 3 );
+    }
+
+    @Test
+    public void testQueuedCardsSavedInOneTransaction() throws Exception {
+
+        byte[] cardPage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1.html" ) );
+        byte[] languagePage = IOUtils.toByteArray( CardProcessingPipelineTest.class.getClassLoader().getResourceAsStream( "html/1_language.html" ) );
+
+        // The first card's write waits until the rest are queued behind it
+        final CountDownLatch queued = new CountDownLatch( 1 );
+        MagicCardDAO cardDAO = mock( MagicCardDAO.class );
+        when( cardDAO.addCardToDatabase( Matchers.any( MagicCard.class ) ) ).thenAnswer( new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer( InvocationOnMock invocation ) throws InterruptedException {
+                queued.await();
+                return true;
+            }
+        } );
+        PlatformTransactionManager transactionManager = mock( PlatformTransactionManager.class );
+        when( transactionManager.getTransaction( Matchers.any( TransactionDefinition.class ) ) ).thenReturn( mock( TransactionStatus.class ) );
+
+        CardProcessingPipeline pipeline = new CardProcessingPipeline( cardDAO, 1, 16, 1, 16 );
+        pipeline.setTransactionManager( transactionManager );
+        MagicGathererDataObserver observer = this.createObserver( cardDAO, pipeline );
+
+        for ( int id = 301; id <= 310; id++ ) {
+            observer.update( null, new MagicCardRawData( id, cardPage, new byte[] { ( byte ) id }, languagePage ) );
+        }
+        // The writer holds the first card, or the first two if the second was queued before it started
+        for ( int x = 0; x < 500 && pipeline.getWriteQueueDepth() < 8; x++ ) {
+            Thread.sleep( 10 );
+        }
+        assertTrue( pipeline.getWriteQueueDepth() >= 8 );
+        queued.countDown();
+        observer.update( null, null );
+
+        // At most one transaction for the cards taken first, and one for those queued behind them
+        verify( cardDAO, times( 10 ) ).addCardToDatabase( Matchers.any( MagicCard.class ) );
+        verify( transactionManager, atLeast( 1 ) ).commit( Matchers.any( TransactionStatus.class ) );
+        verify( transactionManager, atMost( 2 ) ).getTransaction( Matchers.any( TransactionDefinition.class ) );
+        verify( transactionManager, never() ).rollback( Matchers.any( TransactionStatus.class ) );
+        assertTrue( pipeline.getStatistics(), pipeline.getStatistics().contains( "10 cards saved, 0 failed" ) );
+    }
+
+    /**
+     * Create an observer for the pipeline with empty caches, so every card is parsed and saved, whatever earlier runs on this machine have cached.
+     */
+    private MagicGathererDataObserver createObserver( MagicCardDAO cardDAO, CardProcessingPipeline pipeline ) {
+        MagicGathererDataObserver observer = new MagicGathererDataObserver( cardDAO, pipeline );
+        observer.setContentHashCache( new ContentHashCache( new File( folder.getRoot(), "hashes.bin" ) ) );
+        observer.setCardDigestCache( new CardDigestCache( new File( folder.getRoot(), "digests.bin" ) ) );
+        observer.setValidatorCache( new ValidatorCache( new File( folder.getRoot(), "validators.bin" ) ) );
+        return observer;
+    }
+}
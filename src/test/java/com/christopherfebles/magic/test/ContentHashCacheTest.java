@@ -0,0 +1,65 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import com.christopherfebles.magic.model.MagicCardRawData;
+import com.christopherfebles.magic.model.MultiverseIdSet;
+import com.christopherfebles.magic.observer.ContentHashCache;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class ContentHashCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] DATA_PAGE = { 1, 2, 3 };
+    private static final byte[] LANGUAGE_PAGE = { 4, 5 };
+    private static final byte[] IMAGE = { 6 };
+
+    @Test
+    public void testOnlySavedCardsAreSkipped() throws Exception {
+
+        ContentHashCache cache = new ContentHashCache( new File( folder.getRoot(), "hashes.bin" ) );
+        MagicCardRawData card = new MagicCardRawData( 7, DATA_PAGE, IMAGE, LANGUAGE_PAGE );
+
+        assertFalse( cache.isUnchanged( card ) );
+        // Not saved yet, so checked again
+        assertFalse( cache.isUnchanged( card ) );
+        cache.commit( 7 );
+        assertTrue( cache.isUnchanged( card ) );
+
+        // The same bytes split differently between the pages are a change
+        assertFalse( cache.isUnchanged( new MagicCardRawData( 7, new byte[] { 1, 2, 3, 4 }, IMAGE, new byte[] { 5 } ) ) );
+        assertFalse( cache.isUnchanged( new MagicCardRawData( 7, DATA_PAGE, new byte[] { 9 }, LANGUAGE_PAGE ) ) );
+
+        assertEquals( "2 new, 2 changed, 1 unchanged skipped, 1 ids stored.", cache.getStatistics() );
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+
+        File file = new File( folder.getRoot(), "hashes.bin" );
+        ContentHashCache cache = new ContentHashCache( file );
+        for ( int id : new int[] { 1, 500, 100000 } ) {
+            cache.isUnchanged( new MagicCardRawData( id, DATA_PAGE, IMAGE, LANGUAGE_PAGE ) );
+            cache.commit( id );
+        }
+        cache.forget( MultiverseIdSet.range( 400, 600 ) );
+        cache.save();
+
+        ContentHashCache loaded = new ContentHashCache( file );
+        loaded.load();
+        assertEquals( 2, loaded.size() );
+        assertTrue( loaded.isUnchanged( new MagicCardRawData( 1, DATA_PAGE, IMAGE, LANGUAGE_PAGE ) ) );
+        assertTrue( loaded.isUnchanged( new MagicCardRawData( 100000, DATA_PAGE, IMAGE, LANGUAGE_PAGE ) ) );
+        assertFalse( loaded.isUnchanged( new MagicCardRawData( 500, DATA_PAGE, IMAGE, LANGUAGE_PAGE ) ) );
+    }
+}
@@ -0,0 +1,97 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.downloader.FrontierSearch;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class FrontierSearchTest {
+
+    private static final int MAX_MISSES = 50;
+
+    @Test
+    public void testFindsEndOfDenseBlock() {
+
+        BitSet cards = new BitSet();
+        cards.set( 1, 10_001 );
+
+        FrontierSearch search = new FrontierSearch( new BitSetProbe( cards ), MAX_MISSES, 4096 );
+        assertEquals( 10_000, search.findFrontier( 0 ) );
+        // Galloping needs far fewer probes than a linear walk
+        assertTrue( search.getNumberOfProbes() < 200 );
+    }
+
+    @Test
+    public void testCrossesGapsShorterThanMissLimit() {
+
+        BitSet cards = new BitSet();
+        cards.set( 101, 501 );
+        // A new set, after a gap of 30 ids
+        cards.set( 531, 800 );
+        // Beyond the miss limit, so never found
+        cards.set( 900 );
+
+        FrontierSearch search = new FrontierSearch( new BitSetProbe( cards ), MAX_MISSES, 4096 );
+        assertEquals( 799, search.findFrontier( 100 ) );
+    }
+
+    @Test
+    public void testNoNewCards() {
+        FrontierSearch search = new FrontierSearch( new BitSetProbe( new BitSet() ), MAX_MISSES, 4096 );
+        assertEquals( 1234, search.findFrontier( 1234 ) );
+        assertEquals( MAX_MISSES, search.getNumberOfProbes() );
+        assertTrue( search.isComplete() );
+    }
+
+    @Test
+    public void testFailedProbesAreNotMisses() {
+
+        BitSet cards = new BitSet();
+        cards.set( 101, 501 );
+        cards.set( 531, 800 );
+        // Gatherer goes down while the search walks the gap between the two sets
+        BitSet failures = new BitSet();
+        failures.set( 520, 600 );
+
+        FrontierSearch search = new FrontierSearch( new BitSetProbe( cards, failures ), MAX_MISSES, 4096 );
+        // The failures are not taken for the end of the cards, so the search stops at the last card confirmed, and says it is incomplete
+        assertEquals( 500, search.findFrontier( 499 ) );
+        assertFalse( search.isComplete() );
+        assertEquals( 1, search.getNumberOfFailedProbes() );
+
+        // Once Gatherer is back, the search carries on across the gap
+        failures.clear();
+        assertEquals( 799, search.findFrontier( 499 ) );
+        assertTrue( search.isComplete() );
+    }
+
+    private static class BitSetProbe implements FrontierSearch.Probe {
+
+        private final BitSet cards;
+        private final BitSet failures;
+
+        BitSetProbe( BitSet cards ) {
+            this( cards, new BitSet() );
+        }
+
+        BitSetProbe( BitSet cards, BitSet failures ) {
+            this.cards = cards;
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean hasCard( int multiverseId ) throws IOException {
+            if ( failures.get( multiverseId ) ) {
+                throw new IOException( "Unable to probe " + multiverseId );
+            }
+            return cards.get( multiverseId );
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.observer.GathererSymbolTable;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class GathererSymbolTableTest {
+
+    @Test
+    public void testDecodeColor() {
+
+        assertEquals( "W", GathererSymbolTable.decodeColor( "White" ) );
+        assertEquals( "X", GathererSymbolTable.decodeColor( "Variable Colorless" ) );
+        assertEquals( "2/W", GathererSymbolTable.decodeColor( "Two or White" ) );
+        assertEquals( "B/R", GathererSymbolTable.decodeColor( "Black or Red" ) );
+        assertEquals( "RP", GathererSymbolTable.decodeColor( "Phyrexian Red" ) );
+        assertEquals( "12", GathererSymbolTable.decodeColor( "12" ) );
+
+        // Not in the table, so decoded the long way
+        assertEquals( "U", GathererSymbolTable.decodeColor( " BLUE " ) );
+        assertEquals( "100", GathererSymbolTable.decodeColor( "100" ) );
+        assertEquals( "W", GathererSymbolTable.decodeColor( "W" ) );
+    }
+
+    @Test
+    public void testDecodeTextSymbol() {
+
+        assertEquals( "{T}", GathererSymbolTable.decodeTextSymbol( "Tap", 0 ) );
+        assertEquals( "{T}", GathererSymbolTable.decodeTextSymbol( "TAP", 0 ) );
+        assertEquals( "{1}", GathererSymbolTable.decodeTextSymbol( "1", 0 ) );
+        assertEquals( "{WP}", GathererSymbolTable.decodeTextSymbol( "Phyrexian White", 0 ) );
+        assertEquals( "{2/W}", GathererSymbolTable.decodeTextSymbol( "Two or White", 0 ) );
+    }
+
+    @Test
+    public void testDecodeManaCost() {
+
+        assertEquals( "3;RP;RP", GathererSymbolTable.decodeManaCost( Arrays.asList( "3", "Phyrexian Red", "Phyrexian Red" ) ) );
+        assertEquals( "2/W;2/W;2/W", GathererSymbolTable.decodeManaCost( Arrays.asList( "Two or White", "Two or White", "Two or White" ) ) );
+        assertEquals( "0", GathererSymbolTable.decodeManaCost( Arrays.asList( "0" ) ) );
+    }
+}
@@ -0,0 +1,78 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.source.JdbcKeysetIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class JdbcKeysetIdSourceTest {
+
+    @Test
+    public void testPagesReadInOrder() throws SQLException {
+
+        ResultSet firstPage = mock( ResultSet.class );
+        when( firstPage.next() ).thenReturn( true, true, false );
+        when( firstPage.getInt( 1 ) ).thenReturn( 3, 7 );
+        ResultSet lastPage = mock( ResultSet.class );
+        when( lastPage.next() ).thenReturn( true, false );
+        when( lastPage.getInt( 1 ) ).thenReturn( 9 );
+
+        PreparedStatement statement = mock( PreparedStatement.class );
+        when( statement.executeQuery() ).thenReturn( firstPage, lastPage );
+
+        MultiverseIdSource source = new JdbcKeysetIdSource( this.mockDataSource( statement ), "MagicCard", "multiverseId", 2 );
+
+        assertEquals( 3, source.nextId() );
+        assertEquals( 7, source.nextId() );
+        assertEquals( 9, source.nextId() );
+        assertEquals( MultiverseIdSource.NO_MORE_IDS, source.nextId() );
+        verify( statement ).setInt( 1, -1 );
+        verify( statement ).setInt( 1, 7 );
+    }
+
+    @Test
+    public void testFailedReadIsNotTheEnd() throws SQLException {
+
+        ResultSet firstPage = mock( ResultSet.class );
+        when( firstPage.next() ).thenReturn( true, true, false );
+        when( firstPage.getInt( 1 ) ).thenReturn( 3, 7 );
+
+        PreparedStatement statement = mock( PreparedStatement.class );
+        when( statement.executeQuery() ).thenReturn( firstPage ).thenThrow( new SQLException( "Connection lost" ) );
+
+        MultiverseIdSource source = new JdbcKeysetIdSource( this.mockDataSource( statement ), "MagicCard", "multiverseId", 2 );
+
+        assertEquals( 3, source.nextId() );
+        assertEquals( 7, source.nextId() );
+        for ( int x = 0; x < 2; x++ ) {
+            try {
+                source.nextId();
+                fail( "A failed read must not end the source." );
+            } catch ( IllegalStateException e ) {
+                assertTrue( e.getCause() instanceof SQLException );
+            }
+        }
+    }
+
+    private DataSource mockDataSource( PreparedStatement statement ) throws SQLException {
+        Connection connection = mock( Connection.class );
+        when( connection.prepareStatement( anyString() ) ).thenReturn( statement );
+        DataSource dataSource = mock( DataSource.class );
+        when( dataSource.getConnection() ).thenReturn( connection );
+        return dataSource;
+    }
+}
@@ -0,0 +1,53 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.EnumSet;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.enums.Language;
+import com.christopherfebles.magic.observer.LanguageNameMatcher;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class LanguageNameMatcherTest {
+
+    private final LanguageNameMatcher matcher = new LanguageNameMatcher();
+
+    @Test
+    public void testMatchesSameLanguagesAsContains() throws Exception {
+
+        for ( String fixture : new String[] { "1_language.html", "367775_russian.html", "383192_english.html", "384328_french.html",
+                "73602_japanese.html" } ) {
+            byte[] page;
+            try ( InputStream is = LanguageNameMatcherTest.class.getClassLoader().getResourceAsStream( "html/" + fixture ) ) {
+                page = IOUtils.toByteArray( is );
+            }
+
+            String languagePage = new String( page, "UTF-8" );
+            EnumSet<Language> expected = EnumSet.noneOf( Language.class );
+            for ( Language language : Language.values() ) {
+                if ( languagePage.contains( language.toString() ) ) {
+                    expected.add( language );
+                }
+            }
+
+            assertEquals( fixture, expected, matcher.findLanguages( page ) );
+        }
+    }
+
+    @Test
+    public void testOverlappingNames() {
+
+        String text = "xx" + Language.CHINESE_TRADITIONAL + Language.GERMAN.toString().substring( 1 ) + Language.KOREAN;
+
+        EnumSet<Language> found = matcher.findLanguages( text );
+
+        assertEquals( EnumSet.of( Language.CHINESE_TRADITIONAL, Language.KOREAN ), found );
+        assertTrue( matcher.findLanguages( "" ).isEmpty() );
+    }
+}
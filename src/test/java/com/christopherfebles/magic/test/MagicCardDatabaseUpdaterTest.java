@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -30,6 +32,7 @@ import com.christopherfebles.magic.model.MagicCard;
 import com.christopherfebles.magic.observer.DownloaderCompleteObserver;
 import com.christopherfebles.magic.service.MagicCardDatabaseService;
 import com.christopherfebles.magic.service.impl.MagicCardDatabaseServiceImpl;
+import com.christopherfebles.magic.source.MultiverseIdSource;
 import com.christopherfebles.magic.testsupport.DAOTester;
 import com.christopherfebles.magic.testsupport.UnitTest;
 
@@ -127,17 +130,23 @@ public class MagicCardDatabaseUpdaterTest extends DAOTester {
         //The update method itself is tested as part of testUpdateOfSingleCard()
         final List<Integer> expectedList = cardDAO.getAllMultiverseIds();
         
-        PowerMockito.replace( PowerMockito.method( MagicCardDatabaseServiceImpl.class, "updateMagicDatabase", List.class ) )
+        PowerMockito.replace( PowerMockito.method( MagicCardDatabaseServiceImpl.class, "updateMagicDatabase", MultiverseIdSource.class ) )
             .with( new InvocationHandler() {
 
                 @Override
                 public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
 
-                    List<Integer> localExpectedList = expectedList; 
+                    List<Integer> localExpectedList = new ArrayList<>( expectedList );
+                    Collections.sort( localExpectedList );
                     assertNotNull( args );
                     assertTrue( args.length > 0 );
-                    assertTrue( args[0] instanceof List );
-                    assertEquals( localExpectedList, args[0] );
+                    assertTrue( args[0] instanceof MultiverseIdSource );
+                    List<Integer> actualList = new ArrayList<>();
+                    MultiverseIdSource idSource = ( MultiverseIdSource ) args[0];
+                    for ( int id = idSource.nextId(); id != MultiverseIdSource.NO_MORE_IDS; id = idSource.nextId() ) {
+                        actualList.add( id );
+                    }
+                    assertEquals( localExpectedList, actualList );
                     return null;
                 }
                 
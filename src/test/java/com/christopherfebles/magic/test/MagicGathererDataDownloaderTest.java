@@ -4,27 +4,33 @@ import static org.junit.Assert.*;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
-import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.powermock.reflect.Whitebox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.christopherfebles.magic.downloader.DownloadWorker;
+import com.christopherfebles.magic.downloader.DownloadWorkerPool;
 import com.christopherfebles.magic.downloader.MagicGathererDataDownloader;
+import com.christopherfebles.magic.downloader.MultiverseIdChunkQueue;
 import com.christopherfebles.magic.testsupport.IntegrationTest;
 import com.christopherfebles.magic.testsupport.UnitTest;
 
@@ -48,43 +54,15 @@ public class MagicGathererDataDownloaderTest {
     @Category( UnitTest.class )
     public void testIdListPartitioner() throws Exception {
 
-        //Ids are partitioned in groups of 1000. This will test correct separation and leftovers
+        //Ids are handed out in small chunks to a fixed number of threads. This will test correct separation and leftovers
         int numberOfIds = 10_635;
+        int workerCount = 8;
+        int chunkSize = 25;
         
-        //Test that a given list is partitioned correctly
-        final List<Integer> idsAssignedToThreads = new ArrayList<>();
-        
-        //Mock objects        
-        Class<Object> magicGathererDataDownloaderThread = Whitebox.getInnerClassType( MagicGathererDataDownloader.class, "MagicGathererDataDownloaderThread" );
-        PowerMockito.replace( PowerMockito.method( magicGathererDataDownloaderThread, List.class ) )
-            .with( new InvocationHandler() {
-    
-                @SuppressWarnings( "unchecked" )
-                @Override
-                public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
-                    
-                    LOG.trace( "Called replaced method for MagicGathererDataDownloaderThread.setIdList()" );
-                    assertNotNull( args );
-                    assertTrue( args.length == 1 );
-                    assertTrue( args[0] instanceof List );
-                    
-                    List<Integer> idList = (List<Integer>)args[0];
-                    assertTrue( idList.size() <= 1001 );
-                    idsAssignedToThreads.addAll( idList );
-                    return null;
-                }
-                
-            });
-        PowerMockito.replace( PowerMockito.method( magicGathererDataDownloaderThread, "start" ) )
-            .with( new InvocationHandler() {
-    
-                @Override
-                public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
-                    LOG.trace( "Called replaced method for MagicGathererDataDownloaderThread.start()" );
-                    return null;
-                }
-                
-            });
+        //Test that a given list is distributed correctly
+        final List<Integer> idsAssignedToThreads = Collections.synchronizedList( new ArrayList<Integer>() );
+        final Set<String> threadNames = Collections.synchronizedSet( new HashSet<String>() );
+        final AtomicInteger finishedWorkers = new AtomicInteger();
         
         //Generate ID list
         List<Integer> idList = new ArrayList<>();
@@ -92,13 +70,102 @@ public class MagicGathererDataDownloaderTest {
             idList.add( x );
         }
         
-        downloader.start( idList );
+        DownloadWorkerPool workerPool = new DownloadWorkerPool( workerCount, chunkSize );
+        workerPool.start( idList, new DownloadWorker.Factory() {
+
+            @Override
+            public DownloadWorker newWorker( MultiverseIdChunkQueue queue ) {
+                return new DownloadWorker() {
+
+                    @Override
+                    public void download( int multiverseId ) {
+                        idsAssignedToThreads.add( multiverseId );
+                        threadNames.add( Thread.currentThread().getName() );
+                    }
+
+                    @Override
+                    public void finished() {
+                        LOG.trace( "Worker on thread {} finished.", Thread.currentThread().getName() );
+                        finishedWorkers.incrementAndGet();
+                    }
+                };
+            }
+        } );
+        assertTrue( workerPool.awaitCompletion( 1, TimeUnit.MINUTES ) );
+        
+        //Test that no more threads than the budget were used, and that each one reported completion
+        assertTrue( threadNames.size() <= workerCount );
+        assertEquals( workerCount, finishedWorkers.get() );
         
         Collections.sort( idsAssignedToThreads );
         //Test that all Ids passed to the downloader are assigned to threads for processing
         assertEquals( idList, idsAssignedToThreads );
     }
     
+    @Test
+    @Category( UnitTest.class )
+    public void testIdChunkQueue() throws Exception {
+        
+        List<Integer> idList = new ArrayList<>();
+        for ( int x = 1; x <= 101; x++ ) {
+            idList.add( x );
+        }
+        
+        MultiverseIdChunkQueue queue = new MultiverseIdChunkQueue( idList, 25 );
+        assertEquals( 5, queue.numberOfChunks() );
+        
+        List<Integer> allChunks = new ArrayList<>();
+        List<Integer> chunk = queue.nextChunk();
+        while ( !chunk.isEmpty() ) {
+            assertTrue( chunk.size() <= 25 );
+            allChunks.addAll( chunk );
+            chunk = queue.nextChunk();
+        }
+        assertEquals( idList, allChunks );
+    }
+    
+    @Test
+    @Category( UnitTest.class )
+    public void testIdChunkQueueRequeue() throws Exception {
+        
+        final MultiverseIdChunkQueue queue = new MultiverseIdChunkQueue( Arrays.asList( 1, 2, 3 ), 2 );
+        assertEquals( Arrays.asList( 1, 2 ), queue.nextChunk() );
+        
+        // Defer id 2, as a failed download would
+        queue.defer();
+        assertTrue( queue.hasDeferredIds() );
+        assertEquals( Arrays.asList( 3 ), queue.nextChunk() );
+        
+        // The queue blocks until the deferred id comes back
+        Thread retry = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep( 100 );
+                } catch ( InterruptedException e ) {
+                    return;
+                }
+                queue.requeue( 2 );
+            }
+        };
+        retry.start();
+        assertEquals( Arrays.asList( 2 ), queue.nextChunk() );
+        assertFalse( queue.hasDeferredIds() );
+        assertTrue( queue.nextChunk().isEmpty() );
+    }
+    
+    @Test
+    @Category( UnitTest.class )
+    public void testHasCard() throws Exception {
+        
+        byte[] cardPage = IOUtils.toByteArray( MagicGathererDataDownloaderTest.class.getClassLoader().getResourceAsStream( "html/1.html" ) );
+        byte[] emptyPage = IOUtils.toByteArray( MagicGathererDataDownloaderTest.class.getClassLoader().getResourceAsStream( "html/3756.html" ) );
+        
+        assertTrue( ( Boolean ) Whitebox.invokeMethod( MagicGathererDataDownloader.class, "hasCard", cardPage ) );
+        assertFalse( ( Boolean ) Whitebox.invokeMethod( MagicGathererDataDownloader.class, "hasCard", emptyPage ) );
+        assertFalse( ( Boolean ) Whitebox.invokeMethod( MagicGathererDataDownloader.class, "hasCard", new byte[] { 'n', 'a', 'm', 'e' } ) );
+    }
+    
     @Test
     @Category( IntegrationTest.class )
     public void testLoadUrlWithImageData() throws Exception {
@@ -0,0 +1,84 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.model.MultiverseIdSet;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class MultiverseIdSetTest {
+
+    @Test
+    public void testDifference() {
+
+        MultiverseIdSet candidates = MultiverseIdSet.range( 1, 11 );
+        candidates.removeAll( MultiverseIdSet.of( Arrays.asList( 2, 3, 5, 7, 11, 13 ) ) );
+
+        assertEquals( Arrays.asList( 1, 4, 6, 8, 9, 10 ), candidates.toList() );
+        assertEquals( 6, candidates.size() );
+        assertEquals( 10, candidates.max() );
+        assertFalse( candidates.contains( 5 ) );
+    }
+
+    @Test
+    public void testRangeIteration() {
+
+        MultiverseIdSet idSet = MultiverseIdSet.of( Arrays.asList( 40, 10, 30, 20 ) );
+
+        List<Integer> fromTwenty = new ArrayList<>();
+        for ( int id = idSet.nextId( 15 ); id >= 0 && id < 35; id = idSet.nextId( id + 1 ) ) {
+            fromTwenty.add( id );
+        }
+        assertEquals( Arrays.asList( 20, 30 ), fromTwenty );
+
+        List<Integer> all = new ArrayList<>();
+        for ( Integer id : idSet ) {
+            all.add( id );
+        }
+        assertEquals( Arrays.asList( 10, 20, 30, 40 ), all );
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+
+        MultiverseIdSet idSet = MultiverseIdSet.range( 1, 500_000 );
+        idSet.remove( 12345 );
+
+        // Deflated, as the caches write it
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try ( DataOutputStream data = new DataOutputStream( new DeflaterOutputStream( out ) ) ) {
+            idSet.writeTo( data );
+            data.writeInt( 42 );
+        }
+        // Long runs of consecutive ids compress well
+        assertTrue( out.size() < 2_000 );
+
+        try ( DataInputStream data = new DataInputStream( new InflaterInputStream( new ByteArrayInputStream( out.toByteArray() ) ) ) ) {
+            assertEquals( idSet, MultiverseIdSet.readFrom( data ) );
+            // Data written after a set is still readable
+            assertEquals( 42, data.readInt() );
+        }
+    }
+
+    @Test
+    public void testNegativeIdsIgnored() {
+
+        MultiverseIdSet idSet = new MultiverseIdSet();
+        assertFalse( idSet.add( -1 ) );
+        assertFalse( idSet.remove( -1 ) );
+        assertTrue( idSet.isEmpty() );
+    }
+}
@@ -0,0 +1,69 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+
+import com.christopherfebles.magic.model.MagicCard;
+import com.christopherfebles.magic.observer.MagicGathererDataObserver;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class StreamingGathererExtractorTest {
+
+    // Every card page in src/test/resources/html
+    private static final int[] FIXTURE_IDS = { 1, 7, 61, 984, 3756, 4856, 4957, 6514, 73602, 97055, 107437, 172092, 211170, 230076, 233045, 262875,
+            366476, 367775, 368160, 369097, 382844, 383048, 383192, 383283, 384328 };
+
+    @Test
+    public void testStreamingParserMatchesDomParser() throws Exception {
+
+        MagicGathererDataObserver domObserver = new MagicGathererDataObserver( null );
+        domObserver.setStreamingParser( false );
+        MagicGathererDataObserver streamingObserver = new MagicGathererDataObserver( null );
+        streamingObserver.setStreamingParser( true );
+
+        for ( int id : FIXTURE_IDS ) {
+            String page = this.loadResourceFileAsString( id + ".html" );
+            MagicCard expected = this.parseMagicCardFromGathererWithId( domObserver, page, id );
+            // The streaming parser reads the page as it was downloaded
+            MagicCard actual = Whitebox.invokeMethod( streamingObserver, "parseGathererData", page.getBytes( StandardCharsets.UTF_8 ), id );
+
+            if ( expected == null ) {
+                assertNull( "Multiverse ID " + id, actual );
+                continue;
+            }
+            assertNotNull( "Multiverse ID " + id, actual );
+            assertEquals( "Multiverse ID " + id, expected.getMultiverseId(), actual.getMultiverseId() );
+            assertEquals( "Multiverse ID " + id, expected.getName(), actual.getName() );
+            assertEquals( "Multiverse ID " + id, expected.getManaCostString(), actual.getManaCostString() );
+            assertEquals( "Multiverse ID " + id, expected.getType(), actual.getType() );
+            assertEquals( "Multiverse ID " + id, expected.getText(), actual.getText() );
+            assertEquals( "Multiverse ID " + id, expected.getFlavorText(), actual.getFlavorText() );
+            assertEquals( "Multiverse ID " + id, expected.getPower(), actual.getPower() );
+            assertEquals( "Multiverse ID " + id, expected.getToughness(), actual.getToughness() );
+            assertEquals( "Multiverse ID " + id, expected.getRarity(), actual.getRarity() );
+            assertEquals( "Multiverse ID " + id, expected.getNumber(), actual.getNumber() );
+            assertEquals( "Multiverse ID " + id, expected.getArtist(), actual.getArtist() );
+            assertEquals( "Multiverse ID " + id, expected.getWatermark(), actual.getWatermark() );
+        }
+    }
+
+    private MagicCard parseMagicCardFromGathererWithId( MagicGathererDataObserver observer, String webpageStr, int id ) throws Exception {
+        return Whitebox.invokeMethod( observer, "parseGathererData", webpageStr, id );
+    }
+
+    private String loadResourceFileAsString( String filename ) throws Exception {
+
+        filename = "html/" + filename;
+        InputStream is = StreamingGathererExtractorTest.class.getClassLoader().getResourceAsStream( filename );
+
+        return IOUtils.toString( is, StandardCharsets.UTF_8 );
+    }
+}
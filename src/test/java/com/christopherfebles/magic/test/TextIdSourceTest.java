@@ -0,0 +1,53 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.christopherfebles.magic.source.DistinctIdSource;
+import com.christopherfebles.magic.source.MultiverseIdSource;
+import com.christopherfebles.magic.source.TextIdSource;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class TextIdSourceTest {
+
+    @Test
+    public void testRangesAndIds() {
+
+        MultiverseIdSource source = new TextIdSource( new StringReader( "1-3, 10\n  20-22 # comment 30\n\n5" ) );
+
+        assertEquals( Arrays.asList( 1, 2, 3, 10, 20, 21, 22, 5 ), this.readAll( source ) );
+    }
+
+    @Test
+    public void testInvalidEntriesSkipped() {
+
+        MultiverseIdSource source = new TextIdSource( new StringReader( "abc,7,9-8,-4,12" ) );
+
+        assertEquals( Arrays.asList( 7, 12 ), this.readAll( source ) );
+    }
+
+    @Test
+    public void testDistinct() {
+
+        MultiverseIdSource source = new DistinctIdSource( new TextIdSource( new StringReader( "1-5,3-7,2,8" ) ) );
+
+        assertEquals( Arrays.asList( 1, 2, 3, 4, 5, 6, 7, 8 ), this.readAll( source ) );
+    }
+
+    private List<Integer> readAll( MultiverseIdSource source ) {
+        List<Integer> ids = new ArrayList<>();
+        for ( int id = source.nextId(); id != MultiverseIdSource.NO_MORE_IDS; id = source.nextId() ) {
+            ids.add( id );
+        }
+        source.close();
+        return ids;
+    }
+}
@@ -0,0 +1,99 @@
+package com.christopherfebles.magic.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import com.christopherfebles.magic.downloader.ValidatorCache;
+import com.christopherfebles.magic.testsupport.UnitTest;
+
+@Category( UnitTest.class )
+public class ValidatorCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String DATA_URL = "http://gatherer.wizards.com/Pages/Card/Details.aspx?printed=false&multiverseid=7";
+
+    @Test
+    public void testValidatorsStoredOnlyOnceCommitted() throws Exception {
+
+        ValidatorCache cache = new ValidatorCache( new File( folder.getRoot(), "validators.bin" ) );
+        HttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK" );
+        response.setHeader( HttpHeaders.ETAG, "\"abc\"" );
+        cache.hold( DATA_URL, response );
+
+        // The card has not been saved yet, so it is requested in full next time
+        HttpGet request = new HttpGet( DATA_URL );
+        cache.addConditionalHeaders( DATA_URL, request );
+        assertNull( request.getFirstHeader( HttpHeaders.IF_NONE_MATCH ) );
+
+        // Committing another card leaves this one's validators held
+        cache.commit( 8 );
+        assertEquals( 0, cache.size() );
+
+        cache.commit( 7 );
+        assertEquals( 1, cache.size() );
+        request = new HttpGet( DATA_URL );
+        cache.addConditionalHeaders( DATA_URL, request );
+        assertEquals( "\"abc\"", request.getFirstHeader( HttpHeaders.IF_NONE_MATCH ).getValue() );
+
+        // A later response without validators removes them once committed
+        cache.hold( DATA_URL, new BasicHttpResponse( HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK" ) );
+        assertEquals( 1, cache.size() );
+        cache.commit( 7 );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testEmptyIdsKeepNoValidators() throws Exception {
+
+        ValidatorCache cache = new ValidatorCache( new File( folder.getRoot(), "validators.bin" ) );
+        HttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK" );
+        response.setHeader( HttpHeaders.ETAG, "\"abc\"" );
+        cache.hold( DATA_URL, response );
+        cache.commit( 7 );
+        assertEquals( 1, cache.size() );
+
+        // Found empty: both held and stored validators are dropped, so the next probe is unconditional
+        cache.hold( DATA_URL, response );
+        cache.forget( 7 );
+        cache.commit( 7 );
+        assertEquals( 0, cache.size() );
+        HttpGet request = new HttpGet( DATA_URL );
+        cache.addConditionalHeaders( DATA_URL, request );
+        assertNull( request.getFirstHeader( HttpHeaders.IF_NONE_MATCH ) );
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+
+        File file = new File( folder.getRoot(), "validators.bin" );
+        ValidatorCache cache = new ValidatorCache( file );
+        HttpResponse response = new BasicHttpResponse( HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK" );
+        response.setHeader( HttpHeaders.ETAG, "\"abc\"" );
+        response.setHeader( HttpHeaders.LAST_MODIFIED, "Tue, 15 Nov 1994 12:45:26 GMT" );
+        cache.hold( DATA_URL, response );
+        cache.commit( 7 );
+        cache.save();
+
+        ValidatorCache loaded = new ValidatorCache( file );
+        loaded.load();
+        assertEquals( 1, loaded.size() );
+        HttpGet request = new HttpGet( DATA_URL );
+        loaded.addConditionalHeaders( DATA_URL, request );
+        assertEquals( "\"abc\"", request.getFirstHeader( HttpHeaders.IF_NONE_MATCH ).getValue() );
+        assertEquals( "Tue, 15 Nov 1994 12:45:26 GMT", request.getFirstHeader( HttpHeaders.IF_MODIFIED_SINCE ).getValue() );
+    }
+}